@@ -0,0 +1,90 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the {@code SecurityContextPersistenceFilter} does with the {@link CookieSecurityContextRepository} on every
+ * request: load the context from the cookie and save it again, plus saving the context of a fresh login.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CookieSecurityContextRepositoryBenchmark {
+
+  @Param({"1", "5", "20"})
+  int roleCount;
+
+  @Param({"false", "true"})
+  boolean cacheEnabled;
+
+  private CookieSecurityContextRepository repository;
+  private SignedUserInfoCookie cookie;
+  private SecurityContext loginContext;
+
+  @Setup
+  public void setup() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SignedUserInfoCookieBenchmark.SECRET_KEY).build();
+    VerifiedCookieCache cache = new VerifiedCookieCache(cacheEnabled, 10_000, Duration.ofMinutes(10), CookieKeyRing.of(SignedUserInfoCookieBenchmark.SECRET_KEY));
+    CookiePrecheck precheck = new CookiePrecheck(4096);
+    CookieMetrics metrics = CookieMetrics.standalone();
+    UserInfoCookieVerifier verifier = new UserInfoCookieVerifier(codec, cache, precheck, RevocationList.disabled(), Duration.ofMinutes(45), metrics, AuthenticationAuditLog.disabled(), SignedUserInfoCookieBenchmark.CLOCK);
+    repository = new CookieSecurityContextRepository(codec, verifier, new PrincipalCache(10_000), precheck, metrics, AuthenticationAuditLog.disabled(), SignedUserInfoCookieBenchmark.CLOCK);
+
+    UserInfo userInfo = SignedUserInfoCookieBenchmark.userInfo(roleCount);
+    cookie = new SignedUserInfoCookie(userInfo, codec, SignedUserInfoCookieBenchmark.CLOCK);
+    loginContext = new SecurityContextImpl(new UsernamePasswordAuthenticationToken(userInfo, "", userInfo.getAuthorities()));
+  }
+
+  @Benchmark
+  public SecurityContext loadContext() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(cookie);
+    return repository.loadContext(new HttpRequestResponseHolder(request, new MockHttpServletResponse()));
+  }
+
+  @Benchmark
+  public MockHttpServletResponse loadAndSaveContext() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(cookie);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+    SecurityContext context = repository.loadContext(holder);
+    repository.saveContext(context, holder.getRequest(), holder.getResponse());
+    return response;
+  }
+
+  @Benchmark
+  public MockHttpServletResponse saveContextAfterLogin() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+    repository.loadContext(holder);
+    repository.saveContext(loginContext, holder.getRequest(), holder.getResponse());
+    return response;
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import javax.servlet.http.Cookie;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creating, parsing and verifying the {@link SignedUserInfoCookie}, i.e. what happens on every authenticated request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignedUserInfoCookieBenchmark {
+
+  static final String SECRET_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  static final Clock CLOCK = Clock.fixed(Instant.parse("2020-07-01T12:00:00Z"), ZoneOffset.UTC);
+
+  @Param({"1", "5", "20"})
+  int roleCount;
+
+  /**
+   * Whether the roles are in the {@link RoleDictionary}, i.e. carried as bits.
+   */
+  @Param({"false", "true"})
+  boolean roleDictionary;
+
+  /**
+   * Whether values are encrypted with AES-GCM instead of signed with HmacSHA512.
+   */
+  @Param({"false", "true"})
+  boolean encrypted;
+
+  private UserInfoCookieCodec codec;
+  private UserInfo userInfo;
+  private SignedUserInfoCookie compactCookie;
+  private Cookie textCookie;
+  private UserInfo decodedUserInfo;
+  private String lastRole;
+
+  @Setup
+  public void setup() {
+    codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY)
+      .dictionary(roleDictionary ? roleDictionary(roleCount) : RoleDictionary.empty())
+      .sessionIds(false)
+      .encrypted(encrypted)
+      .build();
+    userInfo = userInfo(roleCount);
+    compactCookie = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+    decodedUserInfo = compactCookie.getUserInfo();
+    lastRole = "ROLE_" + (roleCount - 1);
+
+    String roles = userInfo.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.joining("|"));
+    String signed = "uid=" + userInfo.getUsername() + "&roles=" + roles + "&colour=" + userInfo.getColour().orElseThrow()
+      + "&exp=" + compactCookie.getExpiry().orElseThrow().getEpochSecond();
+    textCookie = new Cookie(SignedUserInfoCookie.NAME, signed + "&hmac=" + new CookieSigner(SECRET_KEY, MacAlgorithm.HMAC_SHA_512).sign(signed));
+  }
+
+  static RoleDictionary roleDictionary(int roleCount) {
+    String[] roles = new String[roleCount];
+    for (int i = 0; i < roleCount; i++) {
+      roles[i] = "ROLE_" + i;
+    }
+    return RoleDictionary.of(roles);
+  }
+
+  static UserInfo userInfo(int roleCount) {
+    Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+    for (int i = 0; i < roleCount; i++) {
+      authorities.add(new SimpleGrantedAuthority("ROLE_" + i));
+    }
+    return new UserInfo("ab1234", authorities, "YELLOW");
+  }
+
+  @Benchmark
+  public SignedUserInfoCookie create() {
+    return new SignedUserInfoCookie(userInfo, codec, CLOCK);
+  }
+
+  @Benchmark
+  public SignedUserInfoCookie parseAndVerify() {
+    return new SignedUserInfoCookie(compactCookie, codec);
+  }
+
+  @Benchmark
+  public SignedUserInfoCookie parseAndVerifyTextFormat() {
+    return new SignedUserInfoCookie(textCookie, codec);
+  }
+
+  @Benchmark
+  public UserInfo getUserInfo() {
+    return new SignedUserInfoCookie(compactCookie, codec).getUserInfo();
+  }
+
+  @Benchmark
+  public boolean hasAuthority() {
+    return decodedUserInfo.hasAuthority(lastRole);
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.Cookie;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Getting the verified cookie of a request from the {@link VerifiedCookieCache}, a hit once it is enabled, against
+ * verifying the value every time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifiedCookieCacheBenchmark {
+
+  @Param({"1", "20"})
+  int roleCount;
+
+  @Param({"false", "true"})
+  boolean cacheEnabled;
+
+  private VerifiedCookieCache cache;
+  private Function<String, SignedUserInfoCookie> verifier;
+  private String value;
+
+  @Setup
+  public void setup() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SignedUserInfoCookieBenchmark.SECRET_KEY).build();
+    cache = new VerifiedCookieCache(cacheEnabled, 10_000, Duration.ofMinutes(10), CookieKeyRing.of(SignedUserInfoCookieBenchmark.SECRET_KEY));
+    verifier = candidate -> new SignedUserInfoCookie(new Cookie(SignedUserInfoCookie.NAME, candidate), codec);
+    value = new SignedUserInfoCookie(SignedUserInfoCookieBenchmark.userInfo(roleCount), codec, SignedUserInfoCookieBenchmark.CLOCK).getValue();
+  }
+
+  /**
+   * A copy of the value, as every request brings one of its own.
+   */
+  @Benchmark
+  public SignedUserInfoCookie get() {
+    return cache.get(new String(value), verifier);
+  }
+
+}
@@ -0,0 +1,404 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: starts {@link CookieBasedSessionSpringBootApplication} on a random local port and lets a
+ * number of clients, each behaving like a browser with its own {@code UserInfo} cookie, drive a mix of flows against
+ * it with the JDK {@link HttpClient}:
+ * <ul>
+ *   <li>{@code anonymous} - {@code GET /other} without cookie, redirected to the login form by
+ *   {@link LoginWithTargetUrlAuthenticationEntryPoint}</li>
+ *   <li>{@code login} - form login with {@code target=/other}, redirected there by
+ *   {@link RedirectToOriginalUrlAuthenticationSuccessHandler} with a new cookie</li>
+ *   <li>{@code index}, {@code other} - cookie authenticated page views of {@code /} and {@code /other}</li>
+ * </ul>
+ * Clients send their next request as soon as the previous one is answered (closed loop). With {@code --conditional}
+ * they revalidate pages they have seen with their ETag, as browsers do, and accept {@code 304 Not Modified}. After a
+ * warmup, throughput and latency percentiles are reported per flow. Options, all with defaults:
+ * <pre>
+ * --clients=8 --warmup=10s --duration=30s --mix=anonymous:10,login:2,index:44,other:44 --username=bob --password=builder
+ * --conditional=false
+ * </pre>
+ * Any other argument is passed on to the application, so configurations can be compared:
+ * <pre>
+ * mvn -Pload test-compile exec:exec -Dload.args="--clients=16 --auth.cookie.encryption.enabled=true"
+ * </pre>
+ */
+public class LoadHarness {
+
+  enum Flow {
+    ANONYMOUS, LOGIN, INDEX, OTHER;
+
+    String label() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private static final String COOKIE_NAME_PREFIX = SignedUserInfoCookie.NAME;
+  private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Options options;
+  private final HttpClient client;
+  private final URI baseUri;
+  private final List<Client> clients = new ArrayList<>();
+
+  private LoadHarness(Options options, int port) {
+    this.options = options;
+    for (int i = 0; i < options.clients; i++) {
+      clients.add(new Client(i));
+    }
+    this.baseUri = URI.create("http://localhost:" + port);
+    this.client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .connectTimeout(Duration.ofSeconds(5))
+      .build();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    // devtools would restart main() with the application arguments only
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    ConfigurableApplicationContext app = new SpringApplicationBuilder(CookieBasedSessionSpringBootApplication.class)
+      .properties("server.port=0", "logging.level.root=WARN")
+      .run(options.applicationArgs.toArray(new String[0]));
+    try {
+      int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+      LoadHarness harness = new LoadHarness(options, port);
+      System.out.printf("%d clients, warmup %ss, duration %ss, mix %s, conditional %s, application args %s, Java %s, %d CPUs%n",
+        options.clients, options.warmup.toSeconds(), options.duration.toSeconds(), options.mix, options.conditional, options.applicationArgs,
+        Runtime.version(), Runtime.getRuntime().availableProcessors());
+
+      harness.run(options.warmup);
+      harness.run(options.duration).print(options.duration, System.out);
+    } finally {
+      app.close();
+    }
+  }
+
+  /**
+   * Clients keep their cookies from one run to the next, so they only log in during the warmup unless the mix says so.
+   */
+  private Result run(Duration duration) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(options.clients);
+    try {
+      long deadline = System.nanoTime() + duration.toNanos();
+      List<Future<Result>> results = new ArrayList<>();
+      for (Client client : clients) {
+        results.add(executor.submit(() -> client.runUntil(deadline)));
+      }
+
+      Result result = new Result();
+      for (Future<Result> clientResult : results) {
+        result.add(clientResult.get());
+      }
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * A browser: keeps the cookies it is sent and picks the next flow at random, according to the mix.
+   */
+  private class Client {
+    private final SplittableRandom random;
+    private final Map<String, String> cookies = new TreeMap<>();
+    private final Map<String, String> etags = new TreeMap<>();
+
+    private Client(long seed) {
+      this.random = new SplittableRandom(seed);
+    }
+
+    private Result runUntil(long deadline) throws InterruptedException {
+      Result result = new Result();
+      while (System.nanoTime() < deadline) {
+        Flow flow = options.mix.next(random);
+        if (flow != Flow.ANONYMOUS && flow != Flow.LOGIN && cookies.isEmpty())
+          flow = Flow.LOGIN;
+
+        long startTime = System.nanoTime();
+        String failure;
+        try {
+          failure = execute(flow);
+        } catch (IOException e) {
+          failure = e.getClass().getSimpleName();
+        }
+        result.record(flow, System.nanoTime() - startTime, failure);
+      }
+      return result;
+    }
+
+    /**
+     * @return why the response is not the expected one, {@code null} if it is
+     */
+    private String execute(Flow flow) throws IOException, InterruptedException {
+      switch (flow) {
+        case ANONYMOUS:
+          return expectRedirect(send(get("/other"), false), "/login?target=/other");
+        case LOGIN:
+          cookies.clear();
+          etags.clear();
+          String form = "username=" + encode(options.username) + "&password=" + encode(options.password)
+            + "&colour=GREEN&target=" + encode("/other");
+          HttpResponse<Void> response = send(request("/login")
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form)), false);
+          String failure = expectRedirect(response, "/other");
+          if (failure == null && cookies.isEmpty())
+            return "no cookie";
+          return failure;
+        case INDEX:
+          return expectPage("/");
+        case OTHER:
+          return expectPage("/other");
+        default:
+          throw new IllegalArgumentException(flow.name());
+      }
+    }
+
+    private String expectPage(String path) throws IOException, InterruptedException {
+      HttpRequest.Builder request = get(path);
+      String etag = etags.get(path);
+      if (options.conditional && etag != null)
+        request.header("If-None-Match", etag);
+      HttpResponse<Void> response = send(request, true);
+      if (options.conditional && response.statusCode() == 304)
+        return null;
+      response.headers().firstValue("ETag").ifPresent(value -> etags.put(path, value));
+      return expectOk(response);
+    }
+
+    private HttpRequest.Builder get(String path) {
+      return request(path).GET();
+    }
+
+    private HttpRequest.Builder request(String path) {
+      return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpResponse<Void> send(HttpRequest.Builder request, boolean withCookies) throws IOException, InterruptedException {
+      if (withCookies && !cookies.isEmpty()) {
+        StringBuilder header = new StringBuilder();
+        cookies.forEach((name, value) -> header.append(header.length() > 0 ? "; " : "").append(name).append('=').append(value));
+        request.header("Cookie", header.toString());
+      }
+      HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+      for (String setCookie : response.headers().allValues("Set-Cookie")) {
+        keepCookie(setCookie);
+      }
+      return response;
+    }
+
+    /**
+     * Only the name, value and whether it is deleted matter here.
+     */
+    private void keepCookie(String setCookie) {
+      int nameEnd = setCookie.indexOf('=');
+      int valueEnd = setCookie.indexOf(';');
+      String name = setCookie.substring(0, nameEnd).trim();
+      if (!name.startsWith(COOKIE_NAME_PREFIX))
+        return;
+
+      String value = setCookie.substring(nameEnd + 1, valueEnd < 0 ? setCookie.length() : valueEnd);
+      String attributes = setCookie.toLowerCase(Locale.ROOT);
+      if (value.isEmpty() || attributes.contains("max-age=0") || attributes.contains("expires=thu, 01-jan-1970"))
+        cookies.remove(name);
+      else
+        cookies.put(name, value);
+    }
+
+    private String expectOk(HttpResponse<Void> response) {
+      return response.statusCode() == 200 ? null : "status " + response.statusCode();
+    }
+
+    private String expectRedirect(HttpResponse<Void> response, String location) {
+      if (response.statusCode() != 302)
+        return "status " + response.statusCode();
+      String actual = response.headers().firstValue("Location").orElse("");
+      return actual.endsWith(location) ? null : "redirected to " + actual;
+    }
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Latencies (in nanoseconds) and failures per flow.
+   */
+  private static class Result {
+    private final Map<Flow, Histogram> latencies = new EnumMap<>(Flow.class);
+    private final Map<Flow, Map<String, Long>> failures = new EnumMap<>(Flow.class);
+
+    private Result() {
+      for (Flow flow : Flow.values()) {
+        latencies.put(flow, new Histogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS));
+        failures.put(flow, new TreeMap<>());
+      }
+    }
+
+    private void record(Flow flow, long nanos, String failure) {
+      latencies.get(flow).recordValue(Math.min(nanos, MAX_LATENCY_NANOS));
+      if (failure != null)
+        failures.get(flow).merge(failure, 1L, Long::sum);
+    }
+
+    private void add(Result other) {
+      for (Flow flow : Flow.values()) {
+        latencies.get(flow).add(other.latencies.get(flow));
+        other.failures.get(flow).forEach((failure, count) -> failures.get(flow).merge(failure, count, Long::sum));
+      }
+    }
+
+    private void print(Duration duration, PrintStream out) {
+      Histogram total = new Histogram(MAX_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+      Map<String, Long> totalFailures = new TreeMap<>();
+      out.printf("%-10s %10s %10s %9s %9s %9s %9s %9s%n", "flow", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "failures");
+      for (Flow flow : Flow.values()) {
+        Histogram histogram = latencies.get(flow);
+        total.add(histogram);
+        failures.get(flow).forEach((failure, count) -> totalFailures.merge(flow.label() + ": " + failure, count, Long::sum));
+        print(flow.label(), histogram, failures.get(flow).values().stream().mapToLong(Long::longValue).sum(), duration, out);
+      }
+      print("total", total, totalFailures.values().stream().mapToLong(Long::longValue).sum(), duration, out);
+      totalFailures.forEach((failure, count) -> out.printf("  %d x %s%n", count, failure));
+    }
+
+    private static void print(String label, Histogram histogram, long failures, Duration duration, PrintStream out) {
+      long count = histogram.getTotalCount();
+      out.printf(Locale.ROOT, "%-10s %10d %10.1f %9.2f %9.2f %9.2f %9.2f %9d%n", label, count, count / (duration.toMillis() / 1000.0),
+        millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1e6, failures);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+      return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+  }
+
+  /**
+   * Relative weights of the flows.
+   */
+  private static class Mix {
+    private final Map<Flow, Integer> weights;
+    private final Flow[] flows;
+    private final int[] cumulativeWeights;
+
+    private Mix(Map<Flow, Integer> weights) {
+      this.weights = weights;
+      this.flows = weights.keySet().toArray(new Flow[0]);
+      this.cumulativeWeights = new int[flows.length];
+      int sum = 0;
+      for (int i = 0; i < flows.length; i++) {
+        sum += weights.get(flows[i]);
+        cumulativeWeights[i] = sum;
+      }
+      if (sum <= 0)
+        throw new IllegalArgumentException("Mix needs at least one flow with a positive weight");
+    }
+
+    static Mix parse(String value) {
+      Map<Flow, Integer> weights = new EnumMap<>(Flow.class);
+      for (String entry : value.split(",")) {
+        String[] flowAndWeight = entry.trim().split(":");
+        if (flowAndWeight.length != 2)
+          throw new IllegalArgumentException("Mix entries must look like 'flow:weight', was '" + entry + "'");
+        weights.put(Flow.valueOf(flowAndWeight[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(flowAndWeight[1].trim()));
+      }
+      return new Mix(weights);
+    }
+
+    Flow next(SplittableRandom random) {
+      int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+      for (int i = 0; i < flows.length; i++) {
+        if (value < cumulativeWeights[i])
+          return flows[i];
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder value = new StringBuilder();
+      weights.forEach((flow, weight) -> value.append(value.length() > 0 ? "," : "").append(flow.label()).append(':').append(weight));
+      return value.toString();
+    }
+  }
+
+  private static class Options {
+    private int clients = 8;
+    private Duration warmup = Duration.ofSeconds(10);
+    private Duration duration = Duration.ofSeconds(30);
+    private Mix mix = Mix.parse("anonymous:10,login:2,index:44,other:44");
+    private String username = "bob";
+    private String password = "builder";
+    private boolean conditional;
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    static Options parse(String[] args) {
+      Options options = new Options();
+      for (String arg : args) {
+        int separator = arg.indexOf('=');
+        String name = separator > 0 ? arg.substring(0, separator) : arg;
+        String value = separator > 0 ? arg.substring(separator + 1) : "";
+        switch (name) {
+          case "--clients":
+            options.clients = Integer.parseInt(value);
+            break;
+          case "--warmup":
+            options.warmup = seconds(value);
+            break;
+          case "--duration":
+            options.duration = seconds(value);
+            break;
+          case "--mix":
+            options.mix = Mix.parse(value);
+            break;
+          case "--username":
+            options.username = value;
+            break;
+          case "--password":
+            options.password = value;
+            break;
+          case "--conditional":
+            options.conditional = value.isEmpty() || Boolean.parseBoolean(value);
+            break;
+          default:
+            options.applicationArgs.add(arg);
+        }
+      }
+      return options;
+    }
+
+    private static Duration seconds(String value) {
+      return Duration.ofSeconds(Long.parseLong(value.endsWith("s") ? value.substring(0, value.length() - 1) : value));
+    }
+  }
+
+}
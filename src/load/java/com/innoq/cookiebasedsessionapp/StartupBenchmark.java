@@ -0,0 +1,213 @@
+package com.innoq.cookiebasedsessionapp;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Startup benchmark: launches the packaged app in a new JVM, again and again, and measures the time from launching the
+ * process to the first authenticated response - a form login followed by a cookie authenticated {@code GET /}, the
+ * way a new instance proves useful under load. Runs of the variants are interleaved, so they share the same machine
+ * conditions:
+ * <ul>
+ *   <li>{@code default} - the executable jar as deployed so far, ignoring the component index it was built with</li>
+ *   <li>{@code lazy+index} - the {@code fast-startup} Spring profile and the component index</li>
+ *   <li>{@code fast-startup} - as {@code lazy+index}, with the class-data-sharing archive</li>
+ * </ul>
+ * Needs the artifacts of {@code mvn -Pfast-startup package}. Options, all with defaults:
+ * <pre>
+ * --runs=5 --executable-jar=target/fast-startup-build/cookie-based-session-springboot-app-1.0-SNAPSHOT.jar
+ * --jar=target/fast-startup/cookie-based-session-springboot-app-1.0-SNAPSHOT-fast-startup.jar
+ * --archive=target/fast-startup/app-cds.jsa --username=bob --password=builder
+ * </pre>
+ * Any other argument is passed on to the application. {@code --train} launches the app once with
+ * {@code -XX:ArchiveClassesAtExit} instead, which is how the build records the archive.
+ */
+public class StartupBenchmark {
+
+  private static final String FAST_STARTUP_PROFILE = "--spring.profiles.active=fast-startup";
+  private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+
+  private final Options options;
+  private final HttpClient client = HttpClient.newBuilder()
+    .version(HttpClient.Version.HTTP_1_1)
+    .followRedirects(HttpClient.Redirect.NEVER)
+    .connectTimeout(Duration.ofSeconds(5))
+    .build();
+
+  private StartupBenchmark(Options options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    StartupBenchmark benchmark = new StartupBenchmark(options);
+    if (options.train) {
+      benchmark.train(options.archive);
+      return;
+    }
+
+    Map<String, List<String>> variants = new LinkedHashMap<>();
+    variants.put("default", List.of("-Dspring.index.ignore=true", "-jar", options.executableJar.toString()));
+    variants.put("lazy+index", List.of("-jar", options.jar.toString(), FAST_STARTUP_PROFILE));
+    variants.put("fast-startup", List.of("-XX:SharedArchiveFile=" + options.archive, "-jar", options.jar.toString(), FAST_STARTUP_PROFILE));
+
+    System.out.printf("%d runs, application args %s, Java %s, %d CPUs%n",
+      options.runs, options.applicationArgs, Runtime.version(), Runtime.getRuntime().availableProcessors());
+    Map<String, long[]> results = new LinkedHashMap<>();
+    variants.keySet().forEach(variant -> results.put(variant, new long[options.runs]));
+    // the first launch warms the file system cache and is not measured
+    benchmark.launch(variants.get("default"));
+    for (int run = 0; run < options.runs; run++) {
+      for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+        results.get(variant.getKey())[run] = benchmark.launch(variant.getValue());
+      }
+    }
+
+    System.out.printf("%-13s %9s %9s %9s%n", "variant", "min ms", "median ms", "max ms");
+    results.forEach((variant, nanos) -> {
+      Arrays.sort(nanos);
+      System.out.printf(Locale.ROOT, "%-13s %9.0f %9.0f %9.0f%n", variant, nanos[0] / 1e6, nanos[nanos.length / 2] / 1e6, nanos[nanos.length - 1] / 1e6);
+    });
+  }
+
+  private void train(Path archive) throws Exception {
+    Files.deleteIfExists(archive);
+    // classes CDS cannot archive (generated, JFR events, ...) are skipped, each with a warning
+    launch(List.of("-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=error", "-jar", options.jar.toString(), FAST_STARTUP_PROFILE));
+    if (!Files.exists(archive))
+      throw new IllegalStateException("No class-data-sharing archive written to " + archive);
+    System.out.printf("Class-data-sharing archive %s, %d KB%n", archive, Files.size(archive) / 1024);
+  }
+
+  /**
+   * @return nanoseconds from launching the app to its first authenticated response
+   */
+  private long launch(List<String> launchArgs) throws Exception {
+    int port = freePort();
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(launchArgs);
+    command.add("--server.port=" + port);
+    command.add("--logging.level.root=WARN");
+    command.add("--spring.main.banner-mode=off");
+    command.addAll(options.applicationArgs);
+
+    long startTime = System.nanoTime();
+    Process process = new ProcessBuilder(command).inheritIO().start();
+    try {
+      URI baseUri = URI.create("http://localhost:" + port);
+      String cookies = login(baseUri, process, startTime + START_TIMEOUT.toNanos());
+      HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUri.resolve("/")).header("Cookie", cookies).build(),
+        HttpResponse.BodyHandlers.discarding());
+      long nanos = System.nanoTime() - startTime;
+      if (response.statusCode() != 200)
+        throw new IllegalStateException("GET / answered with status " + response.statusCode() + ": " + command);
+      return nanos;
+    } finally {
+      // a regular shutdown, so -XX:ArchiveClassesAtExit gets to write the archive
+      process.destroy();
+      if (!process.waitFor(1, TimeUnit.MINUTES))
+        process.destroyForcibly();
+    }
+  }
+
+  /**
+   * Retries until the app accepts connections.
+   *
+   * @return the {@code Cookie} header of the logged in user
+   */
+  private String login(URI baseUri, Process process, long deadline) throws Exception {
+    String form = "username=" + options.username + "&password=" + options.password + "&colour=GREEN";
+    HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/login"))
+      .header("Content-Type", "application/x-www-form-urlencoded")
+      .POST(HttpRequest.BodyPublishers.ofString(form))
+      .build();
+    while (true) {
+      try {
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        String cookies = response.headers().allValues("Set-Cookie").stream()
+          .filter(setCookie -> setCookie.startsWith(SignedUserInfoCookie.NAME))
+          .map(setCookie -> setCookie.split(";", 2)[0])
+          .collect(Collectors.joining("; "));
+        if (response.statusCode() != 302 || cookies.isEmpty())
+          throw new IllegalStateException("Login answered with status " + response.statusCode() + " and no cookie");
+        return cookies;
+      } catch (ConnectException e) {
+        if (!process.isAlive())
+          throw new IllegalStateException("App exited with status " + process.exitValue());
+        if (System.nanoTime() > deadline)
+          throw new IllegalStateException("App did not start within " + START_TIMEOUT);
+        Thread.sleep(5);
+      }
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static class Options {
+    private int runs = 5;
+    private Path executableJar = Path.of("target", "fast-startup-build", "cookie-based-session-springboot-app-1.0-SNAPSHOT.jar");
+    private Path jar = Path.of("target", "fast-startup", "cookie-based-session-springboot-app-1.0-SNAPSHOT-fast-startup.jar");
+    private Path archive = Path.of("target", "fast-startup", "app-cds.jsa");
+    private boolean train;
+    private String username = "bob";
+    private String password = "builder";
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    static Options parse(String[] args) {
+      Options options = new Options();
+      for (String arg : args) {
+        int separator = arg.indexOf('=');
+        String name = separator > 0 ? arg.substring(0, separator) : arg;
+        String value = separator > 0 ? arg.substring(separator + 1) : "";
+        switch (name) {
+          case "--runs":
+            options.runs = Integer.parseInt(value);
+            break;
+          case "--executable-jar":
+            options.executableJar = Path.of(value);
+            break;
+          case "--jar":
+            options.jar = Path.of(value);
+            break;
+          case "--archive":
+            options.archive = Path.of(value);
+            break;
+          case "--train":
+            options.train = true;
+            break;
+          case "--username":
+            options.username = value;
+            break;
+          case "--password":
+            options.password = value;
+            break;
+          default:
+            options.applicationArgs.add(arg);
+        }
+      }
+      return options;
+    }
+  }
+
+}
@@ -0,0 +1,161 @@
+package com.innoq.cookiebasedsessionapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of {@link AuthenticationAuditLog} events for any number of producers and a single consumer, kept in a
+ * ring of slots allocated up front.
+ * <p>
+ * Every slot has a sequence number telling whether it is free for the producer at a position or filled for the
+ * consumer at that position (Dmitry Vyukov's bounded queue). A producer claims a position with a single compare-and-set,
+ * fills the slot and publishes it by advancing its sequence; it never waits for the consumer: if the ring is full, the
+ * event is dropped and counted. The consumer copies nothing, it reads the slot in place and hands it back.
+ */
+final class AuditEventRing {
+
+  private final Event[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private long head;
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  AuditEventRing(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30)
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30, was " + capacity);
+
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    size = Math.max(size, 1);
+    this.slots = new Event[size];
+    this.sequences = new AtomicLongArray(size);
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Event();
+      sequences.set(i, i);
+    }
+  }
+
+  int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * @return whether the event was queued, {@code false} if the ring is full
+   */
+  boolean offer(AuthenticationAuditLog.EventType type, long epochMilli, String username, Long sessionId, Object reason,
+                String remoteAddress) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) position & mask;
+      long available = sequences.get(index) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots[index].set(type, epochMilli, username, sessionId, reason, remoteAddress);
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (available < 0) {
+        dropped.increment();
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * To be called by a single thread at a time. The event handed to the consumer is only valid during the call.
+   *
+   * @return the number of events drained, at most {@code limit}
+   */
+  int drain(Consumer<Event> consumer, int limit) {
+    int drained = 0;
+    while (drained < limit) {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1)
+        break;
+
+      Event event = slots[index];
+      try {
+        consumer.accept(event);
+      } finally {
+        event.clear();
+        sequences.lazySet(index, head + slots.length);
+        head++;
+        drained++;
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * To be called by the consumer only.
+   *
+   * @return whether there is no event to drain
+   */
+  boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+  /**
+   * @return the number of events dropped because the ring was full
+   */
+  long dropped() {
+    return dropped.sum();
+  }
+
+  static final class Event {
+    private AuthenticationAuditLog.EventType type;
+    private long epochMilli;
+    private String username;
+    private Long sessionId;
+    private Object reason;
+    private String remoteAddress;
+
+    private void set(AuthenticationAuditLog.EventType type, long epochMilli, String username, Long sessionId, Object reason,
+                     String remoteAddress) {
+      this.type = type;
+      this.epochMilli = epochMilli;
+      this.username = username;
+      this.sessionId = sessionId;
+      this.reason = reason;
+      this.remoteAddress = remoteAddress;
+    }
+
+    private void clear() {
+      set(null, 0, null, null, null, null);
+    }
+
+    AuthenticationAuditLog.EventType getType() {
+      return type;
+    }
+
+    long getEpochMilli() {
+      return epochMilli;
+    }
+
+    String getUsername() {
+      return username;
+    }
+
+    Long getSessionId() {
+      return sessionId;
+    }
+
+    Object getReason() {
+      return reason;
+    }
+
+    String getRemoteAddress() {
+      return remoteAddress;
+    }
+  }
+
+}
@@ -0,0 +1,305 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An audit trail of authentication events (logins, new sessions, rejected cookies, logouts), written as JSON lines to a
+ * local file ({@code auth.audit.file}), when one is configured.
+ * <p>
+ * Request threads only put the event into an {@link AuditEventRing} of {@code auth.audit.capacity} slots, allocated up
+ * front; they never wait for the file. A single background thread drains the ring, formats and writes the events and
+ * flushes whenever the ring runs empty. It then parks until the next event: a request thread putting one into the ring
+ * while the writer is idle unparks it, so an idle writer costs nothing. If the writer falls so far behind that the ring
+ * is full, further events are dropped and counted rather than holding up requests.
+ * <p>
+ * Once the file would grow beyond {@code auth.audit.max-file-size}, it is rolled over: {@code file.1} becomes
+ * {@code file.2} and so on, up to {@code auth.audit.max-files} rolled files, {@code file} becomes {@code file.1} and a
+ * new file is started.
+ * <p>
+ * Meters: {@code auth.audit.written} and {@code auth.audit.dropped}, both counting events.
+ */
+@Component
+public class AuthenticationAuditLog implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AuthenticationAuditLog.class);
+  private static final int BATCH_SIZE = 256;
+  /**
+   * How long the idle writer parks at most, should an unpark ever go missing.
+   */
+  private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  static final String EXPIRED = "expired";
+  static final String REVOKED = "revoked";
+
+  enum EventType {
+    LOGIN_SUCCEEDED, LOGIN_FAILED, SESSION_STARTED, COOKIE_REJECTED, LOGOUT;
+
+    private final String json = name().toLowerCase(Locale.ROOT);
+  }
+
+  private final Path file;
+  private final long maxFileSize;
+  private final int maxFiles;
+  private final Clock clock;
+  private final AuditEventRing ring;
+  private final Thread writer;
+  private final StringBuilder line = new StringBuilder(256);
+  private final AtomicBoolean writerIdle = new AtomicBoolean();
+
+  private volatile boolean running = true;
+  private volatile long written;
+  private OutputStream out;
+  private long fileSize;
+  private boolean failing;
+
+  @Autowired
+  public AuthenticationAuditLog(@Value("${auth.audit.file:}") String file,
+                                @Value("${auth.audit.capacity:8192}") int capacity,
+                                @Value("${auth.audit.max-file-size:10MB}") DataSize maxFileSize,
+                                @Value("${auth.audit.max-files:10}") int maxFiles,
+                                MeterRegistry registry) {
+    this(file.isBlank() ? null : Path.of(file), capacity, maxFileSize.toBytes(), maxFiles, registry, Clock.systemUTC());
+  }
+
+  AuthenticationAuditLog(Path file, int capacity, long maxFileSize, int maxFiles, MeterRegistry registry, Clock clock) {
+    this.file = file;
+    this.maxFileSize = maxFileSize;
+    this.maxFiles = maxFiles;
+    this.clock = clock;
+    if (file == null) {
+      this.ring = null;
+      this.writer = null;
+      return;
+    }
+
+    this.ring = new AuditEventRing(capacity);
+    try {
+      open();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    FunctionCounter.builder("auth.audit.written", this, log -> log.written)
+      .description("Authentication events written to the audit log")
+      .register(registry);
+    FunctionCounter.builder("auth.audit.dropped", ring, AuditEventRing::dropped)
+      .description("Authentication events dropped because the audit log fell behind")
+      .register(registry);
+    this.writer = new Thread(this::writeUntilStopped, "auth-audit-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * @return an audit log that records nothing, for tests and benchmarks
+   */
+  static AuthenticationAuditLog disabled() {
+    return new AuthenticationAuditLog(null, 0, 0, 0, new SimpleMeterRegistry(), Clock.systemUTC());
+  }
+
+  void loginSucceeded(String username, String remoteAddress) {
+    record(EventType.LOGIN_SUCCEEDED, username, null, null, remoteAddress);
+  }
+
+  /**
+   * @param reason the simple name of the {@link org.springframework.security.core.AuthenticationException}
+   */
+  void loginFailed(String username, String reason, String remoteAddress) {
+    record(EventType.LOGIN_FAILED, username, null, reason, remoteAddress);
+  }
+
+  void sessionStarted(String username, Long sessionId, String remoteAddress) {
+    record(EventType.SESSION_STARTED, username, sessionId, null, remoteAddress);
+  }
+
+  /**
+   * @param reason a constant; enums such as {@link CookiePrecheck.Rejection} are written by their name in lower case
+   * @param username {@code null} unless the cookie passed verification
+   */
+  void cookieRejected(Object reason, String username, Long sessionId, String remoteAddress) {
+    record(EventType.COOKIE_REJECTED, username, sessionId, reason, remoteAddress);
+  }
+
+  void logout(String username, String remoteAddress) {
+    record(EventType.LOGOUT, username, null, null, remoteAddress);
+  }
+
+  private void record(EventType type, String username, Long sessionId, Object reason, String remoteAddress) {
+    if (ring != null && ring.offer(type, clock.millis(), username, sessionId, reason, remoteAddress)) {
+      // the event must be visible before the flag is read, or the writer may park after missing both
+      VarHandle.fullFence();
+      if (writerIdle.get() && writerIdle.compareAndSet(true, false))
+        LockSupport.unpark(writer);
+    }
+  }
+
+  long written() {
+    return written;
+  }
+
+  long dropped() {
+    return ring != null ? ring.dropped() : 0;
+  }
+
+  private void writeUntilStopped() {
+    while (running) {
+      if (ring.drain(this::write, BATCH_SIZE) == 0) {
+        flush();
+        writerIdle.set(true);
+        if (running && ring.isEmpty())
+          LockSupport.parkNanos(IDLE_NANOS);
+        writerIdle.set(false);
+      }
+    }
+  }
+
+  private void write(AuditEventRing.Event event) {
+    line.setLength(0);
+    line.append("{\"time\":\"").append(Instant.ofEpochMilli(event.getEpochMilli())).append('"');
+    line.append(",\"event\":\"").append(event.getType().json).append('"');
+    appendString("user", event.getUsername());
+    if (event.getSessionId() != null)
+      line.append(",\"session\":\"").append(RevocationList.format(event.getSessionId())).append('"');
+    appendString("reason", reasonOf(event.getReason()));
+    appendString("remote", event.getRemoteAddress());
+    line.append("}\n");
+
+    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+    try {
+      if (out == null)
+        open();
+      else if (fileSize > 0 && fileSize + bytes.length > maxFileSize)
+        roll();
+      out.write(bytes);
+      fileSize += bytes.length;
+      written++;
+      failing = false;
+    } catch (IOException e) {
+      if (!failing)
+        LOG.warn("Failed to write to audit log {}, dropping events until it recovers", file, e);
+      failing = true;
+    }
+  }
+
+  private static String reasonOf(Object reason) {
+    if (reason instanceof Enum)
+      return ((Enum<?>) reason).name().toLowerCase(Locale.ROOT);
+    return reason != null ? reason.toString() : null;
+  }
+
+  private void appendString(String name, String value) {
+    if (value == null)
+      return;
+
+    line.append(",\"").append(name).append("\":\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\')
+        line.append('\\').append(c);
+      else if (c < 0x20)
+        line.append(String.format("\\u%04x", (int) c));
+      else
+        line.append(c);
+    }
+    line.append('"');
+  }
+
+  private void flush() {
+    if (out == null)
+      return;
+
+    try {
+      out.flush();
+    } catch (IOException e) {
+      if (!failing)
+        LOG.warn("Failed to flush audit log {}", file, e);
+      failing = true;
+    }
+  }
+
+  private void open() throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory != null)
+      Files.createDirectories(directory);
+    out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+    fileSize = Files.size(file);
+  }
+
+  /**
+   * If this fails half way, the next event tries to open the file again.
+   */
+  private void roll() throws IOException {
+    OutputStream closing = out;
+    out = null;
+    closing.close();
+    for (int i = maxFiles - 1; i >= 1; i--) {
+      Path rolled = rolled(i);
+      if (Files.exists(rolled))
+        Files.move(rolled, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+    }
+    if (maxFiles > 0)
+      Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    else
+      Files.delete(file);
+    open();
+  }
+
+  private Path rolled(int index) {
+    return file.resolveSibling(file.getFileName() + "." + index);
+  }
+
+  /**
+   * Stops the writer and writes whatever is left in the ring.
+   */
+  @Override
+  public void destroy() {
+    if (writer == null)
+      return;
+
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive())
+      return;
+
+    while (ring.drain(this::write, BATCH_SIZE) > 0) {
+      // until empty
+    }
+    try {
+      if (out != null)
+        out.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close audit log {}", file, e);
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.innoq.cookiebasedsessionapp;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts and authenticates {@link SignedUserInfoCookie} values with AES-256-GCM, the alternative to signing them with
+ * a {@link CookieSigner}.
+ * <p>
+ * The AES key is derived from the secret of a {@link CookieKeyRing} key by {@link CookieKeyDerivation}, so switching
+ * modes needs no new secrets, with a label of its own, so it is never the key a {@link CookieSigner} signs with. Nonces are 96 bits: a random prefix per instance followed by a counter starting at a random
+ * value, so they never repeat within an instance and practically never across instances. Like the {@link Mac}s of
+ * {@link CookieSigner}, {@link Cipher}s are pooled, as looking one up is expensive; each value needs a new nonce, so a
+ * pooled {@link Cipher} is initialised again for every value, which is cheap.
+ */
+class CookieCipher {
+
+  static final int NONCE_LENGTH = 12;
+  static final int TAG_LENGTH = 16;
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final SecretKeySpec key;
+  private final int noncePrefix = RANDOM.nextInt();
+  private final AtomicLong nonceCounter = new AtomicLong(RANDOM.nextLong());
+  private final ConcurrentLinkedDeque<Cipher> ciphers = new ConcurrentLinkedDeque<>();
+
+  /**
+   * @param key the AES-256 key, see {@link CookieKeyDerivation#encryptionKey}
+   */
+  CookieCipher(byte[] key) {
+    if (key.length != CookieKeyDerivation.ENCRYPTION_KEY_LENGTH)
+      throw new IllegalArgumentException("AES key must be " + CookieKeyDerivation.ENCRYPTION_KEY_LENGTH + " bytes, was " + key.length);
+    this.key = new SecretKeySpec(key, "AES");
+  }
+
+  /**
+   * @return the first {@code headerLength} bytes of {@code header}, authenticated but not encrypted, followed by the
+   * nonce, the first {@code length} bytes of {@code plaintext} encrypted and the authentication tag
+   */
+  byte[] encrypt(byte[] header, int headerLength, byte[] plaintext, int length) {
+    byte[] data = new byte[headerLength + NONCE_LENGTH + length + TAG_LENGTH];
+    System.arraycopy(header, 0, data, 0, headerLength);
+    writeNonce(data, headerLength);
+
+    Cipher cipher = acquire();
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * Byte.SIZE, data, headerLength, NONCE_LENGTH));
+      cipher.updateAAD(data, 0, headerLength);
+      cipher.doFinal(plaintext, 0, length, data, headerLength + NONCE_LENGTH);
+      return data;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      release(cipher);
+    }
+  }
+
+  /**
+   * @return the plaintext of a value written by {@link #encrypt}, {@code null} if it was not encrypted with this key or
+   * has been tampered with
+   */
+  byte[] decrypt(byte[] data, int headerLength) {
+    int ciphertextOffset = headerLength + NONCE_LENGTH;
+    if (data.length - ciphertextOffset < TAG_LENGTH)
+      return null;
+
+    Cipher cipher = acquire();
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * Byte.SIZE, data, headerLength, NONCE_LENGTH));
+      cipher.updateAAD(data, 0, headerLength);
+      return cipher.doFinal(data, ciphertextOffset, data.length - ciphertextOffset);
+    } catch (AEADBadTagException e) {
+      return null;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      release(cipher);
+    }
+  }
+
+  private void writeNonce(byte[] data, int offset) {
+    long counter = nonceCounter.getAndIncrement();
+    for (int i = 0; i < Integer.BYTES; i++) {
+      data[offset + i] = (byte) (noncePrefix >>> (Integer.SIZE - Byte.SIZE * (i + 1)));
+    }
+    for (int i = 0; i < Long.BYTES; i++) {
+      data[offset + Integer.BYTES + i] = (byte) (counter >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+    }
+  }
+
+  private Cipher acquire() {
+    Cipher cipher = ciphers.pollFirst();
+    return cipher != null ? cipher : createCipher();
+  }
+
+  private void release(Cipher cipher) {
+    ciphers.offerFirst(cipher);
+  }
+
+  private static Cipher createCipher() {
+    try {
+      return Cipher.getInstance(TRANSFORMATION);
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.innoq.cookiebasedsessionapp;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Derives the keys a {@link CookieKeyRing} key signs and encrypts with from its secret, using HKDF with HMAC-SHA256
+ * (RFC 5869) and a label per purpose. Neither key is the secret itself, and knowing one does not help computing the
+ * other, so a MAC the {@link CookieSigner} calculates can never serve as the key of the {@link CookieCipher}.
+ */
+final class CookieKeyDerivation {
+
+  static final int MAC_KEY_LENGTH = 64;
+  static final int ENCRYPTION_KEY_LENGTH = 32;
+  private static final String HASH = MacAlgorithm.HMAC_SHA_256.getJcaName();
+  private static final byte[] MAC_KEY_LABEL = "UserInfo cookie HMAC key".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] ENCRYPTION_KEY_LABEL = "UserInfo cookie AES-256-GCM key".getBytes(StandardCharsets.UTF_8);
+
+  private CookieKeyDerivation() {
+  }
+
+  static byte[] macKey(String secret) {
+    return hkdf(secret.getBytes(StandardCharsets.UTF_8), MAC_KEY_LABEL, MAC_KEY_LENGTH);
+  }
+
+  static byte[] encryptionKey(String secret) {
+    return hkdf(secret.getBytes(StandardCharsets.UTF_8), ENCRYPTION_KEY_LABEL, ENCRYPTION_KEY_LENGTH);
+  }
+
+  /**
+   * HKDF-Extract without salt, followed by HKDF-Expand of the pseudorandom key with {@code info}.
+   */
+  static byte[] hkdf(byte[] secret, byte[] info, int length) {
+    try {
+      Mac mac = Mac.getInstance(HASH);
+      mac.init(new SecretKeySpec(new byte[mac.getMacLength()], HASH));
+      byte[] pseudorandomKey = mac.doFinal(secret);
+
+      mac.init(new SecretKeySpec(pseudorandomKey, HASH));
+      byte[] output = new byte[length];
+      byte[] block = new byte[0];
+      for (int offset = 0, counter = 1; offset < length; offset += block.length, counter++) {
+        mac.update(block);
+        mac.update(info);
+        mac.update((byte) counter);
+        block = mac.doFinal();
+        System.arraycopy(block, 0, output, offset, Math.min(block.length, length - offset));
+      }
+      Arrays.fill(pseudorandomKey, (byte) 0);
+      return output;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,212 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The keys {@link SignedUserInfoCookie} values are signed (or encrypted) with, each identified by an id between 0 and 255 that is
+ * recorded in the cookie, so verification needs exactly one lookup and one MAC.
+ * <p>
+ * Key 0 is {@code auth.cookie.hmac-key}; cookies issued before key ids existed are verified with it. More keys can be
+ * kept in a properties file ({@code auth.cookie.key-ring.file}) mapping ids to secrets, plus a {@code current} entry
+ * naming the id new cookies are signed with:
+ * <pre>
+ * current=2
+ * 1=...
+ * 2=...
+ * </pre>
+ * The file is polled for changes and reloaded without restart. A reload builds a complete new set of keys and swaps it
+ * in with a single volatile write, so requests never wait for a lock. Cookies signed with a key that is removed from the
+ * file are invalid from then on: every reload counts up the {@link #generation()} and tells the {@link #onReload
+ * listeners}, so the {@link VerifiedCookieCache} drops what it verified with the previous keys.
+ * <p>
+ * Secrets are never used as keys directly: the MAC and AES keys of compact values are derived from them with
+ * {@link CookieKeyDerivation}. Only legacy text values are verified with the secret itself.
+ */
+@Component
+@Lazy(false)
+public class CookieKeyRing implements DisposableBean {
+
+  static final int DEFAULT_KEY_ID = 0;
+  private static final int MAX_KEY_ID = 255;
+  private static final String CURRENT_PROPERTY = "current";
+
+  private final String defaultKey;
+  private final FileReloader reloader;
+  private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+  private volatile Keys keys;
+
+  @Autowired
+  public CookieKeyRing(@Value("${auth.cookie.hmac-key}") String cookieHmacKey,
+                       @Value("${auth.cookie.key-ring.file:}") String keyRingFile,
+                       @Value("${auth.cookie.key-ring.reload-interval:10s}") Duration reloadInterval) {
+    this.defaultKey = cookieHmacKey;
+    this.keys = Keys.of(Map.of(DEFAULT_KEY_ID, cookieHmacKey), DEFAULT_KEY_ID, 0);
+    if (keyRingFile.isBlank()) {
+      this.reloader = null;
+    } else {
+      this.reloader = new FileReloader("cookie-key-ring", Path.of(keyRingFile), reloadInterval, this::load);
+      this.reloader.start();
+    }
+  }
+
+  private CookieKeyRing(String cookieHmacKey) {
+    this.defaultKey = cookieHmacKey;
+    this.keys = Keys.of(Map.of(DEFAULT_KEY_ID, cookieHmacKey), DEFAULT_KEY_ID, 0);
+    this.reloader = null;
+  }
+
+  /**
+   * @return a key ring only containing the given key, without reloading
+   */
+  public static CookieKeyRing of(String cookieHmacKey) {
+    return new CookieKeyRing(cookieHmacKey);
+  }
+
+  /**
+   * @return the key new cookies are signed with
+   */
+  Key current() {
+    return keys.current;
+  }
+
+  /**
+   * @return the key with the given id, {@code null} if there is none
+   */
+  Key get(int keyId) {
+    Key[] byId = keys.byId;
+    return keyId >= 0 && keyId < byId.length ? byId[keyId] : null;
+  }
+
+  /**
+   * @return a number that changes whenever the keys are reloaded
+   */
+  long generation() {
+    return keys.generation;
+  }
+
+  /**
+   * @param listener called after every reload, on the thread that reloaded the keys
+   */
+  void onReload(Runnable listener) {
+    reloadListeners.add(listener);
+  }
+
+  void load(Path keyRingFile) {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(keyRingFile, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    Map<Integer, String> secrets = new HashMap<>();
+    secrets.put(DEFAULT_KEY_ID, defaultKey);
+    for (String name : properties.stringPropertyNames()) {
+      if (!CURRENT_PROPERTY.equals(name))
+        secrets.put(parseKeyId(name), properties.getProperty(name).trim());
+    }
+
+    String current = properties.getProperty(CURRENT_PROPERTY);
+    this.keys = Keys.of(secrets, current == null ? DEFAULT_KEY_ID : parseKeyId(current.trim()), keys.generation + 1);
+    reloadListeners.forEach(Runnable::run);
+  }
+
+  private static int parseKeyId(String value) {
+    try {
+      int keyId = Integer.parseInt(value);
+      if (keyId >= 0 && keyId <= MAX_KEY_ID)
+        return keyId;
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Key id must be a number between 0 and " + MAX_KEY_ID + ", was '" + value + "'");
+  }
+
+  @Override
+  public void destroy() {
+    if (reloader != null)
+      reloader.close();
+  }
+
+  static class Key {
+    private final int id;
+    private final Map<MacAlgorithm, CookieSigner> signers = new EnumMap<>(MacAlgorithm.class);
+    private final CookieSigner textSigner;
+    private final CookieCipher cipher;
+
+    private Key(int id, String secret) {
+      if (secret == null || secret.isBlank())
+        throw new IllegalArgumentException("Key " + id + " is empty");
+
+      this.id = id;
+      byte[] macKey = CookieKeyDerivation.macKey(secret);
+      for (MacAlgorithm algorithm : MacAlgorithm.values()) {
+        signers.put(algorithm, new CookieSigner(macKey, algorithm));
+      }
+      this.textSigner = new CookieSigner(secret, MacAlgorithm.HMAC_SHA_512);
+      this.cipher = new CookieCipher(CookieKeyDerivation.encryptionKey(secret));
+    }
+
+    int getId() {
+      return id;
+    }
+
+    /**
+     * @return the signer of the compact format, keyed with the MAC key derived from the secret
+     */
+    CookieSigner signer(MacAlgorithm algorithm) {
+      return signers.get(algorithm);
+    }
+
+    /**
+     * @return the signer keyed with the secret itself, only to verify values in the legacy text format, which were
+     * signed that way before keys were derived and are never written any more
+     */
+    CookieSigner textSigner() {
+      return textSigner;
+    }
+
+    CookieCipher cipher() {
+      return cipher;
+    }
+  }
+
+  private static class Keys {
+    private final Key[] byId;
+    private final Key current;
+    private final long generation;
+
+    private Keys(Key[] byId, Key current, long generation) {
+      this.byId = byId;
+      this.current = current;
+      this.generation = generation;
+    }
+
+    private static Keys of(Map<Integer, String> secrets, int currentKeyId, long generation) {
+      Key[] byId = new Key[MAX_KEY_ID + 1];
+      secrets.forEach((id, secret) -> byId[id] = new Key(id, secret));
+      if (byId[currentKeyId] == null)
+        throw new IllegalArgumentException("Current key " + currentKeyId + " is not part of the key ring");
+      return new Keys(byId, byId[currentKeyId], generation);
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the security context repositories and the {@link UserInfoCookieVerifier}:
+ * <ul>
+ *   <li>{@code auth.cookie.context} - time spent loading the context, verifying the cookie and saving the context (tag
+ *   {@code operation}: load, verify, save). The cookie is verified while loading the context, so {@code load}
+ *   includes {@code verify}.</li>
+ *   <li>{@code auth.cookie.verifications} - outcome of reading the cookie of a request (tag {@code result}: missing,
+ *   malformed, invalid_signature, expired, revoked, valid)</li>
+ *   <li>{@code auth.cookie.precheck.rejections} - cookies turned away before verification (tag {@code reason}:
+ *   oversized, illegal_character, malformed, expired)</li>
+ *   <li>{@code auth.cookie.issued.size} - length of the values of issued cookies</li>
+ *   <li>{@code auth.cookie.writes} - number of Set-Cookie headers written</li>
+ * </ul>
+ * All meters are registered up front, so recording is a counter increment or a timer update without any lookup.
+ */
+@Component
+public class CookieMetrics {
+
+  private final Clock clock;
+  private final Timer loadContextTimer;
+  private final Timer verifyTimer;
+  private final Timer saveContextTimer;
+  private final Counter missing;
+  private final Counter malformed;
+  private final Counter invalidSignature;
+  private final Counter expired;
+  private final Counter revoked;
+  private final Counter valid;
+  private final Map<CookiePrecheck.Rejection, Counter> precheckRejections = new EnumMap<>(CookiePrecheck.Rejection.class);
+  private final DistributionSummary issuedSize;
+  private final Counter writes;
+
+  public CookieMetrics(MeterRegistry registry) {
+    this.clock = registry.config().clock();
+    this.loadContextTimer = contextTimer("load", registry);
+    this.verifyTimer = contextTimer("verify", registry);
+    this.saveContextTimer = contextTimer("save", registry);
+    this.missing = verifications("missing", registry);
+    this.malformed = verifications("malformed", registry);
+    this.invalidSignature = verifications("invalid_signature", registry);
+    this.expired = verifications("expired", registry);
+    this.revoked = verifications("revoked", registry);
+    this.valid = verifications("valid", registry);
+    for (CookiePrecheck.Rejection rejection : CookiePrecheck.Rejection.values()) {
+      precheckRejections.put(rejection, Counter.builder("auth.cookie.precheck.rejections")
+        .description(SignedUserInfoCookie.NAME + " cookies rejected before verification")
+        .tag("reason", rejection.name().toLowerCase(Locale.ROOT))
+        .register(registry));
+    }
+    this.issuedSize = DistributionSummary.builder("auth.cookie.issued.size")
+      .description("Length of issued " + SignedUserInfoCookie.NAME + " cookie values")
+      .baseUnit("bytes")
+      .publishPercentileHistogram()
+      .register(registry);
+    this.writes = Counter.builder("auth.cookie.writes")
+      .description("Set-Cookie headers written for the " + SignedUserInfoCookie.NAME + " cookie")
+      .register(registry);
+  }
+
+  /**
+   * @return metrics recorded in a registry of their own, for tests and benchmarks
+   */
+  static CookieMetrics standalone() {
+    return new CookieMetrics(new SimpleMeterRegistry());
+  }
+
+  private static Timer contextTimer(String operation, MeterRegistry registry) {
+    return Timer.builder("auth.cookie.context")
+      .description("Time spent loading, verifying and saving the SecurityContext from and to the " + SignedUserInfoCookie.NAME
+        + " cookie; verify is timed on its own, load covers it only on WebFlux, where it is verified while loading")
+      .tag("operation", operation)
+      .publishPercentileHistogram()
+      .register(registry);
+  }
+
+  private static Counter verifications(String result, MeterRegistry registry) {
+    return Counter.builder("auth.cookie.verifications")
+      .description("Outcome of reading the " + SignedUserInfoCookie.NAME + " cookie of a request")
+      .tag("result", result)
+      .register(registry);
+  }
+
+  long startTime() {
+    return clock.monotonicTime();
+  }
+
+  void loadContextDone(long startTime) {
+    loadContextTimer.record(clock.monotonicTime() - startTime, TimeUnit.NANOSECONDS);
+  }
+
+  void verifyDone(long startTime) {
+    verifyTimer.record(clock.monotonicTime() - startTime, TimeUnit.NANOSECONDS);
+  }
+
+  void saveContextDone(long startTime) {
+    saveContextTimer.record(clock.monotonicTime() - startTime, TimeUnit.NANOSECONDS);
+  }
+
+  void cookieMissing() {
+    missing.increment();
+  }
+
+  void cookieRejected(CookieVerificationFailedException e) {
+    if (e.getReason() == CookieVerificationFailedException.Reason.INVALID_SIGNATURE)
+      invalidSignature.increment();
+    else
+      malformed.increment();
+  }
+
+  void cookiePrecheckFailed(CookiePrecheck.Rejection rejection) {
+    precheckRejections.get(rejection).increment();
+  }
+
+  void cookieMalformed() {
+    malformed.increment();
+  }
+
+  void cookieExpired() {
+    expired.increment();
+  }
+
+  void cookieRevoked() {
+    revoked.increment();
+  }
+
+  void cookieValid() {
+    valid.increment();
+  }
+
+  void cookieWritten(SignedUserInfoCookie cookie) {
+    writes.increment();
+    issuedSize.record(cookie.getValue().length());
+  }
+
+}
@@ -0,0 +1,114 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The signed content of the {@link SignedUserInfoCookie}, independent of the format it is encoded in.
+ */
+public final class CookiePayload {
+
+  private final String username;
+  private final List<String> roles;
+  private final String colour;
+  private final Long expiry;
+  private final Long sessionId;
+  private final RoleDictionary dictionary;
+
+  CookiePayload(String username, List<String> roles, String colour, Long expiry) {
+    this(username, roles, colour, expiry, RoleDictionary.empty());
+  }
+
+  CookiePayload(String username, List<String> roles, String colour, Long expiry, RoleDictionary dictionary) {
+    this(username, roles, colour, expiry, null, dictionary);
+  }
+
+  CookiePayload(String username, List<String> roles, String colour, Long expiry, Long sessionId, RoleDictionary dictionary) {
+    this.username = Objects.requireNonNull(username);
+    this.roles = List.copyOf(roles);
+    this.colour = colour;
+    this.expiry = expiry;
+    this.sessionId = sessionId;
+    this.dictionary = dictionary;
+  }
+
+  static CookiePayload of(UserInfo userInfo, Instant expiry, Long sessionId) {
+    return new CookiePayload(
+      userInfo.getUsername(),
+      userInfo.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(toList()),
+      userInfo.getColour().orElse(null),
+      expiry.getEpochSecond(),
+      sessionId,
+      RoleDictionary.empty());
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public List<String> getRoles() {
+    return roles;
+  }
+
+  /**
+   * @return the roles as a {@link RoleSet}, backed by the dictionary of the codec that decoded the payload
+   */
+  Set<GrantedAuthority> getAuthorities() {
+    return dictionary.authoritiesOf(roles);
+  }
+
+  public Optional<String> getColour() {
+    return Optional.ofNullable(colour);
+  }
+
+  /**
+   * @return the point in time the cookie expires, empty for cookies issued before the expiry was part of the value
+   */
+  public Optional<Instant> getExpiry() {
+    return Optional.ofNullable(expiry).map(Instant::ofEpochSecond);
+  }
+
+  Long getExpiryEpochSecond() {
+    return expiry;
+  }
+
+  /**
+   * @return the random id of the session the cookie belongs to, {@code null} for cookies issued without one
+   */
+  Long getSessionId() {
+    return sessionId;
+  }
+
+  public boolean isExpired(Instant now) {
+    return expiry != null && expiry <= now.getEpochSecond();
+  }
+
+  /**
+   * @return whether the payload carries the same username, roles and colour as the given user
+   */
+  public boolean represents(UserInfo userInfo) {
+    if (!username.equals(userInfo.getUsername()))
+      return false;
+    if (!Objects.equals(colour, userInfo.getColour().orElse(null)))
+      return false;
+
+    Set<String> authorities = new HashSet<>();
+    for (GrantedAuthority authority : userInfo.getAuthorities()) {
+      authorities.add(authority.getAuthority());
+    }
+    return authorities.size() == roles.size() && authorities.containsAll(roles);
+  }
+
+  public UserInfo toUserInfo() {
+    return new UserInfo(username, getAuthorities(), colour);
+  }
+
+}
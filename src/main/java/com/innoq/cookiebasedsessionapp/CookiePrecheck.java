@@ -0,0 +1,196 @@
+package com.innoq.cookiebasedsessionapp;
+
+import com.innoq.cookiebasedsessionapp.UserInfoCookieCodec.CompactHeader;
+import com.innoq.cookiebasedsessionapp.UserInfoCookieCodec.TextFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+
+/**
+ * Structural checks of a {@link SignedUserInfoCookie} value that are done before it is decoded or its MAC is computed,
+ * so junk values are turned away at the cost of a single scan.
+ * <p>
+ * A value passing the checks may still be invalid, but one failing them can never be valid. The expiry is read from
+ * the unverified value: this can only cause a cookie to be rejected, never accepted.
+ */
+@Component
+public class CookiePrecheck {
+
+  public enum Rejection {
+    /** The value, all its chunks joined, is longer than {@code auth.cookie.max-length}. */
+    OVERSIZED,
+    /** The value contains a character neither format uses. */
+    ILLEGAL_CHARACTER,
+    /** The value does not have the layout of either format. */
+    MALFORMED,
+    /** The value carries an expiry that has passed. */
+    EXPIRED
+  }
+
+  private static final int COMPACT_CHAR = 1;
+  private static final int TEXT_CHAR = 1 << 1;
+  private static final byte[] CHAR_CLASSES = new byte[128];
+  private static final byte[] BASE64URL_VALUES = new byte[128];
+
+  /**
+   * Enough Base64url characters to hold the largest header and expiry.
+   */
+  private static final int COMPACT_PREFIX_CHARS = 20;
+  /**
+   * Expiry, UID length, at least one UID byte, role count and colour length.
+   */
+  private static final int COMPACT_MIN_FIELDS_LENGTH = 5;
+  private static final int MAX_VARLONG_BYTES = 10;
+
+  static {
+    String base64url = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    for (int i = 0; i < base64url.length(); i++) {
+      CHAR_CLASSES[base64url.charAt(i)] = COMPACT_CHAR;
+      BASE64URL_VALUES[base64url.charAt(i)] = (byte) i;
+    }
+    for (char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789_|+/=&".toCharArray()) {
+      CHAR_CLASSES[c] |= TEXT_CHAR;
+    }
+  }
+
+  /**
+   * Name, {@code =} and the {@code ; } separating it from the next cookie in the {@code Cookie} header, per chunk.
+   */
+  private static final int CHUNK_HEADER_OVERHEAD = UserInfoCookieChunks.chunkName(0).length() + 3;
+
+  private final int maxLength;
+
+  /**
+   * The one limit on the length of a cookie value: values are neither issued nor accepted beyond it. It has to fit into
+   * the {@link UserInfoCookieChunks chunks} and, with their names, into a request header.
+   */
+  @Autowired
+  public CookiePrecheck(@Value("${auth.cookie.max-length:16384}") int maxLength,
+                        @Value("${server.max-http-header-size:8KB}") DataSize maxHttpHeaderSize) {
+    this(maxLength);
+    long headerLength = maxLength + (long) UserInfoCookieChunks.chunkCount(maxLength) * CHUNK_HEADER_OVERHEAD;
+    if (headerLength > maxHttpHeaderSize.toBytes())
+      throw new IllegalArgumentException("auth.cookie.max-length of " + maxLength + " needs a Cookie header of " + headerLength
+        + " bytes, more than server.max-http-header-size of " + maxHttpHeaderSize.toBytes());
+  }
+
+  CookiePrecheck(int maxLength) {
+    if (maxLength <= 0 || maxLength > UserInfoCookieChunks.MAX_LENGTH)
+      throw new IllegalArgumentException("auth.cookie.max-length must be between 1 and " + UserInfoCookieChunks.MAX_LENGTH
+        + " (" + UserInfoCookieChunks.MAX_CHUNKS + " chunks), was " + maxLength);
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Checked before a cookie is issued as well, so no cookie is issued that would be rejected as
+   * {@link Rejection#OVERSIZED}.
+   */
+  boolean isOversized(String value) {
+    return isOversized(value.length());
+  }
+
+  boolean isOversized(int length) {
+    return length > maxLength;
+  }
+
+  /**
+   * @return why the value is rejected, {@code null} if it passes
+   */
+  Rejection check(String value, Instant now) {
+    if (value == null)
+      return Rejection.MALFORMED;
+
+    if (isOversized(value))
+      return Rejection.OVERSIZED;
+
+    int length = value.length();
+
+    boolean text = UserInfoCookieCodec.isText(value);
+    int charClass = text ? TEXT_CHAR : COMPACT_CHAR;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= CHAR_CLASSES.length || (CHAR_CLASSES[c] & charClass) == 0)
+        return Rejection.ILLEGAL_CHARACTER;
+    }
+
+    return text ? checkText(value, now.getEpochSecond()) : checkCompact(value, now.getEpochSecond());
+  }
+
+  private static Rejection checkText(String value, long now) {
+    int hmacStart = value.lastIndexOf(TextFormat.HMAC_FIELD);
+    if (!value.startsWith(UserInfoCookieCodec.TEXT_PREFIX)
+      || hmacStart < 0
+      || hmacStart + TextFormat.HMAC_FIELD.length() == value.length()
+      || value.indexOf(TextFormat.ROLES_FIELD) < 0)
+      return Rejection.MALFORMED;
+
+    int expStart = value.indexOf(TextFormat.EXP_FIELD);
+    if (expStart < 0)
+      return null;
+
+    long expiry = 0;
+    int digits = 0;
+    for (int i = expStart + TextFormat.EXP_FIELD.length(); i < hmacStart && value.charAt(i) != '&'; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9' || ++digits > TextFormat.MAX_EXP_DIGITS)
+        return Rejection.MALFORMED;
+      expiry = 10 * expiry + (c - '0');
+    }
+    if (digits == 0)
+      return Rejection.MALFORMED;
+    return expiry <= now ? Rejection.EXPIRED : null;
+  }
+
+  private static Rejection checkCompact(String value, long now) {
+    int length = value.length();
+    if (length % 4 == 1)
+      return Rejection.MALFORMED;
+
+    byte[] prefix = decodePrefix(value);
+    CompactHeader header = CompactHeader.read(prefix, prefix.length);
+    if (header == null)
+      return Rejection.MALFORMED;
+
+    int decodedLength = length / 4 * 3 + Math.max(0, length % 4 - 1);
+    if (!header.isEncrypted() && (header.algorithm == null || header.tagLength < MacAlgorithm.MIN_TAG_LENGTH
+      || header.tagLength > header.algorithm.getMacLength())
+      || decodedLength < header.length + COMPACT_MIN_FIELDS_LENGTH + header.tagLength)
+      return Rejection.MALFORMED;
+
+    long expiry = 0;
+    for (int i = 0; ; i++) {
+      if (i == MAX_VARLONG_BYTES || header.length + i >= prefix.length)
+        return Rejection.MALFORMED;
+      byte b = prefix[header.length + i];
+      expiry |= (long) (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0)
+        break;
+    }
+    return expiry <= now ? Rejection.EXPIRED : null;
+  }
+
+  /**
+   * Decodes the first (up to) {@value #COMPACT_PREFIX_CHARS} characters of a value only consisting of Base64url
+   * characters.
+   */
+  private static byte[] decodePrefix(String value) {
+    int chars = Math.min(value.length(), COMPACT_PREFIX_CHARS);
+    byte[] bytes = new byte[chars * 6 / 8];
+    int bits = 0;
+    int bitCount = 0;
+    int position = 0;
+    for (int i = 0; i < chars; i++) {
+      bits = (bits << 6) | BASE64URL_VALUES[value.charAt(i)];
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        bytes[position++] = (byte) (bits >>> bitCount);
+      }
+    }
+    return bytes;
+  }
+
+}
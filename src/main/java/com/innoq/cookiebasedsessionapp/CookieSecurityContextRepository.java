@@ -2,8 +2,7 @@ package com.innoq.cookiebasedsessionapp;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -15,33 +14,69 @@ import org.springframework.stereotype.Component;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.time.Clock;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Component
 public class CookieSecurityContextRepository implements SecurityContextRepository {
 
   private static final Logger LOG = LoggerFactory.getLogger(CookieSecurityContextRepository.class);
-  private static final String EMPTY_CREDENTIALS = "";
   private static final String ANONYMOUS_USER = "anonymousUser";
+  private static final String REQUEST_COOKIE_ATTRIBUTE = CookieSecurityContextRepository.class.getName() + ".REQUEST_COOKIE";
 
-  private final String cookieHmacKey;
+  private final UserInfoCookieCodec cookieCodec;
+  private final UserInfoCookieVerifier verifier;
+  private final PrincipalCache principalCache;
+  private final CookiePrecheck precheck;
+  private final CookieMetrics metrics;
+  private final AuthenticationAuditLog auditLog;
+  private final Clock clock;
 
-  public CookieSecurityContextRepository(@Value("${auth.cookie.hmac-key}") String cookieHmacKey) {
-    this.cookieHmacKey = cookieHmacKey;
+  @Autowired
+  public CookieSecurityContextRepository(UserInfoCookieCodec cookieCodec,
+                                         UserInfoCookieVerifier verifier,
+                                         PrincipalCache principalCache,
+                                         CookiePrecheck precheck,
+                                         CookieMetrics metrics,
+                                         AuthenticationAuditLog auditLog) {
+    this(cookieCodec, verifier, principalCache, precheck, metrics, auditLog, Clock.systemUTC());
   }
 
+  CookieSecurityContextRepository(UserInfoCookieCodec cookieCodec, UserInfoCookieVerifier verifier, PrincipalCache principalCache,
+                                  CookiePrecheck precheck, CookieMetrics metrics, AuthenticationAuditLog auditLog, Clock clock) {
+    this.cookieCodec = cookieCodec;
+    this.verifier = verifier;
+    this.principalCache = principalCache;
+    this.precheck = precheck;
+    this.metrics = metrics;
+    this.auditLog = auditLog;
+    this.clock = clock;
+  }
+
+  /**
+   * A cookie failing verification counts as no cookie: the context is empty, as for a request without one.
+   */
   @Override
   public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
-    HttpServletRequest request = requestResponseHolder.getRequest();
-    HttpServletResponse response = requestResponseHolder.getResponse();
-    requestResponseHolder.setResponse(new SaveToCookieResponseWrapper(request, response));
+    long startTime = metrics.startTime();
+    try {
+      HttpServletRequest request = requestResponseHolder.getRequest();
+      HttpServletResponse response = requestResponseHolder.getResponse();
 
-    SecurityContext context = SecurityContextHolder.createEmptyContext();
-    readUserInfoFromCookie(request).ifPresent(userInfo ->
-      context.setAuthentication(new UsernamePasswordAuthenticationToken(userInfo, EMPTY_CREDENTIALS, userInfo.getAuthorities())));
+      RequestCookie cookie = requestCookieOf(request);
+      SecurityContext context = SecurityContextHolder.createEmptyContext();
+      cookie.get()
+        .map(SignedUserInfoCookie::getPayload)
+        .map(principalCache::authenticationFor)
+        .ifPresent(context::setAuthentication);
 
-    return context;
+      requestResponseHolder.setResponse(new SaveToCookieResponseWrapper(request, response, cookie));
+      return context;
+    } finally {
+      metrics.loadContextDone(startTime);
+    }
   }
 
   @Override
@@ -54,46 +89,103 @@ public class CookieSecurityContextRepository implements SecurityContextRepositor
 
   @Override
   public boolean containsContext(HttpServletRequest request) {
-    return readUserInfoFromCookie(request).isPresent();
+    return requestCookieOf(request).get().isPresent();
   }
 
-  private Optional<UserInfo> readUserInfoFromCookie(HttpServletRequest request) {
-    return readCookieFromRequest(request)
-      .map(this::createUserInfo);
+  private RequestCookie requestCookieOf(HttpServletRequest request) {
+    Object attribute = request.getAttribute(REQUEST_COOKIE_ATTRIBUTE);
+    if (attribute instanceof RequestCookie)
+      return (RequestCookie) attribute;
+
+    RequestCookie cookie = new RequestCookie(request);
+    request.setAttribute(REQUEST_COOKIE_ATTRIBUTE, cookie);
+    return cookie;
   }
 
-  private Optional<Cookie> readCookieFromRequest(HttpServletRequest request) {
-    if (request.getCookies() == null) {
+  /**
+   * A value split into {@link UserInfoCookieChunks chunks} is joined into a single value, so it is checked and verified
+   * like any other.
+   *
+   * @return the value of the {@code UserInfo} cookie of the request, {@code null} if there is none
+   */
+  private String readCookieValue(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies == null) {
       LOG.debug("No cookies in request");
-      return Optional.empty();
+      return null;
     }
 
-    Optional<Cookie> maybeCookie = Stream.of(request.getCookies())
-      .filter(c -> SignedUserInfoCookie.NAME.equals(c.getName()))
-      .findFirst();
-
-    if (maybeCookie.isEmpty()) {
-      LOG.debug("No {} cookie in request", SignedUserInfoCookie.NAME);
+    UserInfoCookieChunks.Joiner chunks = new UserInfoCookieChunks.Joiner();
+    for (Cookie cookie : cookies) {
+      if (SignedUserInfoCookie.NAME.equals(cookie.getName()))
+        return cookie.getValue();
+      chunks.add(cookie.getName(), cookie.getValue());
     }
 
-    return maybeCookie;
+    String joined = chunks.join();
+    if (joined == null)
+      LOG.debug("No {} cookie in request", SignedUserInfoCookie.NAME);
+    return joined;
   }
 
-  private UserInfo createUserInfo(Cookie cookie) {
-    return new SignedUserInfoCookie(cookie, cookieHmacKey).getUserInfo();
+  /**
+   * The {@link SignedUserInfoCookie} of a request, verified at most once, no matter how often it is asked for. Locks
+   * instead of {@code synchronized}, which would pin a virtual thread to its carrier while verifying.
+   */
+  private class RequestCookie {
+    private final HttpServletRequest request;
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean verified;
+    private SignedUserInfoCookie cookie;
+
+    RequestCookie(HttpServletRequest request) {
+      this.request = request;
+    }
+
+    /**
+     * @return the verified cookie, empty if there is none or it fails verification
+     */
+    Optional<SignedUserInfoCookie> get() {
+      lock.lock();
+      try {
+        if (!verified) {
+          try {
+            cookie = verifier.verify(readCookieValue(request), request.getRemoteAddr()).orElse(null);
+          } catch (CookieVerificationFailedException | IllegalArgumentException e) {
+            LOG.debug("{} cookie rejected: {}", SignedUserInfoCookie.NAME, e.getMessage());
+          } finally {
+            verified = true;
+          }
+        }
+        return Optional.ofNullable(cookie);
+      } finally {
+        lock.unlock();
+      }
+    }
   }
 
   private class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
     private final Logger LOG = LoggerFactory.getLogger(SaveToCookieResponseWrapper.class);
     private final HttpServletRequest request;
+    private final RequestCookie requestCookie;
 
-    SaveToCookieResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+    SaveToCookieResponseWrapper(HttpServletRequest request, HttpServletResponse response, RequestCookie requestCookie) {
       super(response, true);
       this.request = request;
+      this.requestCookie = requestCookie;
     }
 
     @Override
     protected void saveContext(SecurityContext securityContext) {
+      long startTime = metrics.startTime();
+      try {
+        saveContextInCookie(securityContext);
+      } finally {
+        metrics.saveContextDone(startTime);
+      }
+    }
+
+    private void saveContextInCookie(SecurityContext securityContext) {
       HttpServletResponse response = (HttpServletResponse) getResponse();
       Authentication authentication = securityContext.getAuthentication();
       if (authentication == null) {
@@ -112,10 +204,56 @@ public class CookieSecurityContextRepository implements SecurityContextRepositor
       }
 
       UserInfo userInfo = (UserInfo) authentication.getPrincipal();
-      SignedUserInfoCookie cookie = new SignedUserInfoCookie(userInfo, cookieHmacKey);
+      SignedUserInfoCookie loadedCookie = requestCookie.get().orElse(null);
+      if (loadedCookie != null && loadedCookie.represents(userInfo) && !verifier.isRefreshDue(loadedCookie)) {
+        LOG.debug("Principal '{}' unchanged and cookie not due for refresh, skip saveContext", userInfo.getUsername());
+        return;
+      }
+
+      SignedUserInfoCookie cookie = new SignedUserInfoCookie(userInfo, cookieCodec, clock, loadedCookie);
+      if (precheck.isOversized(cookie.getValue())) {
+        LOG.warn("Cookie of {} characters for principal '{}' exceeds auth.cookie.max-length, skip saveContext",
+          cookie.getValue().length(), userInfo.getUsername());
+        return;
+      }
       cookie.setSecure(request.isSecure());
-      response.addCookie(cookie);
-      LOG.debug("SecurityContext for principal '{}' saved in Cookie", userInfo.getUsername());
+      List<String> chunks = UserInfoCookieChunks.split(cookie.getValue());
+      if (chunks.size() == 1) {
+        response.addCookie(cookie);
+      } else {
+        for (int i = 0; i < chunks.size(); i++) {
+          response.addCookie(chunkOf(cookie, i, chunks.get(i)));
+        }
+      }
+      deleteObsoleteCookies(response, chunks.size());
+      metrics.cookieWritten(cookie);
+      if (cookie.getSessionId() != null && (loadedCookie == null || !cookie.getSessionId().equals(loadedCookie.getSessionId())))
+        auditLog.sessionStarted(userInfo.getUsername(), cookie.getSessionId(), request.getRemoteAddr());
+      LOG.debug("SecurityContext for principal '{}' saved in {} Cookie(s), session {}", userInfo.getUsername(), chunks.size(),
+        cookie.getSessionId() != null ? RevocationList.format(cookie.getSessionId()) : "-");
+    }
+
+    private Cookie chunkOf(SignedUserInfoCookie cookie, int index, String value) {
+      Cookie chunk = new Cookie(UserInfoCookieChunks.chunkName(index), value);
+      chunk.setPath(cookie.getPath());
+      chunk.setMaxAge(cookie.getMaxAge());
+      chunk.setHttpOnly(cookie.isHttpOnly());
+      chunk.setSecure(cookie.getSecure());
+      return chunk;
+    }
+
+    /**
+     * Deletes the unchunked cookie, or chunks beyond the ones just written, left over from a differently sized value.
+     */
+    private void deleteObsoleteCookies(HttpServletResponse response, int chunksWritten) {
+      Cookie[] cookies = request.getCookies();
+      if (cookies == null)
+        return;
+
+      for (Cookie cookie : cookies) {
+        if (UserInfoCookieChunks.isObsoleteAfter(cookie.getName(), chunksWritten))
+          response.addCookie(UserInfoCookieChunks.deletion(cookie.getName()));
+      }
     }
   }
 
@@ -0,0 +1,200 @@
+package com.innoq.cookiebasedsessionapp;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Calculates the HMAC of {@link SignedUserInfoCookie} values with one {@link MacAlgorithm}.
+ * <p>
+ * Looking up and initialising a {@link Mac} is expensive compared to hashing a few bytes of cookie value, so the key
+ * is initialised once and copies of the initialised {@link Mac}, each with its own tag buffer, are pooled. They are not
+ * bound to threads, since a thread per request (virtual threads) would need a fresh copy for every request; the pool
+ * holds as many copies as were in use at the same time.
+ */
+public class CookieSigner {
+
+  private final MacAlgorithm algorithm;
+  private final Mac prototype;
+  private final ConcurrentLinkedDeque<Engine> engines = new ConcurrentLinkedDeque<>();
+
+  /**
+   * Signs with the secret itself, as the legacy text format is; the compact format is signed with a key derived from it
+   * (see {@link CookieKeyDerivation#macKey}).
+   */
+  public CookieSigner(String secretKey, MacAlgorithm algorithm) {
+    this(Objects.requireNonNull(secretKey).getBytes(StandardCharsets.UTF_8), algorithm);
+  }
+
+  CookieSigner(byte[] key, MacAlgorithm algorithm) {
+    this.algorithm = Objects.requireNonNull(algorithm);
+    this.prototype = createMac(new SecretKeySpec(key, algorithm.getJcaName()));
+  }
+
+  public String sign(String value) {
+    Objects.requireNonNull(value);
+    Engine engine = acquire();
+    try {
+      return Base64.getEncoder().encodeToString(engine.calculate(value, 0, value.length()));
+    } finally {
+      release(engine);
+    }
+  }
+
+  /**
+   * Checks (in constant time) whether {@code value} contains the Base64 encoded HMAC of its first
+   * {@code signedLength} characters, starting at {@code hmacOffset} and reaching up to the end of the value.
+   */
+  boolean verify(String value, int signedLength, int hmacOffset) {
+    Engine engine = acquire();
+    try {
+      byte[] expected = engine.encode(engine.calculate(value, 0, signedLength));
+      if (value.length() - hmacOffset != expected.length)
+        return false;
+
+      int diff = 0;
+      for (int i = 0; i < expected.length; i++) {
+        diff |= expected[i] ^ value.charAt(hmacOffset + i);
+      }
+      return diff == 0;
+    } finally {
+      release(engine);
+    }
+  }
+
+  /**
+   * @return a newly allocated HMAC of the first {@code length} bytes of {@code data}
+   */
+  byte[] sign(byte[] data, int length) {
+    Engine engine = acquire();
+    try {
+      return engine.calculate(data, 0, length).clone();
+    } finally {
+      release(engine);
+    }
+  }
+
+  /**
+   * Checks (in constant time) whether {@code data} contains the HMAC of its first {@code signedLength} bytes, starting
+   * at {@code signedLength} and reaching up to {@code length}. A tag shorter than the MAC length is compared with the
+   * leading bytes of the MAC, as long as it is not shorter than {@link MacAlgorithm#MIN_TAG_LENGTH}.
+   */
+  boolean verify(byte[] data, int signedLength, int length) {
+    int tagLength = length - signedLength;
+    if (tagLength < MacAlgorithm.MIN_TAG_LENGTH || tagLength > algorithm.getMacLength())
+      return false;
+
+    Engine engine = acquire();
+    try {
+      byte[] expected = engine.calculate(data, 0, signedLength);
+      int diff = 0;
+      for (int i = 0; i < tagLength; i++) {
+        diff |= expected[i] ^ data[signedLength + i];
+      }
+      return diff == 0;
+    } finally {
+      release(engine);
+    }
+  }
+
+  /**
+   * Most recently released first, so a steady load keeps using the same few copies.
+   */
+  private Engine acquire() {
+    Engine engine = engines.pollFirst();
+    return engine != null ? engine : new Engine(copyOf(prototype));
+  }
+
+  private void release(Engine engine) {
+    engines.offerFirst(engine);
+  }
+
+  MacAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  private static Mac createMac(SecretKeySpec secretKeySpec) {
+    try {
+      Mac mac = Mac.getInstance(secretKeySpec.getAlgorithm());
+      mac.init(secretKeySpec);
+      return mac;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Mac copyOf(Mac mac) {
+    try {
+      return (Mac) mac.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(mac.getAlgorithm() + " implementation does not support cloning", e);
+    }
+  }
+
+  private static class Engine {
+    private final Mac mac;
+    private final byte[] tag;
+    private final byte[] encodedTag;
+    private byte[] input = new byte[256];
+
+    private Engine(Mac mac) {
+      this.mac = mac;
+      this.tag = new byte[mac.getMacLength()];
+      this.encodedTag = new byte[4 * ((tag.length + 2) / 3)];
+    }
+
+    private byte[] calculate(String value, int start, int end) {
+      try {
+        if (isAscii(value, start, end)) {
+          int length = end - start;
+          if (input.length < length)
+            input = new byte[Math.max(length, 2 * input.length)];
+          for (int i = 0; i < length; i++) {
+            input[i] = (byte) value.charAt(start + i);
+          }
+          mac.update(input, 0, length);
+        } else {
+          mac.update(value.substring(start, end).getBytes(StandardCharsets.UTF_8));
+        }
+        mac.doFinal(tag, 0);
+        return tag;
+      } catch (ShortBufferException e) {
+        throw new IllegalStateException(e);
+      } finally {
+        mac.reset();
+      }
+    }
+
+    private byte[] calculate(byte[] data, int offset, int length) {
+      try {
+        mac.update(data, offset, length);
+        mac.doFinal(tag, 0);
+        return tag;
+      } catch (ShortBufferException e) {
+        throw new IllegalStateException(e);
+      } finally {
+        mac.reset();
+      }
+    }
+
+    private byte[] encode(byte[] tag) {
+      Base64.getEncoder().encode(tag, encodedTag);
+      return encodedTag;
+    }
+
+    private static boolean isAscii(String value, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (value.charAt(i) > 0x7F)
+          return false;
+      }
+      return true;
+    }
+  }
+
+}
@@ -1,7 +1,26 @@
 package com.innoq.cookiebasedsessionapp;
 
 public class CookieVerificationFailedException extends RuntimeException {
+
+    public enum Reason {
+        /** The value does not have the layout of a signed cookie. */
+        MALFORMED,
+        /** The value is well-formed, but its signature does not match. */
+        INVALID_SIGNATURE
+    }
+
+    private final Reason reason;
+
     public CookieVerificationFailedException(String message) {
+        this(message, Reason.MALFORMED);
+    }
+
+    public CookieVerificationFailedException(String message, Reason reason) {
         super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
     }
 }
@@ -0,0 +1,39 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Deletes the {@code UserInfo} cookie on logout, along with every {@link UserInfoCookieChunks chunk} the request came
+ * with.
+ */
+@Component
+public class DeleteUserInfoCookiesLogoutHandler implements LogoutHandler {
+
+  private final AuthenticationAuditLog auditLog;
+
+  public DeleteUserInfoCookiesLogoutHandler(AuthenticationAuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
+  @Override
+  public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+    if (authentication != null)
+      auditLog.logout(authentication.getName(), request.getRemoteAddr());
+    response.addCookie(UserInfoCookieChunks.deletion(SignedUserInfoCookie.NAME));
+
+    Cookie[] cookies = request.getCookies();
+    if (cookies == null)
+      return;
+
+    for (Cookie cookie : cookies) {
+      if (UserInfoCookieChunks.chunkIndex(cookie.getName()) >= 0)
+        response.addCookie(UserInfoCookieChunks.deletion(cookie.getName()));
+    }
+  }
+}
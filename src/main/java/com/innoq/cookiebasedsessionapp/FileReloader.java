@@ -0,0 +1,86 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Polls a local file for modifications and hands it to a loader whenever it changed.
+ * <p>
+ * The first load happens synchronously in {@link #start()} and fails if the file cannot be loaded. Later loads run on a
+ * single background thread; if one fails it is logged and whatever was loaded before stays in place.
+ */
+class FileReloader implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileReloader.class);
+
+  private final Path path;
+  private final Duration interval;
+  private final Consumer<Path> loader;
+  private final ScheduledExecutorService executor;
+
+  private FileTime lastModified;
+  private long lastSize = -1;
+
+  FileReloader(String name, Path path, Duration interval, Consumer<Path> loader) {
+    this.path = Objects.requireNonNull(path);
+    this.interval = Objects.requireNonNull(interval);
+    this.loader = Objects.requireNonNull(loader);
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, name + "-reloader");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  void start() {
+    reloadIfModified();
+    long millis = interval.toMillis();
+    executor.scheduleWithFixedDelay(this::reloadQuietly, millis, millis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return whether the file was modified and has been loaded again
+   */
+  synchronized boolean reloadIfModified() {
+    try {
+      FileTime modified = Files.getLastModifiedTime(path);
+      long size = Files.size(path);
+      if (modified.equals(lastModified) && size == lastSize)
+        return false;
+
+      loader.accept(path);
+      lastModified = modified;
+      lastSize = size;
+      LOG.info("Loaded {}", path);
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void reloadQuietly() {
+    try {
+      reloadIfModified();
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to reload {}, keeping previous state", path, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,204 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.security.web.DefaultSecurityFilterChain;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Time spent in each filter of the Spring Security filter chain, when enabled ({@code auth.filter-timing.enabled}).
+ * <p>
+ * The {@link FilterChainProxy} is replaced by one whose chains hold every filter wrapped, to record, for every request
+ * it passes, the time spent in the filter itself: its total time minus the time spent further down the chain. The time
+ * after the last filter (the remaining servlet filters, the {@code DispatcherServlet} and the view) is recorded as
+ * {@value #APPLICATION}. The replacement has the default firewall, as the app configures none.
+ * <p>
+ * Each stage records into an HdrHistogram {@link Recorder}, which requests write to without locking or allocating; a
+ * reader swaps out the values recorded since the previous read and adds them up, so reads do not disturb requests.
+ * The wrappers measuring the rest of the chain are kept per thread and filter, so the threads of Tomcat's pool allocate
+ * nothing for timing once warm; on virtual threads, a thread per request, each request creates its own.
+ * {@link FilterChainTimingEndpoint} shows the result.
+ */
+@Component
+public class FilterChainTiming implements BeanPostProcessor {
+
+  static final String APPLICATION = "application";
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  private final boolean enabled;
+  private final LongSupplier nanoTime;
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+  @Autowired
+  public FilterChainTiming(@Value("${auth.filter-timing.enabled:false}") boolean enabled) {
+    this(enabled, System::nanoTime);
+  }
+
+  FilterChainTiming(boolean enabled, LongSupplier nanoTime) {
+    this.enabled = enabled;
+    this.nanoTime = nanoTime;
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (enabled && bean instanceof FilterChainProxy)
+      return instrument((FilterChainProxy) bean);
+    return bean;
+  }
+
+  /**
+   * @return a proxy with a timed copy of every {@link DefaultSecurityFilterChain}, other chains cannot be rebuilt and
+   * are left as they are
+   */
+  private synchronized FilterChainProxy instrument(FilterChainProxy filterChainProxy) {
+    List<SecurityFilterChain> chains = new ArrayList<>();
+    for (SecurityFilterChain chain : filterChainProxy.getFilterChains()) {
+      if (chain instanceof DefaultSecurityFilterChain)
+        chains.add(new DefaultSecurityFilterChain(((DefaultSecurityFilterChain) chain).getRequestMatcher(), timed(chain.getFilters())));
+      else
+        chains.add(chain);
+    }
+    // the application comes last
+    Stage application = stages.remove(APPLICATION);
+    if (application != null)
+      stages.put(APPLICATION, application);
+
+    FilterChainProxy timed = new FilterChainProxy(chains);
+    timed.afterPropertiesSet();
+    return timed;
+  }
+
+  private List<Filter> timed(List<Filter> filters) {
+    List<Filter> timed = new ArrayList<>(filters.size());
+    Set<String> names = new HashSet<>();
+    for (Filter filter : filters) {
+      String name = filter.getClass().getSimpleName();
+      for (int i = 2; !names.add(name); i++) {
+        name = filter.getClass().getSimpleName() + "#" + i;
+      }
+      Stage application = timed.size() == filters.size() - 1 ? stages.computeIfAbsent(APPLICATION, stage -> new Stage()) : null;
+      timed.add(new TimedFilter(filter, stages.computeIfAbsent(name, stage -> new Stage()), application));
+    }
+    return timed;
+  }
+
+  /**
+   * @return times in nanoseconds recorded per stage since start or the last {@link #reset()}, in chain order
+   */
+  synchronized Map<String, Histogram> snapshot() {
+    Map<String, Histogram> snapshot = new LinkedHashMap<>();
+    stages.forEach((name, stage) -> snapshot.put(name, stage.snapshot()));
+    return snapshot;
+  }
+
+  synchronized void reset() {
+    stages.values().forEach(Stage::reset);
+  }
+
+  private static final class Stage {
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    void record(long nanos) {
+      recorder.recordValue(Math.max(0, nanos));
+    }
+
+    Histogram snapshot() {
+      interval = recorder.getIntervalHistogram(interval);
+      total.add(interval);
+      return total.copy();
+    }
+
+    void reset() {
+      recorder.reset();
+      total.reset();
+    }
+  }
+
+  private final class TimedFilter implements Filter {
+    private final Filter filter;
+    private final Stage stage;
+    private final Stage application;
+    private final ThreadLocal<TimedChain> downstreams = ThreadLocal.withInitial(TimedChain::new);
+
+    /**
+     * @param application the stage to record the rest of the chain in, if this is the last filter
+     */
+    private TimedFilter(Filter filter, Stage stage, Stage application) {
+      this.filter = filter;
+      this.stage = stage;
+      this.application = application;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+      TimedChain downstream = downstreams.get();
+      // still in use if a forward runs through the chain again on this thread
+      if (downstream.chain != null)
+        downstream = new TimedChain();
+      downstream.start(chain);
+      long startTime = nanoTime.getAsLong();
+      try {
+        filter.doFilter(request, response, downstream);
+      } finally {
+        stage.record(nanoTime.getAsLong() - startTime - downstream.nanos);
+        if (application != null && downstream.called)
+          application.record(downstream.nanos);
+        downstream.chain = null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Timed(" + filter + ")";
+    }
+  }
+
+  private final class TimedChain implements FilterChain {
+    private FilterChain chain;
+    private boolean called;
+    private long nanos;
+
+    private void start(FilterChain chain) {
+      this.chain = chain;
+      this.called = false;
+      this.nanos = 0;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+      called = true;
+      long startTime = nanoTime.getAsLong();
+      try {
+        chain.doFilter(request, response);
+      } finally {
+        nanos += nanoTime.getAsLong() - startTime;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/filterchain}: per stage of the Spring Security filter chain, as recorded by {@link FilterChainTiming},
+ * the number of requests, mean, percentiles and maximum of the time spent in it (in microseconds) and its share of the
+ * total time. {@code DELETE} starts over. Only there when timing is enabled ({@code auth.filter-timing.enabled}) and,
+ * like all actuator endpoints but health, only for users with the {@value WebSecurityConfig#ADMIN_AUTHORITY} role.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.filter-timing.enabled", havingValue = "true")
+@Endpoint(id = "filterchain")
+public class FilterChainTimingEndpoint {
+
+  private final FilterChainTiming filterChainTiming;
+
+  public FilterChainTimingEndpoint(FilterChainTiming filterChainTiming) {
+    this.filterChainTiming = filterChainTiming;
+  }
+
+  @ReadOperation
+  public Map<String, Object> timings() {
+    Map<String, Histogram> snapshot = filterChainTiming.snapshot();
+    double totalNanos = snapshot.values().stream().mapToDouble(histogram -> histogram.getMean() * histogram.getTotalCount()).sum();
+
+    Map<String, Object> stages = new LinkedHashMap<>();
+    snapshot.forEach((name, histogram) -> {
+      Map<String, Object> stage = new LinkedHashMap<>();
+      stage.put("count", histogram.getTotalCount());
+      stage.put("mean", micros(histogram.getMean()));
+      stage.put("p50", micros(histogram.getValueAtPercentile(50)));
+      stage.put("p90", micros(histogram.getValueAtPercentile(90)));
+      stage.put("p99", micros(histogram.getValueAtPercentile(99)));
+      stage.put("p99.9", micros(histogram.getValueAtPercentile(99.9)));
+      stage.put("max", micros(histogram.getMaxValue()));
+      stage.put("share", totalNanos > 0 ? Math.round(1000 * histogram.getMean() * histogram.getTotalCount() / totalNanos) / 10.0 : 0.0);
+      stages.put(name, stage);
+    });
+
+    Map<String, Object> timings = new LinkedHashMap<>();
+    timings.put("enabled", filterChainTiming.isEnabled());
+    timings.put("unit", "microseconds");
+    timings.put("stages", stages);
+    return timings;
+  }
+
+  @DeleteOperation
+  public void reset() {
+    filterChainTiming.reset();
+  }
+
+  private static double micros(double nanos) {
+    return Math.round(nanos / 100) / 10.0;
+  }
+
+}
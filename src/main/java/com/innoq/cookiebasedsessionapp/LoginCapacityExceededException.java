@@ -0,0 +1,30 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a login is turned away because the {@link PasswordHashingExecutor} is saturated, rather than because of
+ * bad credentials.
+ */
+public class LoginCapacityExceededException extends AuthenticationServiceException {
+
+  private final Duration retryAfter;
+
+  public LoginCapacityExceededException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  /**
+   * @return the value of a {@code Retry-After} header, in whole seconds, at least 1
+   */
+  public String getRetryAfterSeconds() {
+    return Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+  }
+}
@@ -0,0 +1,72 @@
+package com.innoq.cookiebasedsessionapp;
+
+import java.util.stream.Stream;
+
+/**
+ * MAC algorithms the {@link SignedUserInfoCookie} may be signed with. The id is recorded in the cookie value, so it
+ * must never change for an existing algorithm.
+ */
+public enum MacAlgorithm {
+
+  HMAC_SHA_256(1, "HmacSHA256", 32),
+  HMAC_SHA_384(2, "HmacSHA384", 48),
+  HMAC_SHA_512(3, "HmacSHA512", 64);
+
+  /**
+   * Tags are never truncated to less than 128 bits.
+   */
+  static final int MIN_TAG_LENGTH = 16;
+
+  private final int id;
+  private final String jcaName;
+  private final int macLength;
+
+  MacAlgorithm(int id, String jcaName, int macLength) {
+    this.id = id;
+    this.jcaName = jcaName;
+    this.macLength = macLength;
+  }
+
+  public static MacAlgorithm forName(String jcaName) {
+    return Stream.of(values())
+      .filter(a -> a.jcaName.equalsIgnoreCase(jcaName))
+      .findFirst()
+      .orElseThrow(() -> new IllegalArgumentException("Unsupported MAC algorithm " + jcaName));
+  }
+
+  /**
+   * @return the algorithm with the given id, {@code null} if there is none
+   */
+  static MacAlgorithm forId(int id) {
+    for (MacAlgorithm algorithm : values()) {
+      if (algorithm.id == id)
+        return algorithm;
+    }
+    return null;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  public String getJcaName() {
+    return jcaName;
+  }
+
+  public int getMacLength() {
+    return macLength;
+  }
+
+  /**
+   * @param tagLength requested tag length in bytes, 0 for the full MAC length
+   * @return the tag length to use
+   */
+  int checkTagLength(int tagLength) {
+    if (tagLength == 0)
+      return macLength;
+    if (tagLength < MIN_TAG_LENGTH || tagLength > macLength)
+      throw new IllegalArgumentException("Tag length of " + jcaName + " must be between " + MIN_TAG_LENGTH + " and " + macLength + " bytes, was " + tagLength);
+    return tagLength;
+  }
+
+}
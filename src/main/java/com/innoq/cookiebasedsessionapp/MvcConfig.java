@@ -1,14 +1,27 @@
 package com.innoq.cookiebasedsessionapp;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
+
+    private final NotModifiedPageInterceptor notModifiedPageInterceptor;
+
+    public MvcConfig(NotModifiedPageInterceptor notModifiedPageInterceptor) {
+        this.notModifiedPageInterceptor = notModifiedPageInterceptor;
+    }
+
     public void addViewControllers(ViewControllerRegistry registry) {
         registry.addViewController("/").setViewName("index");
         registry.addViewController("/other").setViewName("other");
         registry.addViewController("/login").setViewName("login");
     }
+
+    public void addInterceptors(InterceptorRegistry registry) {
+        // pages of the authenticated user only, the login form shows errors depending on request parameters
+        registry.addInterceptor(notModifiedPageInterceptor).addPathPatterns("/", "/other");
+    }
 }
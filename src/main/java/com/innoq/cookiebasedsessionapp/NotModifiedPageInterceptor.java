@@ -0,0 +1,135 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers repeated requests of the pages registered in {@link MvcConfig} with {@code 304 Not Modified} instead of
+ * rendering them again.
+ * <p>
+ * A page only depends on its template and the authenticated {@link UserInfo}, so its ETag is a digest of the template
+ * contents, the username, the authorities and the colour; it is checked before the view is rendered. The page is
+ * {@code Cache-Control: private, no-cache} and varies by {@code Cookie}, so shared caches never store it and browsers
+ * revalidate it on every request; as the ETag covers the user, a validator of one user never matches the page of
+ * another. Template digests are computed once, or on every request if templates are not cached
+ * ({@code spring.thymeleaf.cache=false}, as with devtools), so edited templates are rendered again.
+ */
+@Component
+public class NotModifiedPageInterceptor implements HandlerInterceptor {
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final int ETAG_BYTES = 16;
+  private static final byte SEPARATOR = 0;
+
+  private final ResourceLoader resourceLoader;
+  private final String templatePrefix;
+  private final String templateSuffix;
+  private final boolean templatesCached;
+  private final Map<String, byte[]> templateDigests = new ConcurrentHashMap<>();
+
+  @Autowired
+  public NotModifiedPageInterceptor(ResourceLoader resourceLoader,
+                                    @Value("${spring.thymeleaf.prefix:classpath:/templates/}") String templatePrefix,
+                                    @Value("${spring.thymeleaf.suffix:.html}") String templateSuffix,
+                                    @Value("${spring.thymeleaf.cache:true}") boolean templatesCached) {
+    this.resourceLoader = resourceLoader;
+    this.templatePrefix = templatePrefix;
+    this.templateSuffix = templateSuffix;
+    this.templatesCached = templatesCached;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (!(handler instanceof ParameterizableViewController) || !isGetOrHead(request))
+      return true;
+
+    String viewName = ((ParameterizableViewController) handler).getViewName();
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (viewName == null || authentication == null || !(authentication.getPrincipal() instanceof UserInfo))
+      return true;
+
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+    response.addHeader(HttpHeaders.VARY, HttpHeaders.COOKIE);
+    String etag = etag(templateDigest(viewName), (UserInfo) authentication.getPrincipal());
+    return !new ServletWebRequest(request, response).checkNotModified(etag);
+  }
+
+  private static boolean isGetOrHead(HttpServletRequest request) {
+    return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+  }
+
+  private byte[] templateDigest(String viewName) {
+    if (!templatesCached)
+      return digest(viewName);
+    return templateDigests.computeIfAbsent(viewName, this::digest);
+  }
+
+  private byte[] digest(String viewName) {
+    Resource template = resourceLoader.getResource(templatePrefix + viewName + templateSuffix);
+    MessageDigest digest = messageDigest();
+    try (InputStream in = template.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read template " + template, e);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * A weak validator, so it survives the response being compressed.
+   */
+  static String etag(byte[] templateDigest, UserInfo userInfo) {
+    MessageDigest digest = messageDigest();
+    digest.update(templateDigest);
+    update(digest, userInfo.getUsername());
+    String[] authorities = userInfo.getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toArray(String[]::new);
+    for (String authority : authorities) {
+      update(digest, authority);
+    }
+    digest.update(SEPARATOR);
+    update(digest, userInfo.getColour().orElse(""));
+    byte[] hash = Arrays.copyOf(digest.digest(), ETAG_BYTES);
+    return "W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(SEPARATOR);
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static MessageDigest messageDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs password checks on a pool of their own, so a burst of logins cannot take every request thread.
+ * <p>
+ * At most {@code auth.login.hashing.threads} checks run at the same time and {@code auth.login.hashing.queue-capacity}
+ * more wait for a thread; any login beyond that fails right away with a {@link LoginCapacityExceededException}. The
+ * request thread of a login still waits for its check, so threads plus queue capacity should stay well below the
+ * number of request threads. 0 threads disables the pool and checks run on the request thread.
+ * <p>
+ * Meters: {@code auth.login.hashing.queue.depth} and {@code auth.login.hashing.active} (gauges),
+ * {@code auth.login.hashing.rejections} (counter) and {@code auth.login.hashing.wait} (time spent queued).
+ */
+@Component
+public class PasswordHashingExecutor implements DisposableBean {
+
+  private final ThreadPoolExecutor executor;
+  private final Duration retryAfter;
+  private final Counter rejections;
+  private final Timer waitTimer;
+
+  @Autowired
+  public PasswordHashingExecutor(@Value("${auth.login.hashing.threads:2}") int threads,
+                                 @Value("${auth.login.hashing.queue-capacity:50}") int queueCapacity,
+                                 @Value("${auth.login.hashing.retry-after:1s}") Duration retryAfter,
+                                 MeterRegistry registry) {
+    this.retryAfter = retryAfter;
+    this.executor = threads > 0 ? newExecutor(threads, queueCapacity) : null;
+    this.rejections = Counter.builder("auth.login.hashing.rejections")
+      .description("Logins turned away because the password hashing pool was saturated")
+      .register(registry);
+    this.waitTimer = Timer.builder("auth.login.hashing.wait")
+      .description("Time logins waited for a password hashing thread")
+      .publishPercentileHistogram()
+      .register(registry);
+    Gauge.builder("auth.login.hashing.queue.depth", this, e -> e.executor != null ? e.executor.getQueue().size() : 0)
+      .description("Logins waiting for a password hashing thread")
+      .register(registry);
+    Gauge.builder("auth.login.hashing.active", this, e -> e.executor != null ? e.executor.getActiveCount() : 0)
+      .description("Password checks in progress")
+      .register(registry);
+  }
+
+  /**
+   * @return an executor running checks on the calling thread, for tests and benchmarks
+   */
+  static PasswordHashingExecutor disabled() {
+    return new PasswordHashingExecutor(0, 0, Duration.ZERO, new SimpleMeterRegistry());
+  }
+
+  private static ThreadPoolExecutor newExecutor(int threads, int queueCapacity) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+      queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+      r -> {
+        Thread thread = new Thread(r, "password-hashing-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      },
+      new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Runs the check on the pool and waits for its result.
+   *
+   * @throws LoginCapacityExceededException if the pool is saturated
+   */
+  boolean check(BooleanSupplier passwordCheck) {
+    if (executor == null)
+      return passwordCheck.getAsBoolean();
+
+    long queuedAt = System.nanoTime();
+    Future<Boolean> result;
+    try {
+      result = executor.submit(() -> {
+        waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        return passwordCheck.getAsBoolean();
+      });
+    } catch (RejectedExecutionException e) {
+      rejections.increment();
+      throw new LoginCapacityExceededException("Too many logins in progress, try again later", retryAfter);
+    }
+
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(true);
+      throw new AuthenticationServiceException("Interrupted while checking password", e);
+    } catch (ExecutionException e) {
+      throw new AuthenticationServiceException("Password check failed", e.getCause());
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null)
+      executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.innoq.cookiebasedsessionapp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Hands out one canonical {@link Authentication} per user, so requests of the same user do not create a new
+ * {@link UserInfo}, authority set and token each time.
+ * <p>
+ * Users are told apart by username, roles and colour, the expiry of the cookie does not matter. Authority sets are
+ * interned as well, so users with the same roles share them. Nothing handed out is ever changed: the
+ * {@link UserInfoAuthentication} is immutable, and {@link UserInfo#withColour} changes a copy of the cached
+ * {@link UserInfo}. A max size of 0 disables the cache.
+ */
+@Component
+public class PrincipalCache {
+
+  private final Cache<Key, Authentication> authentications;
+  private final Cache<List<String>, Set<GrantedAuthority>> authoritySets;
+
+  @Autowired
+  public PrincipalCache(@Value("${auth.cookie.principal-cache.max-size:10000}") long maxSize) {
+    this.authentications = maxSize > 0 ? Caffeine.newBuilder().maximumSize(maxSize).build() : null;
+    this.authoritySets = maxSize > 0 ? Caffeine.newBuilder().maximumSize(maxSize).build() : null;
+  }
+
+  public static PrincipalCache disabled() {
+    return new PrincipalCache(0);
+  }
+
+  Authentication authenticationFor(CookiePayload payload) {
+    if (authentications == null)
+      return authenticationOf(payload.toUserInfo());
+
+    return authentications.get(new Key(payload), key -> authenticationOf(UserInfo.shared(
+      payload.getUsername(),
+      authoritySets.get(payload.getRoles(), roles -> payload.getAuthorities()),
+      payload.getColour().orElse(null))));
+  }
+
+  private static Authentication authenticationOf(UserInfo userInfo) {
+    return new UserInfoAuthentication(userInfo);
+  }
+
+  long size() {
+    if (authentications == null)
+      return 0;
+
+    authentications.cleanUp();
+    return authentications.estimatedSize();
+  }
+
+  private static final class Key {
+    private final String username;
+    private final List<String> roles;
+    private final String colour;
+    private final int hashCode;
+
+    private Key(CookiePayload payload) {
+      this.username = payload.getUsername();
+      this.roles = payload.getRoles();
+      this.colour = payload.getColour().orElse(null);
+      this.hashCode = Objects.hash(username, roles, colour);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+
+      Key other = (Key) o;
+      return hashCode == other.hashCode
+        && username.equals(other.username)
+        && roles.equals(other.roles)
+        && Objects.equals(colour, other.colour);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+}
@@ -2,7 +2,10 @@ package com.innoq.cookiebasedsessionapp;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
 import org.springframework.security.web.util.UrlUtils;
 import org.springframework.stereotype.Component;
@@ -11,25 +14,60 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.time.Clock;
 
 @Component
 public class RedirectToOriginalUrlAuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler {
   private static final Logger LOG = LoggerFactory.getLogger(RedirectToOriginalUrlAuthenticationSuccessHandler.class);
   private static final String DEFAULT_TARGET_URL = "/";
 
+  private final UserInfoCookieCodec cookieCodec;
+  private final CookiePrecheck precheck;
+  private final AuthenticationFailureHandler failureHandler;
+  private final AuthenticationAuditLog auditLog;
 
-  public RedirectToOriginalUrlAuthenticationSuccessHandler() {
+  public RedirectToOriginalUrlAuthenticationSuccessHandler(UserInfoCookieCodec cookieCodec, CookiePrecheck precheck,
+                                                           RetryLaterAuthenticationFailureHandler failureHandler,
+                                                           AuthenticationAuditLog auditLog) {
     super(DEFAULT_TARGET_URL);
     this.setTargetUrlParameter(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM);
+    this.cookieCodec = cookieCodec;
+    this.precheck = precheck;
+    this.failureHandler = failureHandler;
+    this.auditLog = auditLog;
   }
 
+  /**
+   * A user whose cookie would exceed {@code auth.cookie.max-length} could not authenticate with it, so the login fails
+   * instead of ending up back at the login form with the next request. If the principal is {@link UserInfo#shared},
+   * its coloured copy replaces it in the security context, so the cookie is issued for the copy.
+   */
   @Override
   public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response, Authentication authentication) throws IOException, ServletException {
-    UserInfo userInfo = (UserInfo) authentication.getPrincipal();
-    userInfo.setColour(request.getParameter(WebSecurityConfig.COLOUR_PARAM));
+    UserInfo userInfo = ((UserInfo) authentication.getPrincipal()).withColour(request.getParameter(WebSecurityConfig.COLOUR_PARAM));
+    if (userInfo != authentication.getPrincipal()) {
+      authentication = withPrincipal(authentication, userInfo);
+      SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+    int cookieLength = new SignedUserInfoCookie(userInfo, cookieCodec, Clock.systemUTC(), null).getValue().length();
+    if (precheck.isOversized(cookieLength)) {
+      LOG.warn("Cookie of {} characters for '{}' exceeds auth.cookie.max-length, login refused", cookieLength, userInfo.getUsername());
+      SecurityContextHolder.clearContext();
+      failureHandler.onAuthenticationFailure(request, response,
+        new UserInfoCookieTooLargeException("Roles and colour of '" + userInfo.getUsername() + "' exceed the cookie size limit"));
+      return;
+    }
+    auditLog.loginSucceeded(userInfo.getUsername(), request.getRemoteAddr());
     super.onAuthenticationSuccess(request, response, authentication);
   }
 
+  static Authentication withPrincipal(Authentication authentication, UserInfo userInfo) {
+    UsernamePasswordAuthenticationToken replaced = new UsernamePasswordAuthenticationToken(userInfo,
+      authentication.getCredentials(), authentication.getAuthorities());
+    replaced.setDetails(authentication.getDetails());
+    return replaced;
+  }
+
   @Override
   protected String determineTargetUrl(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
     var targetUrl = super.determineTargetUrl(request, response, authentication);
@@ -0,0 +1,40 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers logins turned away for lack of capacity with 503 and {@code Retry-After}, any other failed login is sent back
+ * to the login form, as before.
+ */
+@Component
+public class RetryLaterAuthenticationFailureHandler extends SimpleUrlAuthenticationFailureHandler {
+
+  private final AuthenticationAuditLog auditLog;
+
+  public RetryLaterAuthenticationFailureHandler(AuthenticationAuditLog auditLog) {
+    super(WebSecurityConfig.LOGIN_FORM_URL + "?error");
+    this.auditLog = auditLog;
+  }
+
+  @Override
+  public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response, AuthenticationException exception) throws IOException, ServletException {
+    auditLog.loginFailed(request.getParameter(UsernamePasswordAuthenticationFilter.SPRING_SECURITY_FORM_USERNAME_KEY),
+      exception.getClass().getSimpleName(), request.getRemoteAddr());
+    if (exception instanceof LoginCapacityExceededException) {
+      response.setHeader(HttpHeaders.RETRY_AFTER, ((LoginCapacityExceededException) exception).getRetryAfterSeconds());
+      // not sendError: the error page requires authentication and would redirect to the login form
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    super.onAuthenticationFailure(request, response, exception);
+  }
+}
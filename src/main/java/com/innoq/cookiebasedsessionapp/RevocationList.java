@@ -0,0 +1,247 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The session ids of {@link SignedUserInfoCookie}s revoked before they expire, so a stolen or logged out cookie can be
+ * turned away without a central session store.
+ * <p>
+ * Revoked sessions are listed in a file ({@code auth.cookie.revocation.file}), one session id (16 hex digits, as logged
+ * when a cookie is issued) per line; empty lines and lines starting with {@code #} are ignored. Entries can be removed
+ * once the cookie would have expired anyway.
+ * <p>
+ * The list is polled for changes and compiled into a filter file ({@code auth.cookie.revocation.filter-file}, by default
+ * next to the list): a Bloom filter followed by the sorted session ids. The filter file is written to a temporary file
+ * and moved into place, then memory mapped and swapped in with a single volatile write, so checks never wait for a lock
+ * and keep reading the previous mapping until they see the new one. A session id that is not revoked, by far the most
+ * common case, costs a few reads of the filter; only ids the filter matches are looked up in the sorted ids.
+ */
+@Component
+@Lazy(false)
+public class RevocationList implements DisposableBean {
+
+  private static final String COMMENT_PREFIX = "#";
+  private static final String FILTER_FILE_SUFFIX = ".filter";
+
+  private final Path filterFile;
+  private final FileReloader reloader;
+  private volatile Filter filter;
+
+  @Autowired
+  public RevocationList(@Value("${auth.cookie.revocation.file:}") String revocationFile,
+                        @Value("${auth.cookie.revocation.filter-file:}") String filterFile,
+                        @Value("${auth.cookie.revocation.reload-interval:10s}") Duration reloadInterval) {
+    if (revocationFile.isBlank()) {
+      this.filterFile = null;
+      this.reloader = null;
+    } else {
+      this.filterFile = Path.of(filterFile.isBlank() ? revocationFile + FILTER_FILE_SUFFIX : filterFile);
+      this.reloader = new FileReloader("revocation-list", Path.of(revocationFile), reloadInterval, this::load);
+      this.reloader.start();
+    }
+  }
+
+  private RevocationList(Path filterFile) {
+    this.filterFile = filterFile;
+    this.reloader = null;
+  }
+
+  /**
+   * @return a revocation list that never revokes anything
+   */
+  static RevocationList disabled() {
+    return new RevocationList(null);
+  }
+
+  /**
+   * @return the session ids revoked in the given file, compiled next to it, without reloading
+   */
+  static RevocationList of(Path revocationFile) {
+    RevocationList revocationList = new RevocationList(Path.of(revocationFile + FILTER_FILE_SUFFIX));
+    revocationList.load(revocationFile);
+    return revocationList;
+  }
+
+  boolean isRevoked(long sessionId) {
+    Filter filter = this.filter;
+    return filter != null && filter.contains(sessionId);
+  }
+
+  int size() {
+    Filter filter = this.filter;
+    return filter != null ? filter.size : 0;
+  }
+
+  static String format(long sessionId) {
+    return String.format("%016x", sessionId);
+  }
+
+  static long parse(String sessionId) {
+    return Long.parseUnsignedLong(sessionId, 16);
+  }
+
+  void load(Path revocationFile) {
+    long[] sessionIds = read(revocationFile);
+    if (sessionIds.length == 0) {
+      this.filter = null;
+      return;
+    }
+
+    try {
+      Filter.write(sessionIds, filterFile);
+      this.filter = Filter.map(filterFile);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static long[] read(Path revocationFile) {
+    long[] sessionIds = new long[64];
+    int count = 0;
+    int lineNumber = 0;
+    try (BufferedReader reader = Files.newBufferedReader(revocationFile, StandardCharsets.UTF_8)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lineNumber++;
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX))
+          continue;
+
+        if (count == sessionIds.length)
+          sessionIds = Arrays.copyOf(sessionIds, 2 * count);
+        try {
+          sessionIds[count++] = parse(trimmed);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Line " + lineNumber + ": expected a session id of up to 16 hex digits", e);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    sessionIds = Arrays.copyOf(sessionIds, count);
+    Arrays.sort(sessionIds);
+    return Arrays.stream(sessionIds).distinct().toArray();
+  }
+
+  @Override
+  public void destroy() {
+    if (reloader != null)
+      reloader.close();
+  }
+
+  /**
+   * A memory mapped filter file: a header (hash count, number of 64 bit filter words, number of session ids), the filter
+   * words and the sorted session ids, all big endian.
+   */
+  static final class Filter {
+    private static final int HEADER_BYTES = 16;
+    private static final int BITS_PER_ID = 10;
+    private static final int HASH_COUNT = 7;
+
+    private final ByteBuffer buffer;
+    private final int hashCount;
+    private final long bitCount;
+    private final int idsOffset;
+    private final int size;
+
+    private Filter(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.hashCount = buffer.getInt(0);
+      int wordCount = buffer.getInt(4);
+      this.size = buffer.getInt(8);
+      this.bitCount = (long) wordCount * Long.SIZE;
+      this.idsOffset = HEADER_BYTES + wordCount * Long.BYTES;
+      if (hashCount <= 0 || wordCount <= 0 || size < 0 || buffer.capacity() != idsOffset + size * Long.BYTES)
+        throw new IllegalArgumentException("Corrupt revocation filter file");
+    }
+
+    /**
+     * @param sessionIds sorted, without duplicates
+     */
+    static void write(long[] sessionIds, Path filterFile) throws IOException {
+      int wordCount = (int) Math.max(1, ((long) sessionIds.length * BITS_PER_ID + Long.SIZE - 1) / Long.SIZE);
+      long[] words = new long[wordCount];
+      long bitCount = (long) wordCount * Long.SIZE;
+      for (long sessionId : sessionIds) {
+        for (int i = 0; i < HASH_COUNT; i++) {
+          long bit = bit(sessionId, i, bitCount);
+          words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (wordCount + sessionIds.length) * Long.BYTES);
+      buffer.putInt(HASH_COUNT).putInt(wordCount).putInt(sessionIds.length).putInt(0);
+      buffer.asLongBuffer().put(words).put(sessionIds);
+      buffer.rewind();
+
+      Path directory = filterFile.toAbsolutePath().getParent();
+      Path temporary = Files.createTempFile(directory, filterFile.getFileName().toString(), ".tmp");
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(false);
+      }
+      Files.move(temporary, filterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Filter map(Path filterFile) throws IOException {
+      try (FileChannel channel = FileChannel.open(filterFile, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new Filter(buffer);
+      }
+    }
+
+    /**
+     * Session ids are random, so the id itself and a mix of it serve as the two hashes of double hashing.
+     */
+    private static long bit(long sessionId, int i, long bitCount) {
+      long h2 = Long.rotateLeft(sessionId * 0x9E3779B97F4A7C15L, 31) | 1;
+      return Long.remainderUnsigned(sessionId + i * h2, bitCount);
+    }
+
+    boolean contains(long sessionId) {
+      for (int i = 0; i < hashCount; i++) {
+        long bit = bit(sessionId, i, bitCount);
+        if ((buffer.getLong(HEADER_BYTES + (int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0)
+          return false;
+      }
+      return binarySearch(sessionId);
+    }
+
+    private boolean binarySearch(long sessionId) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        long id = buffer.getLong(idsOffset + middle * Long.BYTES);
+        if (id < sessionId)
+          low = middle + 1;
+        else if (id > sessionId)
+          high = middle - 1;
+        else
+          return true;
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The roles known in advance ({@code auth.cookie.role-dictionary}), each given a bit, so the {@link SignedUserInfoCookie}
+ * carries a bitmask instead of their names and authorities are {@link RoleSet bitsets}.
+ * <p>
+ * A role's bit is its position in the comma separated list, so roles may only ever be appended: reordering or removing
+ * one changes the meaning of cookies already issued. Roles not in the dictionary are still carried by name. Without a
+ * dictionary cookies are written in the format used before it existed.
+ */
+@Component
+@Lazy(false)
+public class RoleDictionary {
+
+  static final int MAX_ROLES = Long.SIZE;
+  private static final String ROLE_SEPARATOR = ",";
+  private static final RoleDictionary EMPTY = new RoleDictionary(List.of());
+
+  private final SimpleGrantedAuthority[] authorities;
+  private final Map<String, Integer> indexes;
+
+  @Autowired
+  public RoleDictionary(@Value("${auth.cookie.role-dictionary:}") String roles) {
+    this(Stream.of(roles.split(ROLE_SEPARATOR))
+      .map(String::trim)
+      .filter(role -> !role.isEmpty())
+      .collect(toList()));
+  }
+
+  private RoleDictionary(List<String> roles) {
+    if (roles.size() > MAX_ROLES)
+      throw new IllegalArgumentException("Role dictionary holds at most " + MAX_ROLES + " roles, not " + roles.size());
+
+    this.authorities = new SimpleGrantedAuthority[roles.size()];
+    this.indexes = new HashMap<>();
+    for (int i = 0; i < roles.size(); i++) {
+      if (indexes.putIfAbsent(roles.get(i), i) != null)
+        throw new IllegalArgumentException("Role '" + roles.get(i) + "' is listed twice in the role dictionary");
+      authorities[i] = new SimpleGrantedAuthority(roles.get(i));
+    }
+  }
+
+  static RoleDictionary of(String... roles) {
+    return new RoleDictionary(List.of(roles));
+  }
+
+  static RoleDictionary empty() {
+    return EMPTY;
+  }
+
+  boolean isEmpty() {
+    return authorities.length == 0;
+  }
+
+  int size() {
+    return authorities.length;
+  }
+
+  /**
+   * @return the bit of the role, -1 if it is not in the dictionary
+   */
+  int indexOf(String role) {
+    Integer index = indexes.get(role);
+    return index != null ? index : -1;
+  }
+
+  String role(int index) {
+    return authorities[index].getAuthority();
+  }
+
+  SimpleGrantedAuthority authority(int index) {
+    return authorities[index];
+  }
+
+  /**
+   * @return a mask with the bits of the given roles, 0 for roles not in the dictionary
+   */
+  long maskOf(String... roles) {
+    long mask = 0;
+    for (String role : roles) {
+      int index = indexOf(role);
+      if (index >= 0)
+        mask |= 1L << index;
+    }
+    return mask;
+  }
+
+  /**
+   * @return the roles as authorities, roles in the dictionary as bits, the others by name
+   */
+  RoleSet authoritiesOf(Collection<String> roles) {
+    long mask = 0;
+    List<GrantedAuthority> others = null;
+    for (String role : roles) {
+      int index = indexOf(role);
+      if (index >= 0) {
+        mask |= 1L << index;
+      } else {
+        if (others == null)
+          others = new ArrayList<>(2);
+        if (others.stream().noneMatch(other -> other.getAuthority().equals(role)))
+          others.add(new SimpleGrantedAuthority(role));
+      }
+    }
+    return new RoleSet(this, mask, others != null ? others : List.of());
+  }
+
+}
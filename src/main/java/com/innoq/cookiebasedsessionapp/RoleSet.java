@@ -0,0 +1,94 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of authorities, those in the {@link RoleDictionary} held as bits of a mask, so checking for them is a
+ * bit test. Authorities outside the dictionary are kept by name.
+ * <p>
+ * Equal to any other set of authorities with the same names, as long as those are {@code SimpleGrantedAuthority}s.
+ */
+final class RoleSet extends AbstractSet<GrantedAuthority> {
+
+  private final RoleDictionary dictionary;
+  private final long mask;
+  private final List<GrantedAuthority> others;
+
+  RoleSet(RoleDictionary dictionary, long mask, List<GrantedAuthority> others) {
+    this.dictionary = dictionary;
+    this.mask = mask;
+    this.others = List.copyOf(others);
+  }
+
+  long getMask() {
+    return mask;
+  }
+
+  /**
+   * @return whether the set holds all roles of the given {@link RoleDictionary#maskOf mask}
+   */
+  boolean containsAll(long roles) {
+    return (mask & roles) == roles;
+  }
+
+  boolean hasAuthority(String authority) {
+    int index = dictionary.indexOf(authority);
+    if (index >= 0)
+      return (mask & (1L << index)) != 0;
+
+    for (GrantedAuthority other : others) {
+      if (other.getAuthority().equals(authority))
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof GrantedAuthority && hasAuthority(((GrantedAuthority) o).getAuthority());
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if (c instanceof RoleSet && ((RoleSet) c).dictionary == dictionary)
+      return containsAll(((RoleSet) c).mask) && others.containsAll(((RoleSet) c).others);
+    return super.containsAll(c);
+  }
+
+  @Override
+  public int size() {
+    return Long.bitCount(mask) + others.size();
+  }
+
+  @Override
+  public Iterator<GrantedAuthority> iterator() {
+    return new Iterator<>() {
+      private long remaining = mask;
+      private int other;
+
+      @Override
+      public boolean hasNext() {
+        return remaining != 0 || other < others.size();
+      }
+
+      @Override
+      public GrantedAuthority next() {
+        if (remaining != 0) {
+          int index = Long.numberOfTrailingZeros(remaining);
+          remaining &= remaining - 1;
+          return dictionary.authority(index);
+        }
+        if (other < others.size())
+          return others.get(other++);
+        throw new NoSuchElementException();
+      }
+    };
+  }
+
+}
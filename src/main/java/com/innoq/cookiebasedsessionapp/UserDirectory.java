@@ -0,0 +1,160 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toUnmodifiableSet;
+
+/**
+ * The users allowed to log in, indexed by username, so looking one up does not depend on the number of users.
+ * <p>
+ * Users are kept in a file ({@code auth.users.file}) with one user per line: the username, the password hash and the
+ * comma separated roles, separated by colons. Hashes carry the id of their encoding, as understood by Spring Security's
+ * {@code DelegatingPasswordEncoder}. Empty lines and lines starting with {@code #} are ignored:
+ * <pre>
+ * bob:{bcrypt}$2a$10$...:USER,TESTER
+ * </pre>
+ * The file is polled for changes and reloaded without restart. A reload builds a complete new index and swaps it in
+ * with a single volatile write; a file that cannot be parsed leaves the previous index in place. Without a file, the
+ * directory only knows {@code bob} / {@code builder}.
+ */
+@Component
+@Lazy(false)
+public class UserDirectory implements DisposableBean {
+
+  private static final List<String> DEFAULT_USERS = List.of(
+    "bob:{bcrypt}$2a$10$l67XlF9JUWe2h1k6EjfasOxSFR/U2XVSpm2TGKPApKNJ1AEnuOr.e:USER,TESTER");
+  private static final String FIELD_SEPARATOR = ":";
+  private static final String ROLE_SEPARATOR = ",";
+  private static final String COMMENT_PREFIX = "#";
+
+  private final FileReloader reloader;
+  private volatile Map<String, User> users;
+
+  @Autowired
+  public UserDirectory(@Value("${auth.users.file:}") String usersFile,
+                       @Value("${auth.users.reload-interval:10s}") Duration reloadInterval) {
+    this.users = parse(DEFAULT_USERS.stream());
+    if (usersFile.isBlank()) {
+      this.reloader = null;
+    } else {
+      this.reloader = new FileReloader("user-directory", Path.of(usersFile), reloadInterval, this::load);
+      this.reloader.start();
+    }
+  }
+
+  private UserDirectory(List<String> lines) {
+    this.users = parse(lines.stream());
+    this.reloader = null;
+  }
+
+  /**
+   * @return a directory of the users in the given lines, without reloading
+   */
+  static UserDirectory of(String... lines) {
+    return new UserDirectory(List.of(lines));
+  }
+
+  /**
+   * @return the user with the given name, {@code null} if there is none
+   */
+  User find(String username) {
+    return username == null ? null : users.get(username);
+  }
+
+  int size() {
+    return users.size();
+  }
+
+  void load(Path usersFile) {
+    try (BufferedReader reader = Files.newBufferedReader(usersFile, StandardCharsets.UTF_8)) {
+      this.users = parse(reader.lines());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<String, User> parse(Stream<String> lines) {
+    Map<String, User> users = new HashMap<>();
+    Map<String, Set<GrantedAuthority>> authoritySets = new HashMap<>();
+    int[] lineNumber = {0};
+    lines.forEach(line -> {
+      lineNumber[0]++;
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX))
+        return;
+
+      User user = parseUser(trimmed, lineNumber[0], authoritySets);
+      if (users.putIfAbsent(user.getUsername(), user) != null)
+        throw new IllegalArgumentException("Line " + lineNumber[0] + ": user '" + user.getUsername() + "' is listed twice");
+    });
+    return Map.copyOf(users);
+  }
+
+  /**
+   * Users with the same roles share one authority set.
+   */
+  private static User parseUser(String line, int lineNumber, Map<String, Set<GrantedAuthority>> authoritySets) {
+    int passwordStart = line.indexOf(FIELD_SEPARATOR);
+    int rolesStart = line.lastIndexOf(FIELD_SEPARATOR);
+    if (passwordStart <= 0 || rolesStart == passwordStart || rolesStart == passwordStart + 1)
+      throw new IllegalArgumentException("Line " + lineNumber + ": expected username:password-hash:roles");
+
+    String roles = line.substring(rolesStart + 1).trim();
+    Set<GrantedAuthority> authorities = authoritySets.computeIfAbsent(roles, r -> Stream.of(r.split(ROLE_SEPARATOR))
+      .map(String::trim)
+      .filter(role -> !role.isEmpty())
+      .map(SimpleGrantedAuthority::new)
+      .collect(toUnmodifiableSet()));
+    return new User(line.substring(0, passwordStart).trim(), line.substring(passwordStart + 1, rolesStart).trim(), authorities);
+  }
+
+  @Override
+  public void destroy() {
+    if (reloader != null)
+      reloader.close();
+  }
+
+  static class User {
+    private final String username;
+    private final String passwordHash;
+    private final Set<GrantedAuthority> authorities;
+
+    private User(String username, String passwordHash, Set<GrantedAuthority> authorities) {
+      this.username = username;
+      this.passwordHash = passwordHash;
+      this.authorities = authorities;
+    }
+
+    String getUsername() {
+      return username;
+    }
+
+    String getPasswordHash() {
+      return passwordHash;
+    }
+
+    Set<GrantedAuthority> getAuthorities() {
+      return authorities;
+    }
+  }
+
+}
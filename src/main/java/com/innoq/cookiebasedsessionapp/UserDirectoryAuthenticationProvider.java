@@ -0,0 +1,59 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates against the {@link UserDirectory}. Unknown users cost a password check as well, so the response time
+ * does not tell whether a username exists. Password checks run on the {@link PasswordHashingExecutor}.
+ */
+@Component
+class UserDirectoryAuthenticationProvider implements AuthenticationProvider {
+
+  private static final String BAD_CREDENTIALS = "Bad credentials";
+
+  private final UserDirectory userDirectory;
+  private final PasswordEncoder passwordEncoder;
+  private final PasswordHashingExecutor hashingExecutor;
+  private final String unknownUserPasswordHash;
+
+  @Autowired
+  UserDirectoryAuthenticationProvider(UserDirectory userDirectory, PasswordHashingExecutor hashingExecutor) {
+    this(userDirectory, PasswordEncoderFactories.createDelegatingPasswordEncoder(), hashingExecutor);
+  }
+
+  UserDirectoryAuthenticationProvider(UserDirectory userDirectory, PasswordEncoder passwordEncoder, PasswordHashingExecutor hashingExecutor) {
+    this.userDirectory = userDirectory;
+    this.passwordEncoder = passwordEncoder;
+    this.hashingExecutor = hashingExecutor;
+    this.unknownUserPasswordHash = passwordEncoder.encode("unknown user");
+  }
+
+  @Override
+  public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+    String password = authentication.getCredentials() == null ? "" : authentication.getCredentials().toString();
+    UserDirectory.User user = userDirectory.find(authentication.getName());
+    if (user == null) {
+      hashingExecutor.check(() -> passwordEncoder.matches(password, unknownUserPasswordHash));
+      throw new BadCredentialsException(BAD_CREDENTIALS);
+    }
+    if (!hashingExecutor.check(() -> passwordEncoder.matches(password, user.getPasswordHash())))
+      throw new BadCredentialsException(BAD_CREDENTIALS);
+
+    // every login gets its own UserInfo, as the success handler sets the colour on it
+    UserInfo userInfo = new UserInfo(user.getUsername(), user.getAuthorities());
+    return new UsernamePasswordAuthenticationToken(userInfo, userInfo.getPassword(), userInfo.getAuthorities());
+  }
+
+  @Override
+  public boolean supports(Class<?> authentication) {
+    return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+  }
+}
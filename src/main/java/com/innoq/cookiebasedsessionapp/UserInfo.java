@@ -1,5 +1,6 @@
 package com.innoq.cookiebasedsessionapp;
 
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -14,6 +15,7 @@ public class UserInfo implements UserDetails {
   private final String username;
   private final String password;
   private final Set<GrantedAuthority> authorities;
+  private final boolean shared;
 
   private String colour;
 
@@ -27,9 +29,23 @@ public class UserInfo implements UserDetails {
   }
 
   UserInfo(String username, String password, Set<GrantedAuthority> authorities) {
+    this(username, password, authorities, false);
+  }
+
+  private UserInfo(String username, String password, Set<GrantedAuthority> authorities, boolean shared) {
     this.username = username;
     this.password = password;
     this.authorities = authorities;
+    this.shared = shared;
+  }
+
+  /**
+   * @return a user info that may be shared between requests and therefore is never changed, see {@link #withColour}
+   */
+  static UserInfo shared(String username, Set<GrantedAuthority> authorities, String colour) {
+    UserInfo userInfo = new UserInfo(username, EMPTY_PASSWORD, authorities, true);
+    userInfo.colour = colour;
+    return userInfo;
   }
 
   @Override
@@ -37,6 +53,41 @@ public class UserInfo implements UserDetails {
     return authorities;
   }
 
+  /**
+   * @return whether the user has the authority, a bit test for authorities read from a cookie and in the
+   * {@link RoleDictionary}
+   */
+  public boolean hasAuthority(String authority) {
+    if (authorities instanceof RoleSet)
+      return ((RoleSet) authorities).hasAuthority(authority);
+
+    for (GrantedAuthority granted : authorities) {
+      if (granted.getAuthority().equals(authority))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Used by the authorization rules instead of comparing the names of {@link Authentication#getAuthorities()}, which
+   * Spring Security copies out of the {@link RoleSet}.
+   *
+   * @return whether the authenticated user has the authority, by {@link #hasAuthority(String)} if the principal is a
+   * user info
+   */
+  static boolean hasAuthority(Authentication authentication, String authority) {
+    if (authentication == null || !authentication.isAuthenticated())
+      return false;
+    if (authentication.getPrincipal() instanceof UserInfo)
+      return ((UserInfo) authentication.getPrincipal()).hasAuthority(authority);
+
+    for (GrantedAuthority granted : authentication.getAuthorities()) {
+      if (granted.getAuthority().equals(authority))
+        return true;
+    }
+    return false;
+  }
+
   @Override
   public String getPassword() {
     return EMPTY_PASSWORD;
@@ -71,10 +122,16 @@ public class UserInfo implements UserDetails {
     return Optional.ofNullable(colour);
   }
 
-  public void setColour(String colour) {
-    if (colour == null || colour.isBlank())
-      this.colour = null;
-    else
-      this.colour = colour;
+  /**
+   * Copy on write: a {@link #shared} user info is left as it is, the colour is set on a copy only this caller sees. The
+   * returned user info has to replace this one as principal of the {@link org.springframework.security.core.Authentication},
+   * so the cookie is issued for it.
+   *
+   * @return this user info or, if it is shared, a copy of it, with the colour set
+   */
+  public UserInfo withColour(String colour) {
+    UserInfo userInfo = shared ? new UserInfo(username, password, authorities) : this;
+    userInfo.colour = colour == null || colour.isBlank() ? null : colour;
+    return userInfo;
   }
 }
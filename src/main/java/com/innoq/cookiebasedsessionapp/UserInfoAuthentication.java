@@ -0,0 +1,65 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * The {@link Authentication} of a request carrying a valid {@code UserInfo} cookie. Immutable, unlike the tokens of
+ * Spring Security, so the {@link PrincipalCache} can hand the same instance to every request of a user: it has neither
+ * credentials nor details and cannot be marked as not authenticated. Its authorities are those of the
+ * {@link UserInfo}, a {@link RoleSet} for roles read from a cookie, not a copy of them.
+ */
+final class UserInfoAuthentication implements Authentication {
+
+  private final UserInfo userInfo;
+
+  UserInfoAuthentication(UserInfo userInfo) {
+    this.userInfo = userInfo;
+  }
+
+  @Override
+  public Collection<? extends GrantedAuthority> getAuthorities() {
+    return userInfo.getAuthorities();
+  }
+
+  @Override
+  public Object getCredentials() {
+    return null;
+  }
+
+  @Override
+  public Object getDetails() {
+    return null;
+  }
+
+  @Override
+  public UserInfo getPrincipal() {
+    return userInfo;
+  }
+
+  @Override
+  public boolean isAuthenticated() {
+    return true;
+  }
+
+  /**
+   * @throws UnsupportedOperationException always, the authentication may be shared between requests
+   */
+  @Override
+  public void setAuthenticated(boolean isAuthenticated) {
+    throw new UnsupportedOperationException("Authentication of " + userInfo.getUsername() + " may be shared and is immutable");
+  }
+
+  @Override
+  public String getName() {
+    return userInfo.getUsername();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [Principal=" + getName() + ", Authorities=" + getAuthorities() + "]";
+  }
+
+}
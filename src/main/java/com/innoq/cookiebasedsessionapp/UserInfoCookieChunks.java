@@ -0,0 +1,147 @@
+package com.innoq.cookiebasedsessionapp;
+
+import javax.servlet.http.Cookie;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Splits {@link SignedUserInfoCookie} values too long for a single cookie across cookies named {@code UserInfo.0},
+ * {@code UserInfo.1}, ... and joins them again.
+ * <p>
+ * Values that fit are still sent as one {@code UserInfo} cookie. Chunks are plain slices of the value, so the one
+ * signature of the value covers all of them: a missing, reordered or stale chunk makes verification fail.
+ */
+final class UserInfoCookieChunks {
+
+  /**
+   * Browsers keep cookies up to 4096 bytes including name and attributes.
+   */
+  static final int MAX_CHUNK_LENGTH = 3800;
+  static final int MAX_CHUNKS = 8;
+  /**
+   * The longest value chunks can carry, an upper bound for {@code auth.cookie.max-length}.
+   */
+  static final int MAX_LENGTH = MAX_CHUNKS * MAX_CHUNK_LENGTH;
+
+  private static final String CHUNK_PREFIX = SignedUserInfoCookie.NAME + ".";
+  private static final String[] CHUNK_NAMES = new String[MAX_CHUNKS];
+
+  static {
+    for (int i = 0; i < MAX_CHUNKS; i++) {
+      CHUNK_NAMES[i] = CHUNK_PREFIX + i;
+    }
+  }
+
+  private UserInfoCookieChunks() {
+  }
+
+  static String chunkName(int index) {
+    return CHUNK_NAMES[index];
+  }
+
+  /**
+   * @return the index of the chunk with the given cookie name, -1 if it is no chunk
+   */
+  static int chunkIndex(String cookieName) {
+    if (cookieName == null
+      || cookieName.length() != CHUNK_PREFIX.length() + 1
+      || !cookieName.startsWith(CHUNK_PREFIX))
+      return -1;
+
+    int index = cookieName.charAt(CHUNK_PREFIX.length()) - '0';
+    return index >= 0 && index < MAX_CHUNKS ? index : -1;
+  }
+
+  /**
+   * @return whether the request cookie of the given name has to be deleted once the given number of chunks is written,
+   * 1 meaning the unchunked cookie and 0 no cookie at all
+   */
+  static boolean isObsoleteAfter(String cookieName, int chunksWritten) {
+    if (SignedUserInfoCookie.NAME.equals(cookieName))
+      return chunksWritten != 1;
+    int index = chunkIndex(cookieName);
+    return index >= 0 && (chunksWritten <= 1 || index >= chunksWritten);
+  }
+
+  /**
+   * @return a cookie deleting the one of the given name
+   */
+  static Cookie deletion(String cookieName) {
+    Cookie cookie = new Cookie(cookieName, "");
+    cookie.setPath("/");
+    cookie.setMaxAge(0);
+    cookie.setHttpOnly(true);
+    return cookie;
+  }
+
+  /**
+   * @return the number of chunks a value of the given length is split into
+   */
+  static int chunkCount(int length) {
+    return Math.max(1, (length + MAX_CHUNK_LENGTH - 1) / MAX_CHUNK_LENGTH);
+  }
+
+  /**
+   * Values are checked against {@code auth.cookie.max-length} before they are split, see
+   * {@link CookiePrecheck#isOversized(String)}.
+   *
+   * @return the value split into chunks, a single element if it fits into one cookie
+   */
+  static List<String> split(String value) {
+    if (value.length() <= MAX_CHUNK_LENGTH)
+      return List.of(value);
+
+    if (value.length() > MAX_LENGTH)
+      throw new IllegalArgumentException("Cookie value of " + value.length() + " characters exceeds " + MAX_CHUNKS + " chunks");
+
+    List<String> chunks = new ArrayList<>(chunkCount(value.length()));
+    for (int start = 0; start < value.length(); start += MAX_CHUNK_LENGTH) {
+      chunks.add(value.substring(start, Math.min(value.length(), start + MAX_CHUNK_LENGTH)));
+    }
+    return chunks;
+  }
+
+  /**
+   * @param chunk the value of the chunk with the given index, {@code null} if there is no such chunk
+   * @return the consecutive chunks from {@code UserInfo.0} joined, {@code null} if there is no {@code UserInfo.0}
+   */
+  static String join(IntFunction<String> chunk) {
+    String first = chunk.apply(0);
+    if (first == null)
+      return null;
+
+    StringBuilder joined = new StringBuilder(first);
+    for (int i = 1; i < MAX_CHUNKS; i++) {
+      String next = chunk.apply(i);
+      if (next == null)
+        break;
+      joined.append(next);
+    }
+    return joined.toString();
+  }
+
+  /**
+   * Collects the chunks of a request, whatever order its cookies come in.
+   */
+  static class Joiner {
+    private final String[] chunks = new String[MAX_CHUNKS];
+
+    /**
+     * Keeps the value of the cookie if it is a chunk and no chunk of the same index was added before.
+     */
+    void add(String cookieName, String cookieValue) {
+      int index = chunkIndex(cookieName);
+      if (index >= 0 && chunks[index] == null)
+        chunks[index] = cookieValue;
+    }
+
+    /**
+     * @see UserInfoCookieChunks#join(IntFunction)
+     */
+    String join() {
+      return UserInfoCookieChunks.join(i -> chunks[i]);
+    }
+  }
+
+}
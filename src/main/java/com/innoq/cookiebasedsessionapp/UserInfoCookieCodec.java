@@ -0,0 +1,597 @@
+package com.innoq.cookiebasedsessionapp;
+
+import com.innoq.cookiebasedsessionapp.CookieVerificationFailedException.Reason;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Encodes a {@link CookiePayload} into a signed (or encrypted) cookie value and verifies and decodes it again.
+ * <p>
+ * Two formats are understood:
+ * <ul>
+ *   <li>the legacy text format {@code uid=<uid>&roles=<role>|<role>[&colour=<colour>][&exp=<epoch seconds>]&hmac=<hmac>},
+ *   which is only read so cookies issued before the compact format existed stay valid</li>
+ *   <li>the compact format, a Base64url encoded (without padding) sequence of length prefixed binary fields, which is
+ *   the only format written</li>
+ * </ul>
+ * The compact format starts with a header (version byte, {@link CookieKeyRing} key id, {@link MacAlgorithm} id and tag
+ * length), followed by the expiry (epoch seconds), the session id (8 bytes), the UID, the bitmask of the roles in the
+ * {@link RoleDictionary}, the number of other roles, the other roles and the colour (empty if there is none) and ends with
+ * the (possibly truncated) MAC of everything before it. Numbers, masks and lengths are unsigned varints, strings are
+ * UTF-8. Cookies without session id are written in version 4, which lacks it, or, as long as there is no dictionary,
+ * version 3, which carries all roles by name and no mask. The layout of the header is read by {@link CompactHeader}
+ * alone, for the {@link CookiePrecheck} as well.
+ * <p>
+ * With {@code auth.cookie.encryption.enabled} values are written in version 6 instead, which keeps the payload
+ * confidential: the version byte, key id and expiry, followed by a nonce, the session id (if any), UID, roles (as in
+ * version 4) and colour encrypted with AES-GCM (see {@link CookieCipher}) and the GCM tag, which also covers the
+ * unencrypted header. Signed values stay readable in either mode, so the mode can be switched without logging anyone
+ * out.
+ * <p>
+ * Values are written with the current key and the configured algorithm and tag length, but read with whatever key they
+ * name. The algorithm and tag length they name are only accepted if they are the configured ones or listed in
+ * {@code auth.cookie.mac-accepted} ({@code <algorithm>[:<tag length>]}, comma separated, for values written before the
+ * algorithm or tag length was changed); a longer tag than required is fine, anything else is rejected before the MAC
+ * is computed. Values in the text format count as a full HmacSHA512 and are verified with the secret of the default key, as they were signed. Bits of roles the dictionary does not know (yet) are ignored, so such values grant fewer
+ * roles, never more.
+ */
+@Component
+public class UserInfoCookieCodec {
+
+  static final byte COMPACT_VERSION_ENCRYPTED = 6;
+  static final byte COMPACT_VERSION = 5;
+  static final byte COMPACT_VERSION_4 = 4;
+  static final byte COMPACT_VERSION_3 = 3;
+  static final String TEXT_PREFIX = "uid=";
+  private static final Base64.Encoder COMPACT_ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder COMPACT_DECODER = Base64.getUrlDecoder();
+  private static final SecureRandom SESSION_IDS = new SecureRandom();
+
+  private final CookieKeyRing keyRing;
+  private final MacAlgorithm algorithm;
+  private final int tagLength;
+  /**
+   * By {@link MacAlgorithm#ordinal()}, the shortest tag accepted on read, 0 if the algorithm is not accepted at all.
+   */
+  private final int[] minTagLengths = new int[MacAlgorithm.values().length];
+  private final RoleDictionary dictionary;
+  private final boolean sessionIds;
+  private final boolean encrypted;
+
+  @Autowired
+  public UserInfoCookieCodec(CookieKeyRing keyRing,
+                             @Value("${auth.cookie.mac-algorithm:HmacSHA512}") String macAlgorithm,
+                             @Value("${auth.cookie.mac-tag-length:0}") int macTagLength,
+                             @Value("${auth.cookie.mac-accepted:}") String macAccepted,
+                             RoleDictionary dictionary,
+                             @Value("${auth.cookie.session-ids.enabled:true}") boolean sessionIds,
+                             @Value("${auth.cookie.encryption.enabled:false}") boolean encrypted) {
+    this(keyRing, MacAlgorithm.forName(macAlgorithm), macTagLength, parseAccepted(macAccepted), dictionary, sessionIds, encrypted);
+  }
+
+  /**
+   * @param tagLength length in bytes the MAC is truncated to, 0 for no truncation
+   * @param accepted algorithms accepted on read besides the configured one, with the shortest tag accepted (0 for the
+   * full MAC length)
+   * @param sessionIds whether new cookies get a session id, so they can be {@link RevocationList revoked}
+   * @param encrypted whether new cookies are encrypted with AES-GCM instead of signed with the MAC algorithm
+   */
+  UserInfoCookieCodec(CookieKeyRing keyRing, MacAlgorithm algorithm, int tagLength, Map<MacAlgorithm, Integer> accepted,
+                      RoleDictionary dictionary, boolean sessionIds, boolean encrypted) {
+    this.keyRing = Objects.requireNonNull(keyRing);
+    this.algorithm = Objects.requireNonNull(algorithm);
+    this.tagLength = algorithm.checkTagLength(tagLength);
+    this.minTagLengths[algorithm.ordinal()] = this.tagLength;
+    accepted.forEach((acceptedAlgorithm, acceptedTagLength) -> {
+      int minTagLength = acceptedAlgorithm.checkTagLength(acceptedTagLength);
+      int current = minTagLengths[acceptedAlgorithm.ordinal()];
+      minTagLengths[acceptedAlgorithm.ordinal()] = current == 0 ? minTagLength : Math.min(current, minTagLength);
+    });
+    this.dictionary = Objects.requireNonNull(dictionary);
+    this.sessionIds = sessionIds;
+    this.encrypted = encrypted;
+  }
+
+  /**
+   * @param accepted {@code <algorithm>[:<tag length>]}, comma separated, without tag length for the full MAC length
+   */
+  static Map<MacAlgorithm, Integer> parseAccepted(String accepted) {
+    Map<MacAlgorithm, Integer> algorithms = new EnumMap<>(MacAlgorithm.class);
+    for (String entry : accepted.split(",")) {
+      if (entry.isBlank())
+        continue;
+
+      int separator = entry.indexOf(':');
+      MacAlgorithm algorithm = MacAlgorithm.forName(separator < 0 ? entry.trim() : entry.substring(0, separator).trim());
+      int tagLength = separator < 0 ? 0 : Integer.parseInt(entry.substring(separator + 1).trim());
+      algorithms.merge(algorithm, tagLength, (a, b) -> a == 0 || b == 0 ? Math.max(a, b) : Math.min(a, b));
+    }
+    return algorithms;
+  }
+
+  /**
+   * Session ids only need to be unique, they are covered by the MAC like everything else.
+   *
+   * @param previous the session id of the cookie that is replaced, {@code null} if there is none
+   * @return the session id of a new cookie, {@code null} if cookies are issued without
+   */
+  Long sessionIdFor(Long previous) {
+    if (!sessionIds)
+      return null;
+    return previous != null ? previous : SESSION_IDS.nextLong();
+  }
+
+  public String encode(CookiePayload payload) {
+    CookieKeyRing.Key key = keyRing.current();
+    if (encrypted)
+      return encodeEncrypted(payload, key);
+
+    CompactWriter out = new CompactWriter();
+    Long sessionId = payload.getSessionId();
+    byte version = sessionId != null ? COMPACT_VERSION : dictionary.isEmpty() ? COMPACT_VERSION_3 : COMPACT_VERSION_4;
+    out.writeByte(version);
+    out.writeByte(key.getId());
+    out.writeByte(algorithm.getId());
+    out.writeByte(tagLength);
+    out.writeVarLong(Objects.requireNonNull(payload.getExpiryEpochSecond(), "expiry"));
+    if (sessionId != null)
+      out.writeLong(sessionId);
+    out.writeString(payload.getUsername());
+    if (version == COMPACT_VERSION_3) {
+      out.writeVarLong(payload.getRoles().size());
+      for (String role : payload.getRoles()) {
+        out.writeString(role);
+      }
+    } else {
+      writeRoles(out, payload.getRoles());
+    }
+    out.writeString(payload.getColour().orElse(""));
+    out.writeBytes(Arrays.copyOf(key.signer(algorithm).sign(out.buffer, out.length), tagLength));
+    return COMPACT_ENCODER.encodeToString(out.toByteArray());
+  }
+
+  /**
+   * Only the header and the expiry, which the {@link CookiePrecheck} reads, stay readable; the session id (preceded by
+   * its presence as 0 or 1), the UID, roles and colour are encrypted.
+   */
+  private String encodeEncrypted(CookiePayload payload, CookieKeyRing.Key key) {
+    CompactWriter header = new CompactWriter();
+    header.writeByte(COMPACT_VERSION_ENCRYPTED);
+    header.writeByte(key.getId());
+    header.writeVarLong(Objects.requireNonNull(payload.getExpiryEpochSecond(), "expiry"));
+
+    CompactWriter plaintext = new CompactWriter();
+    Long sessionId = payload.getSessionId();
+    plaintext.writeByte(sessionId != null ? 1 : 0);
+    if (sessionId != null)
+      plaintext.writeLong(sessionId);
+    plaintext.writeString(payload.getUsername());
+    writeRoles(plaintext, payload.getRoles());
+    plaintext.writeString(payload.getColour().orElse(""));
+    return COMPACT_ENCODER.encodeToString(key.cipher().encrypt(header.buffer, header.length, plaintext.buffer, plaintext.length));
+  }
+
+  private void writeRoles(CompactWriter out, List<String> roles) {
+    long mask = 0;
+    int otherCount = 0;
+    for (String role : roles) {
+      int index = dictionary.indexOf(role);
+      if (index >= 0)
+        mask |= 1L << index;
+      else
+        otherCount++;
+    }
+
+    out.writeVarLong(mask);
+    out.writeVarLong(otherCount);
+    if (otherCount > 0) {
+      for (String role : roles) {
+        if (dictionary.indexOf(role) < 0)
+          out.writeString(role);
+      }
+    }
+  }
+
+  /**
+   * @throws CookieVerificationFailedException if the value is not signed or its signature is invalid
+   * @throws IllegalArgumentException if the value contains no UID
+   */
+  public CookiePayload decode(String value) {
+    if (isText(value)) {
+      checkAccepted(MacAlgorithm.HMAC_SHA_512, MacAlgorithm.HMAC_SHA_512.getMacLength());
+      return TextFormat.decode(value, keyRing.get(CookieKeyRing.DEFAULT_KEY_ID).textSigner(), dictionary);
+    }
+
+    return decodeCompact(value);
+  }
+
+  /**
+   * Only for testing.
+   */
+  static String signatureOf(String value) {
+    if (isText(value))
+      return value.substring(value.indexOf(TextFormat.HMAC_FIELD) + TextFormat.HMAC_FIELD.length());
+
+    byte[] data = COMPACT_DECODER.decode(value);
+    int tagLength = CompactHeader.read(data, data.length).tagLength;
+    return COMPACT_ENCODER.encodeToString(Arrays.copyOfRange(data, data.length - tagLength, data.length));
+  }
+
+  /**
+   * Base64url without padding never contains a '=', every field of the text format does.
+   */
+  static boolean isText(String value) {
+    return value.indexOf('=') >= 0;
+  }
+
+  private CookiePayload decodeCompact(String value) {
+    byte[] data;
+    try {
+      data = COMPACT_DECODER.decode(value);
+    } catch (IllegalArgumentException e) {
+      throw new CookieVerificationFailedException("Cookie not signed (malformed value)");
+    }
+
+    CompactHeader header = CompactHeader.read(data, data.length);
+    if (header == null)
+      throw new CookieVerificationFailedException("Cookie not signed (unsupported format)");
+    if (header.isEncrypted())
+      return decodeEncrypted(data, header);
+
+    int signedLength = data.length - header.tagLength;
+    if (header.algorithm == null || signedLength < header.length)
+      throw new CookieVerificationFailedException("Cookie not signed (unsupported format)");
+    checkAccepted(header.algorithm, header.tagLength);
+
+    CookieKeyRing.Key key = keyRing.get(header.keyId);
+    if (key == null)
+      throw new CookieVerificationFailedException("Cookie signed with unknown key " + header.keyId, Reason.INVALID_SIGNATURE);
+    if (!key.signer(header.algorithm).verify(data, signedLength, data.length))
+      throw new CookieVerificationFailedException("Cookie signature (HMAC) invalid", Reason.INVALID_SIGNATURE);
+
+    CompactReader in = new CompactReader(data, header.length, signedLength);
+    long expiry = in.readVarLong();
+    Long sessionId = header.version == COMPACT_VERSION ? in.readLong() : null;
+    return readPayload(in, expiry, sessionId, header.version >= COMPACT_VERSION_4);
+  }
+
+  /**
+   * The header is not covered by anything yet, so it must not pick a weaker algorithm or shorter tag than configured.
+   */
+  private void checkAccepted(MacAlgorithm algorithm, int tagLength) {
+    int minTagLength = minTagLengths[algorithm.ordinal()];
+    if (minTagLength == 0 || tagLength < minTagLength)
+      throw new CookieVerificationFailedException("Cookie signed with " + algorithm.getJcaName() + " and a tag of " + tagLength
+        + " bytes, which is not accepted", Reason.INVALID_SIGNATURE);
+  }
+
+  private CookiePayload decodeEncrypted(byte[] data, CompactHeader header) {
+    CompactReader unencrypted = new CompactReader(data, header.length, data.length);
+    long expiry = unencrypted.readVarLong();
+
+    CookieKeyRing.Key key = keyRing.get(header.keyId);
+    if (key == null)
+      throw new CookieVerificationFailedException("Cookie encrypted with unknown key " + header.keyId, Reason.INVALID_SIGNATURE);
+    byte[] plaintext = key.cipher().decrypt(data, unencrypted.position);
+    if (plaintext == null)
+      throw new CookieVerificationFailedException("Cookie authentication tag (AES-GCM) invalid", Reason.INVALID_SIGNATURE);
+
+    CompactReader in = new CompactReader(plaintext, 0, plaintext.length);
+    Long sessionId = in.readVarLong() != 0 ? in.readLong() : null;
+    return readPayload(in, expiry, sessionId, true);
+  }
+
+  private CookiePayload readPayload(CompactReader in, long expiry, Long sessionId, boolean roleMask) {
+    String username = in.readString();
+    if (username.isEmpty())
+      throw new IllegalArgumentException(SignedUserInfoCookie.NAME + " Cookie contains no UID");
+
+    List<String> roles = roleMask ? readRoles(in, in.end) : readNamedRoles(in, in.end, new ArrayList<>(4));
+    String colour = in.readString();
+    in.expectEnd();
+
+    return new CookiePayload(username, roles, colour.isEmpty() ? null : colour, expiry, sessionId, dictionary);
+  }
+
+  private List<String> readRoles(CompactReader in, int signedLength) {
+    long mask = in.readVarLong();
+    List<String> roles = new ArrayList<>(Long.bitCount(mask) + 2);
+    for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+      int index = Long.numberOfTrailingZeros(remaining);
+      if (index < dictionary.size())
+        roles.add(dictionary.role(index));
+    }
+    return readNamedRoles(in, signedLength, roles);
+  }
+
+  private static List<String> readNamedRoles(CompactReader in, int signedLength, List<String> roles) {
+    int roleCount = (int) Math.min(in.readVarLong(), signedLength);
+    for (int i = 0; i < roleCount; i++) {
+      roles.add(in.readString());
+    }
+    return roles;
+  }
+
+  /**
+   * The header of a compact value: version byte and key id, for signed values followed by the {@link MacAlgorithm} id
+   * and tag length.
+   */
+  static final class CompactHeader {
+    private static final int SIGNED_LENGTH = 4;
+    private static final int ENCRYPTED_LENGTH = 2;
+
+    final byte version;
+    final int keyId;
+    /**
+     * {@code null} if the value is encrypted or names an unknown algorithm.
+     */
+    final MacAlgorithm algorithm;
+    /**
+     * Bytes at the end of the value that are not part of the payload: the MAC tag, or nonce and GCM tag.
+     */
+    final int tagLength;
+    final int length;
+
+    private CompactHeader(byte version, int keyId, MacAlgorithm algorithm, int tagLength, int length) {
+      this.version = version;
+      this.keyId = keyId;
+      this.algorithm = algorithm;
+      this.tagLength = tagLength;
+      this.length = length;
+    }
+
+    /**
+     * @param length number of bytes of {@code data} that may be read, e.g. if only a prefix of the value was decoded
+     * @return the header at the start of {@code data}, {@code null} if the version is not supported or the header is cut
+     * short
+     */
+    static CompactHeader read(byte[] data, int length) {
+      if (length >= ENCRYPTED_LENGTH && data[0] == COMPACT_VERSION_ENCRYPTED)
+        return new CompactHeader(data[0], data[1] & 0xFF, null, CookieCipher.NONCE_LENGTH + CookieCipher.TAG_LENGTH,
+          ENCRYPTED_LENGTH);
+      if (length >= SIGNED_LENGTH && data[0] >= COMPACT_VERSION_3 && data[0] <= COMPACT_VERSION)
+        return new CompactHeader(data[0], data[1] & 0xFF, MacAlgorithm.forId(data[2]), data[3] & 0xFF, SIGNED_LENGTH);
+      return null;
+    }
+
+    boolean isEncrypted() {
+      return version == COMPACT_VERSION_ENCRYPTED;
+    }
+  }
+
+  private static class CompactWriter {
+    private byte[] buffer = new byte[128];
+    private int length;
+
+    private void writeByte(int b) {
+      ensureCapacity(1);
+      buffer[length++] = (byte) b;
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    private void writeLong(long value) {
+      for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+        writeByte((int) (value >>> shift));
+      }
+    }
+
+    private void writeString(String value) {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    private void writeBytes(byte[] bytes) {
+      writeBytes(bytes, false);
+    }
+
+    private void writeBytes(byte[] bytes, boolean lengthPrefixed) {
+      if (lengthPrefixed)
+        writeVarLong(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, length, bytes.length);
+      length += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+      if (length + additional > buffer.length)
+        buffer = Arrays.copyOf(buffer, Math.max(length + additional, 2 * buffer.length));
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(buffer, length);
+    }
+  }
+
+  private static class CompactReader {
+    private static final int MAX_VARLONG_BYTES = 10;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    private CompactReader(byte[] data, int position, int end) {
+      this.data = data;
+      this.position = position;
+      this.end = end;
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      for (int i = 0; i < MAX_VARLONG_BYTES; i++) {
+        if (position >= end)
+          throw malformed();
+        byte b = data[position++];
+        value |= (long) (b & 0x7F) << (7 * i);
+        if ((b & 0x80) == 0)
+          return value;
+      }
+      throw malformed();
+    }
+
+    private long readLong() {
+      if (end - position < Long.BYTES)
+        throw malformed();
+
+      long value = 0;
+      for (int i = 0; i < Long.BYTES; i++) {
+        value = (value << Byte.SIZE) | (data[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    private String readString() {
+      long length = readVarLong();
+      if (length > end - position)
+        throw malformed();
+
+      String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+      position += (int) length;
+      return value;
+    }
+
+    private void expectEnd() {
+      if (position != end)
+        throw malformed();
+    }
+
+    private static CookieVerificationFailedException malformed() {
+      return new CookieVerificationFailedException("Cookie malformed");
+    }
+  }
+
+  /**
+   * Walks a legacy text value exactly once and only records where its fields are, so the HMAC can be verified against
+   * the signed part of the raw value before anything is built from it.
+   */
+  static class TextFormat {
+    private static final String UID_FIELD = TEXT_PREFIX;
+    static final String ROLES_FIELD = "&roles=";
+    private static final String COLOUR_FIELD = "&colour=";
+    static final String EXP_FIELD = "&exp=";
+    static final String HMAC_FIELD = "&hmac=";
+    private static final char ROLES_SEPARATOR = '|';
+    static final int MAX_EXP_DIGITS = 18;
+
+    private static final int UID_CHAR = 1;
+    private static final int ROLES_CHAR = 1 << 1;
+    private static final int COLOUR_CHAR = 1 << 2;
+    private static final int HMAC_CHAR = 1 << 3;
+    private static final int EXP_CHAR = 1 << 4;
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    static {
+      for (char c = 'A'; c <= 'Z'; c++)
+        CHAR_CLASSES[c] = UID_CHAR | ROLES_CHAR | COLOUR_CHAR | HMAC_CHAR;
+      for (char c = 'a'; c <= 'z'; c++)
+        CHAR_CLASSES[c] = UID_CHAR | HMAC_CHAR;
+      for (char c = '0'; c <= '9'; c++)
+        CHAR_CLASSES[c] = UID_CHAR | ROLES_CHAR | HMAC_CHAR | EXP_CHAR;
+      CHAR_CLASSES['_'] = ROLES_CHAR;
+      CHAR_CLASSES[ROLES_SEPARATOR] = ROLES_CHAR;
+      CHAR_CLASSES['+'] = HMAC_CHAR;
+      CHAR_CLASSES['/'] = HMAC_CHAR;
+      CHAR_CLASSES['='] = HMAC_CHAR;
+    }
+
+    private static CookiePayload decode(String value, CookieSigner cookieSigner, RoleDictionary dictionary) {
+      int uidEnd = fieldEnd(value, 0, UID_FIELD, UID_CHAR);
+      if (uidEnd <= UID_FIELD.length())
+        throw rejected(value);
+
+      int rolesEnd = fieldEnd(value, uidEnd, ROLES_FIELD, ROLES_CHAR);
+      if (rolesEnd < 0)
+        throw rejected(value);
+
+      int colourEnd = fieldEnd(value, rolesEnd, COLOUR_FIELD, COLOUR_CHAR);
+      if (colourEnd == rolesEnd + COLOUR_FIELD.length())
+        throw rejected(value);
+
+      int expStart = colourEnd < 0 ? rolesEnd : colourEnd;
+      int expEnd = fieldEnd(value, expStart, EXP_FIELD, EXP_CHAR);
+      if (expEnd == expStart + EXP_FIELD.length() || expEnd - expStart - EXP_FIELD.length() > MAX_EXP_DIGITS)
+        throw rejected(value);
+
+      int signedEnd = expEnd < 0 ? expStart : expEnd;
+      int hmacEnd = fieldEnd(value, signedEnd, HMAC_FIELD, HMAC_CHAR);
+      if (hmacEnd != value.length() || hmacEnd == signedEnd + HMAC_FIELD.length())
+        throw rejected(value);
+
+      if (!cookieSigner.verify(value, signedEnd, signedEnd + HMAC_FIELD.length()))
+        throw new CookieVerificationFailedException("Cookie signature (HMAC) invalid", Reason.INVALID_SIGNATURE);
+
+      return new CookiePayload(
+        value.substring(UID_FIELD.length(), uidEnd),
+        split(value, uidEnd + ROLES_FIELD.length(), rolesEnd),
+        colourEnd < 0 ? null : value.substring(rolesEnd + COLOUR_FIELD.length(), colourEnd),
+        expEnd < 0 ? null : Long.parseLong(value, expStart + EXP_FIELD.length(), expEnd, 10),
+        dictionary);
+    }
+
+    private static List<String> split(String value, int start, int end) {
+      if (start == end)
+        return List.of();
+
+      List<String> roles = new ArrayList<>(4);
+      for (int i = start; i <= end; i++) {
+        if (i == end || value.charAt(i) == ROLES_SEPARATOR) {
+          roles.add(value.substring(start, i));
+          start = i + 1;
+        }
+      }
+      return roles;
+    }
+
+    /**
+     * @return the index after the last character of the field starting at {@code from}, -1 if there is no such field
+     */
+    private static int fieldEnd(String value, int from, String field, int charClass) {
+      if (!value.startsWith(field, from))
+        return -1;
+
+      int end = from + field.length();
+      while (end < value.length() && isOfClass(value.charAt(end), charClass)) {
+        end++;
+      }
+      return end;
+    }
+
+    private static boolean isOfClass(char c, int charClass) {
+      return c < CHAR_CLASSES.length && (CHAR_CLASSES[c] & charClass) != 0;
+    }
+
+    /**
+     * Same rules as ever: an unsigned cookie fails verification, a cookie without UID is illegal and anything else
+     * that does not match the layout cannot carry a valid signature.
+     */
+    private static RuntimeException rejected(String value) {
+      if (!containsField(value, HMAC_FIELD.substring(1), HMAC_CHAR))
+        return new CookieVerificationFailedException("Cookie not signed (no HMAC)");
+      if (!containsField(value, UID_FIELD, UID_CHAR))
+        return new IllegalArgumentException(SignedUserInfoCookie.NAME + " Cookie contains no UID");
+      return new CookieVerificationFailedException("Cookie signature (HMAC) invalid");
+    }
+
+    private static boolean containsField(String value, String field, int charClass) {
+      int start = value.indexOf(field);
+      return start >= 0 && fieldEnd(value, start, field, charClass) > start + field.length();
+    }
+  }
+
+}
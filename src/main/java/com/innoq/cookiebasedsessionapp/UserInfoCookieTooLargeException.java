@@ -0,0 +1,14 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown when a login succeeds, but the {@link UserInfo} of the user (roles and colour) would need a cookie longer
+ * than {@code auth.cookie.max-length}, which the next request could not authenticate with.
+ */
+public class UserInfoCookieTooLargeException extends AuthenticationServiceException {
+
+  public UserInfoCookieTooLargeException(String message) {
+    super(message);
+  }
+}
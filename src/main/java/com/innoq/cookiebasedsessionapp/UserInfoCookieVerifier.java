@@ -0,0 +1,147 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.Cookie;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Checks the {@code UserInfo} cookie of a request, independent of how it was read: precheck, verification (through the
+ * {@link VerifiedCookieCache}), expiry and revocation, in that order, recording the outcome in the {@link CookieMetrics}
+ * and rejections in the {@link AuthenticationAuditLog}. Used by the servlet and the WebFlux security context repository
+ * alike, which only read the value (joining its {@link UserInfoCookieChunks chunks}) and write new cookies.
+ */
+@Component
+public class UserInfoCookieVerifier {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UserInfoCookieVerifier.class);
+
+  private final UserInfoCookieCodec cookieCodec;
+  private final VerifiedCookieCache verifiedCookieCache;
+  private final CookiePrecheck precheck;
+  private final RevocationList revocationList;
+  private final Duration refreshWindow;
+  private final CookieMetrics metrics;
+  private final AuthenticationAuditLog auditLog;
+  private final Clock clock;
+
+  @Autowired
+  public UserInfoCookieVerifier(UserInfoCookieCodec cookieCodec,
+                                VerifiedCookieCache verifiedCookieCache,
+                                CookiePrecheck precheck,
+                                RevocationList revocationList,
+                                @Value("${auth.cookie.refresh-window:45m}") Duration refreshWindow,
+                                CookieMetrics metrics,
+                                AuthenticationAuditLog auditLog) {
+    this(cookieCodec, verifiedCookieCache, precheck, revocationList, refreshWindow, metrics, auditLog, Clock.systemUTC());
+  }
+
+  UserInfoCookieVerifier(UserInfoCookieCodec cookieCodec, VerifiedCookieCache verifiedCookieCache, CookiePrecheck precheck,
+                         RevocationList revocationList, Duration refreshWindow, CookieMetrics metrics,
+                         AuthenticationAuditLog auditLog, Clock clock) {
+    this.cookieCodec = cookieCodec;
+    this.verifiedCookieCache = verifiedCookieCache;
+    this.precheck = precheck;
+    this.revocationList = revocationList;
+    this.refreshWindow = refreshWindow;
+    this.metrics = metrics;
+    this.auditLog = auditLog;
+    this.clock = clock;
+  }
+
+  /**
+   * Timed as {@code auth.cookie.context{operation=verify}}.
+   *
+   * @param value the value of the cookie, its chunks joined, {@code null} if the request has none
+   * @param remoteAddress of the request, for the audit log
+   * @return the verified cookie, empty if there is none or it was turned away by the precheck, has expired or its session
+   * was revoked
+   * @throws CookieVerificationFailedException if the cookie fails verification
+   * @throws IllegalArgumentException if the cookie contains no UID
+   */
+  Optional<SignedUserInfoCookie> verify(String value, String remoteAddress) {
+    long startTime = metrics.startTime();
+    try {
+      if (value == null) {
+        metrics.cookieMissing();
+        return Optional.empty();
+      }
+
+      Optional<SignedUserInfoCookie> cookie = Optional.of(value)
+        .filter(candidate -> passesPrecheck(candidate, remoteAddress))
+        .map(candidate -> verifySignature(candidate, remoteAddress))
+        .filter(candidate -> isNotExpired(candidate, remoteAddress))
+        .filter(candidate -> isNotRevoked(candidate, remoteAddress));
+      if (cookie.isPresent())
+        metrics.cookieValid();
+      return cookie;
+    } finally {
+      metrics.verifyDone(startTime);
+    }
+  }
+
+  /**
+   * A cookie issued before its expiry became part of the value is always refreshed, so it gets one.
+   */
+  boolean isRefreshDue(SignedUserInfoCookie cookie) {
+    Optional<Instant> expiry = cookie.getExpiry();
+    return expiry.isEmpty() || !clock.instant().plus(refreshWindow).isBefore(expiry.get());
+  }
+
+  private boolean passesPrecheck(String value, String remoteAddress) {
+    CookiePrecheck.Rejection rejection = precheck.check(value, clock.instant());
+    if (rejection != null) {
+      LOG.debug("{} cookie rejected before verification: {}", SignedUserInfoCookie.NAME, rejection);
+      metrics.cookiePrecheckFailed(rejection);
+      auditLog.cookieRejected(rejection, null, null, remoteAddress);
+      return false;
+    }
+    return true;
+  }
+
+  private SignedUserInfoCookie verifySignature(String value, String remoteAddress) {
+    try {
+      return verifiedCookieCache.get(value, candidate -> new SignedUserInfoCookie(new Cookie(SignedUserInfoCookie.NAME, candidate), cookieCodec));
+    } catch (CookieVerificationFailedException e) {
+      metrics.cookieRejected(e);
+      auditLog.cookieRejected(e.getReason(), null, null, remoteAddress);
+      throw e;
+    } catch (IllegalArgumentException e) {
+      metrics.cookieMalformed();
+      auditLog.cookieRejected(CookieVerificationFailedException.Reason.MALFORMED, null, null, remoteAddress);
+      throw e;
+    }
+  }
+
+  private boolean isNotExpired(SignedUserInfoCookie cookie, String remoteAddress) {
+    if (cookie.isExpired(clock.instant())) {
+      LOG.debug("{} cookie expired at {}", SignedUserInfoCookie.NAME, cookie.getExpiry().orElse(null));
+      metrics.cookieExpired();
+      auditLog.cookieRejected(AuthenticationAuditLog.EXPIRED, cookie.getUsername(), cookie.getSessionId(), remoteAddress);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checked on every request, not only when the cookie is first verified, so revoking a session takes effect at once.
+   */
+  private boolean isNotRevoked(SignedUserInfoCookie cookie, String remoteAddress) {
+    Long sessionId = cookie.getSessionId();
+    if (sessionId != null && revocationList.isRevoked(sessionId)) {
+      LOG.debug("{} cookie of revoked session {}", SignedUserInfoCookie.NAME, RevocationList.format(sessionId));
+      metrics.cookieRevoked();
+      auditLog.cookieRejected(AuthenticationAuditLog.REVOKED, cookie.getUsername(), sessionId, remoteAddress);
+      return false;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.access.expression.SecurityExpressionOperations;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
+import org.springframework.security.web.access.expression.WebSecurityExpressionRoot;
+
+/**
+ * Adds {@code hasUserAuthority('<authority>')} to the expressions of {@code authorizeRequests()}. Unlike
+ * {@code hasAuthority}, which collects the names of all authorities of the {@link Authentication} into a set on every
+ * request, it asks the {@link UserInfo}, so roles in the {@link RoleDictionary} are checked with a bit test.
+ */
+class UserInfoWebSecurityExpressionHandler extends DefaultWebSecurityExpressionHandler {
+
+  static String hasUserAuthority(String authority) {
+    return "hasUserAuthority('" + authority + "')";
+  }
+
+  @Override
+  protected SecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication, FilterInvocation fi) {
+    UserInfoWebSecurityExpressionRoot root = new UserInfoWebSecurityExpressionRoot(authentication, fi);
+    root.setPermissionEvaluator(getPermissionEvaluator());
+    root.setTrustResolver(new AuthenticationTrustResolverImpl());
+    root.setRoleHierarchy(getRoleHierarchy());
+    return root;
+  }
+
+  public static class UserInfoWebSecurityExpressionRoot extends WebSecurityExpressionRoot {
+
+    UserInfoWebSecurityExpressionRoot(Authentication authentication, FilterInvocation fi) {
+      super(authentication, fi);
+    }
+
+    public boolean hasUserAuthority(String authority) {
+      return UserInfo.hasAuthority(getAuthentication(), authority);
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+package com.innoq.cookiebasedsessionapp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Remembers cookie values that have already been verified, so a browser sending the same cookie again and again does
+ * not cause a parse and HMAC calculation on every request.
+ * <p>
+ * Values only enter the cache after successful verification, a cookie failing verification is never cached. Entries
+ * are keyed by the last {@value #TAG_CHARS} characters of the value, which in every format are part of its MAC (or GCM)
+ * tag: a short key that tells cookies apart and is hashed without reading the whole value, nor computing anything. A
+ * hit only counts if the whole value matches as well. Whenever the {@link CookieKeyRing} is reloaded the cache is
+ * cleared, and a value verified while it was reloaded is not kept, so a removed key is not honoured from the cache.
+ */
+@Component
+public class VerifiedCookieCache {
+
+  /**
+   * 132 bits, all but a few of them of the tag, which is at least 16 bytes long.
+   */
+  static final int TAG_CHARS = 22;
+
+  private final Cache<String, Entry> cache;
+  private final CookieKeyRing keyRing;
+
+  @Autowired
+  public VerifiedCookieCache(@Value("${auth.cookie.cache.enabled:false}") boolean enabled,
+                             @Value("${auth.cookie.cache.max-size:10000}") long maxSize,
+                             @Value("${auth.cookie.cache.ttl:10m}") Duration ttl,
+                             CookieKeyRing keyRing) {
+    this(enabled, maxSize, ttl, keyRing, Ticker.systemTicker());
+  }
+
+  VerifiedCookieCache(boolean enabled, long maxSize, Duration ttl, CookieKeyRing keyRing, Ticker ticker) {
+    this.cache = enabled
+      ? Caffeine.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(ttl)
+      .ticker(ticker)
+      .recordStats()
+      .build()
+      : null;
+    this.keyRing = keyRing;
+    if (cache != null)
+      keyRing.onReload(cache::invalidateAll);
+  }
+
+  public static VerifiedCookieCache disabled() {
+    return new VerifiedCookieCache(false, 0, Duration.ZERO, null, Ticker.systemTicker());
+  }
+
+  /**
+   * @param verifier parses and verifies the cookie value, expected to throw if verification fails
+   */
+  SignedUserInfoCookie get(String cookieValue, Function<String, SignedUserInfoCookie> verifier) {
+    if (cache == null)
+      return verifier.apply(cookieValue);
+
+    String tag = cookieValue.substring(Math.max(0, cookieValue.length() - TAG_CHARS));
+    long generation = keyRing.generation();
+    Entry entry = cache.get(tag, key -> new Entry(cookieValue, verifier.apply(cookieValue)));
+    if (!entry.value.equals(cookieValue))
+      return verifier.apply(cookieValue);
+    if (keyRing.generation() != generation)
+      cache.invalidate(tag);
+    return entry.cookie;
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * @return hit, miss and eviction counts, all zero if the cache is disabled
+   */
+  public CacheStats stats() {
+    return cache != null ? cache.stats() : CacheStats.empty();
+  }
+
+  long size() {
+    if (cache == null)
+      return 0;
+
+    cache.cleanUp();
+    return cache.estimatedSize();
+  }
+
+  private static final class Entry {
+    private final String value;
+    private final SignedUserInfoCookie cookie;
+
+    private Entry(String value, SignedUserInfoCookie cookie) {
+      this.value = value;
+      this.cookie = cookie;
+    }
+  }
+
+}
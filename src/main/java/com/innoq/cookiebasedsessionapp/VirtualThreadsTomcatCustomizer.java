@@ -0,0 +1,46 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs Tomcat's request processing on a new virtual thread per request instead of its thread pool, so the number of
+ * requests in progress is limited by {@code server.tomcat.max-connections} rather than {@code server.tomcat.threads.max}.
+ * <p>
+ * Virtual threads need Java 21, while the app is still built for Java 11, so the executor is looked up reflectively and
+ * startup fails on older JDKs when {@code server.virtual-threads.enabled} is set.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "server.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsTomcatCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadsTomcatCustomizer.class);
+
+  @Override
+  public void customize(TomcatServletWebServerFactory factory) {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    factory.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(executor));
+    LOG.info("Tomcat requests are processed on virtual threads");
+  }
+
+  static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("server.virtual-threads.enabled requires Java 21 or later, running on " + System.getProperty("java.version"), e);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Virtual threads are not available", e);
+    }
+  }
+
+}
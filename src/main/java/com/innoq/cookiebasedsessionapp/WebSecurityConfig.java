@@ -14,21 +14,31 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   static final String LOGIN_FORM_URL = "/login";
   static final String TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM = "target";
   static final String COLOUR_PARAM = "colour";
+  static final String ADMIN_AUTHORITY = "ADMIN";
+  static final String ACTUATOR_URL = "/actuator";
+  static final String HEALTH_ENDPOINT_URL = ACTUATOR_URL + "/health";
+  static final String ADMIN_ACCESS = UserInfoWebSecurityExpressionHandler.hasUserAuthority(ADMIN_AUTHORITY);
 
   private final CookieSecurityContextRepository cookieSecurityContextRepository;
   private final LoginWithTargetUrlAuthenticationEntryPoint loginWithTargetUrlAuthenticationEntryPoint;
   private final RedirectToOriginalUrlAuthenticationSuccessHandler redirectToOriginalUrlAuthenticationSuccessHandler;
-  private final InMemoryAuthenticationProvider inMemoryAuthenticationProvider;
+  private final RetryLaterAuthenticationFailureHandler retryLaterAuthenticationFailureHandler;
+  private final DeleteUserInfoCookiesLogoutHandler deleteUserInfoCookiesLogoutHandler;
+  private final UserDirectoryAuthenticationProvider userDirectoryAuthenticationProvider;
 
   protected WebSecurityConfig(CookieSecurityContextRepository cookieSecurityContextRepository,
                               LoginWithTargetUrlAuthenticationEntryPoint loginWithTargetUrlAuthenticationEntryPoint,
                               RedirectToOriginalUrlAuthenticationSuccessHandler redirectToOriginalUrlAuthenticationSuccessHandler,
-                              InMemoryAuthenticationProvider inMemoryAuthenticationProvider) {
+                              RetryLaterAuthenticationFailureHandler retryLaterAuthenticationFailureHandler,
+                              DeleteUserInfoCookiesLogoutHandler deleteUserInfoCookiesLogoutHandler,
+                              UserDirectoryAuthenticationProvider userDirectoryAuthenticationProvider) {
     super();
     this.cookieSecurityContextRepository = cookieSecurityContextRepository;
     this.loginWithTargetUrlAuthenticationEntryPoint = loginWithTargetUrlAuthenticationEntryPoint;
     this.redirectToOriginalUrlAuthenticationSuccessHandler = redirectToOriginalUrlAuthenticationSuccessHandler;
-    this.inMemoryAuthenticationProvider = inMemoryAuthenticationProvider;
+    this.retryLaterAuthenticationFailureHandler = retryLaterAuthenticationFailureHandler;
+    this.deleteUserInfoCookiesLogoutHandler = deleteUserInfoCookiesLogoutHandler;
+    this.userDirectoryAuthenticationProvider = userDirectoryAuthenticationProvider;
   }
 
   @Override
@@ -38,9 +48,9 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
       .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
       .and().csrf().disable()
 
-      // store SecurityContext in Cookie / delete Cookie on logout
+      // store SecurityContext in Cookie / delete Cookie and all its chunks on logout
       .securityContext().securityContextRepository(cookieSecurityContextRepository)
-      .and().logout().permitAll().deleteCookies(SignedUserInfoCookie.NAME)
+      .and().logout().permitAll().addLogoutHandler(deleteUserInfoCookiesLogoutHandler)
 
       // deactivate RequestCache and append originally requested URL as query parameter to login form request
       .and().requestCache().disable()
@@ -51,15 +61,21 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
       .loginPage(LOGIN_FORM_URL)
       // after successful login forward user to originally requested URL
       .successHandler(redirectToOriginalUrlAuthenticationSuccessHandler)
+      // answer logins turned away for lack of password hashing capacity with 503
+      .failureHandler(retryLaterAuthenticationFailureHandler)
 
-      .and().authorizeRequests()
+      // check roles of the UserInfo with a bit test rather than comparing the names of all authorities
+      .and().authorizeRequests().expressionHandler(new UserInfoWebSecurityExpressionHandler())
       .antMatchers(LOGIN_FORM_URL).permitAll()
+      // metrics and timings of every user's requests, and resetting them, are for administrators only
+      .antMatchers(HEALTH_ENDPOINT_URL, HEALTH_ENDPOINT_URL + "/**").authenticated()
+      .antMatchers(ACTUATOR_URL + "/**").access(ADMIN_ACCESS)
       .antMatchers("/**").authenticated();
   }
 
   @Override
   protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-    auth.authenticationProvider(inMemoryAuthenticationProvider);
+    auth.authenticationProvider(userDirectoryAuthenticationProvider);
   }
 
 }
@@ -0,0 +1,237 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The WebFlux counterpart of {@link CookieSecurityContextRepository}: same cookie, same codec, same caches.
+ * <p>
+ * There is no response wrapper to hook into, so cookies are added to the response right before it is committed. This
+ * lets the success handler change the principal (its colour) after the context has been saved, and refreshes the
+ * cookie of requests whose context is only loaded. A {@code null} context, as saved on logout, deletes the cookie and
+ * all its {@link UserInfoCookieChunks chunks}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class CookieServerSecurityContextRepository implements ServerSecurityContextRepository {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CookieServerSecurityContextRepository.class);
+  private static final String REQUEST_COOKIE_ATTRIBUTE = CookieServerSecurityContextRepository.class.getName() + ".REQUEST_COOKIE";
+  private static final String PRINCIPAL_ATTRIBUTE = CookieServerSecurityContextRepository.class.getName() + ".PRINCIPAL";
+
+  private final UserInfoCookieCodec cookieCodec;
+  private final UserInfoCookieVerifier verifier;
+  private final PrincipalCache principalCache;
+  private final CookiePrecheck precheck;
+  private final CookieMetrics metrics;
+  private final AuthenticationAuditLog auditLog;
+  private final Clock clock;
+
+  @Autowired
+  public CookieServerSecurityContextRepository(UserInfoCookieCodec cookieCodec,
+                                               UserInfoCookieVerifier verifier,
+                                               PrincipalCache principalCache,
+                                               CookiePrecheck precheck,
+                                               CookieMetrics metrics,
+                                               AuthenticationAuditLog auditLog) {
+    this(cookieCodec, verifier, principalCache, precheck, metrics, auditLog, Clock.systemUTC());
+  }
+
+  CookieServerSecurityContextRepository(UserInfoCookieCodec cookieCodec, UserInfoCookieVerifier verifier, PrincipalCache principalCache,
+                                        CookiePrecheck precheck, CookieMetrics metrics, AuthenticationAuditLog auditLog, Clock clock) {
+    this.cookieCodec = cookieCodec;
+    this.verifier = verifier;
+    this.principalCache = principalCache;
+    this.precheck = precheck;
+    this.metrics = metrics;
+    this.auditLog = auditLog;
+    this.clock = clock;
+  }
+
+  /**
+   * The cookie is verified on subscription, at most once per exchange. Unlike {@code loadContext} of the servlet
+   * repository, the load timer therefore runs from subscription to completion and includes the verification.
+   */
+  @Override
+  public Mono<SecurityContext> load(ServerWebExchange exchange) {
+    return Mono.defer(() -> {
+      long startTime = metrics.startTime();
+      return requestCookieOf(exchange)
+        .doOnNext(cookie -> {
+          if (verifier.isRefreshDue(cookie))
+            writeCookieBeforeCommit(exchange, cookie.getPayload()::toUserInfo, cookie);
+        })
+        .<SecurityContext>map(cookie -> new SecurityContextImpl(principalCache.authenticationFor(cookie.getPayload())))
+        .doFinally(signal -> metrics.loadContextDone(startTime));
+    });
+  }
+
+  /**
+   * Timed from subscription to completion, like {@link #load}.
+   */
+  @Override
+  public Mono<Void> save(ServerWebExchange exchange, SecurityContext context) {
+    return Mono.defer(() -> {
+      long startTime = metrics.startTime();
+      return saveInCookie(exchange, context).doFinally(signal -> metrics.saveContextDone(startTime));
+    });
+  }
+
+  private Mono<Void> saveInCookie(ServerWebExchange exchange, SecurityContext context) {
+    Authentication authentication = context != null ? context.getAuthentication() : null;
+    if (authentication == null) {
+      LOG.debug("No securityContext.authentication, delete {} cookie", SignedUserInfoCookie.NAME);
+      writeCookieBeforeCommit(exchange, () -> null, null);
+      return Mono.empty();
+    }
+
+    if (!(authentication.getPrincipal() instanceof UserInfo)) {
+      LOG.warn("securityContext.authentication.principal of unexpected type {}, skip save", authentication.getPrincipal().getClass().getCanonicalName());
+      return Mono.empty();
+    }
+
+    UserInfo userInfo = (UserInfo) authentication.getPrincipal();
+    return requestCookieOf(exchange)
+      .onErrorResume(e -> e instanceof CookieVerificationFailedException || e instanceof IllegalArgumentException, e -> Mono.empty())
+      .map(Optional::of)
+      .defaultIfEmpty(Optional.empty())
+      .doOnNext(loadedCookie -> {
+        if (loadedCookie.isPresent() && loadedCookie.get().represents(userInfo) && !verifier.isRefreshDue(loadedCookie.get()))
+          LOG.debug("Principal '{}' unchanged and cookie not due for refresh, skip save", userInfo.getUsername());
+        else
+          writeCookieBeforeCommit(exchange, () -> userInfo, loadedCookie.orElse(null));
+      })
+      .then();
+  }
+
+  /**
+   * The verified {@link SignedUserInfoCookie} of the request, cached in the exchange so that {@link #load} and
+   * {@link #save} share one verification.
+   */
+  @SuppressWarnings("unchecked")
+  private Mono<SignedUserInfoCookie> requestCookieOf(ServerWebExchange exchange) {
+    return (Mono<SignedUserInfoCookie>) exchange.getAttributes().computeIfAbsent(REQUEST_COOKIE_ATTRIBUTE,
+      name -> Mono.fromCallable(() -> verifier.verify(readCookieValue(exchange.getRequest()), remoteAddressOf(exchange.getRequest())).orElse(null))
+        .cache());
+  }
+
+  /**
+   * @return the value of the {@code UserInfo} cookie of the request, its chunks joined, {@code null} if there is none
+   */
+  private static String readCookieValue(ServerHttpRequest request) {
+    MultiValueMap<String, HttpCookie> cookies = request.getCookies();
+    HttpCookie cookie = cookies.getFirst(SignedUserInfoCookie.NAME);
+    if (cookie != null)
+      return cookie.getValue();
+
+    String joined = UserInfoCookieChunks.join(i -> {
+      HttpCookie chunk = cookies.getFirst(UserInfoCookieChunks.chunkName(i));
+      return chunk != null ? chunk.getValue() : null;
+    });
+    if (joined == null)
+      LOG.debug("No {} cookie in request", SignedUserInfoCookie.NAME);
+    return joined;
+  }
+
+  /**
+   * The principal is only encoded when the response is committed. The hook is registered once per exchange and the
+   * principal registered last wins, a {@code null} principal deletes the cookie. The cookie of the request, if any, passes
+   * its session id on to the new one.
+   */
+  private void writeCookieBeforeCommit(ServerWebExchange exchange, Supplier<UserInfo> principal, SignedUserInfoCookie previous) {
+    boolean registered = exchange.getAttributes().containsKey(PRINCIPAL_ATTRIBUTE);
+    exchange.getAttributes().put(PRINCIPAL_ATTRIBUTE, new PendingCookie(principal, previous));
+    if (!registered)
+      exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> writeCookie(exchange)));
+  }
+
+  private void writeCookie(ServerWebExchange exchange) {
+    PendingCookie pending = (PendingCookie) exchange.getAttributes().get(PRINCIPAL_ATTRIBUTE);
+    UserInfo userInfo = pending.principal.get();
+    if (userInfo == null) {
+      exchange.getResponse().addCookie(deletion(SignedUserInfoCookie.NAME));
+      deleteObsoleteCookies(exchange, 0);
+      LOG.debug("{} cookie deleted", SignedUserInfoCookie.NAME);
+      return;
+    }
+
+    SignedUserInfoCookie cookie = new SignedUserInfoCookie(userInfo, cookieCodec, clock, pending.previous);
+    if (precheck.isOversized(cookie.getValue())) {
+      LOG.warn("Cookie of {} characters for principal '{}' exceeds auth.cookie.max-length, skip save",
+        cookie.getValue().length(), userInfo.getUsername());
+      return;
+    }
+    List<String> chunks = UserInfoCookieChunks.split(cookie.getValue());
+    for (int i = 0; i < chunks.size(); i++) {
+      String name = chunks.size() == 1 ? SignedUserInfoCookie.NAME : UserInfoCookieChunks.chunkName(i);
+      exchange.getResponse().addCookie(ResponseCookie.from(name, chunks.get(i))
+        .path(cookie.getPath())
+        .maxAge(cookie.getMaxAge())
+        .httpOnly(true)
+        .secure(exchange.getRequest().getSslInfo() != null)
+        .build());
+    }
+    deleteObsoleteCookies(exchange, chunks.size());
+    metrics.cookieWritten(cookie);
+    if (cookie.getSessionId() != null && (pending.previous == null || !cookie.getSessionId().equals(pending.previous.getSessionId())))
+      auditLog.sessionStarted(userInfo.getUsername(), cookie.getSessionId(), remoteAddressOf(exchange.getRequest()));
+    LOG.debug("SecurityContext for principal '{}' saved in {} Cookie(s), session {}", userInfo.getUsername(), chunks.size(),
+      cookie.getSessionId() != null ? RevocationList.format(cookie.getSessionId()) : "-");
+  }
+
+  /**
+   * Deletes the unchunked cookie, or chunks beyond the ones just written, left over from a differently sized value.
+   */
+  private static void deleteObsoleteCookies(ServerWebExchange exchange, int chunksWritten) {
+    for (String name : exchange.getRequest().getCookies().keySet()) {
+      if (UserInfoCookieChunks.isObsoleteAfter(name, chunksWritten) && !exchange.getResponse().getCookies().containsKey(name))
+        exchange.getResponse().addCookie(deletion(name));
+    }
+  }
+
+  static String remoteAddressOf(ServerHttpRequest request) {
+    InetSocketAddress address = request.getRemoteAddress();
+    if (address == null)
+      return null;
+    return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+  }
+
+  private static ResponseCookie deletion(String name) {
+    return ResponseCookie.from(name, "")
+      .path("/")
+      .maxAge(Duration.ZERO)
+      .httpOnly(true)
+      .build();
+  }
+
+  private static final class PendingCookie {
+    private final Supplier<UserInfo> principal;
+    private final SignedUserInfoCookie previous;
+
+    private PendingCookie(Supplier<UserInfo> principal, SignedUserInfoCookie previous) {
+      this.principal = principal;
+      this.previous = previous;
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.DefaultServerRedirectStrategy;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.security.web.server.ServerRedirectStrategy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * The WebFlux counterpart of {@link LoginWithTargetUrlAuthenticationEntryPoint}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class LoginWithTargetUrlServerAuthenticationEntryPoint implements ServerAuthenticationEntryPoint {
+
+  private final ServerRedirectStrategy redirectStrategy = new DefaultServerRedirectStrategy();
+
+  @Override
+  public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException exception) {
+    URI location = UriComponentsBuilder.fromPath(WebSecurityConfig.LOGIN_FORM_URL)
+      .queryParam(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM, exchange.getRequest().getPath().value())
+      .build()
+      .toUri();
+    return redirectStrategy.sendRedirect(exchange, location);
+  }
+}
@@ -0,0 +1,55 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Runs the app on WebFlux and Netty instead of the servlet stack (build with {@code -Preactive}).
+ * <p>
+ * Only the beans not tied to the servlet API are imported, components are not scanned. Tomcat stays on the classpath
+ * for the shared classes, so Netty is chosen explicitly.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableAutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Import({
+  CookieKeyRing.class,
+  RoleDictionary.class,
+  UserInfoCookieCodec.class,
+  VerifiedCookieCache.class,
+  UserInfoCookieVerifier.class,
+  PrincipalCache.class,
+  CookiePrecheck.class,
+  RevocationList.class,
+  CookieMetrics.class,
+  AuthenticationAuditLog.class,
+  UserDirectory.class,
+  PasswordHashingExecutor.class,
+  UserDirectoryAuthenticationProvider.class,
+  CookieServerSecurityContextRepository.class,
+  LoginWithTargetUrlServerAuthenticationEntryPoint.class,
+  RedirectToOriginalUrlServerAuthenticationSuccessHandler.class,
+  RetryLaterServerAuthenticationFailureHandler.class,
+  ReactiveWebSecurityConfig.class,
+  WebFluxConfig.class
+})
+public class ReactiveCookieBasedSessionApplication {
+
+  @Bean
+  NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  public static void main(String[] args) {
+    new SpringApplicationBuilder(ReactiveCookieBasedSessionApplication.class)
+      .web(WebApplicationType.REACTIVE)
+      .run(args);
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.logout.DelegatingServerLogoutHandler;
+import org.springframework.security.web.server.authentication.logout.SecurityContextServerLogoutHandler;
+import org.springframework.security.web.server.authentication.logout.ServerLogoutHandler;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+
+/**
+ * The WebFlux counterpart of {@link WebSecurityConfig}.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSecurityConfig {
+
+  static final UserInfoAuthorizationManager ADMIN_ACCESS = UserInfoAuthorizationManager.hasUserAuthority(WebSecurityConfig.ADMIN_AUTHORITY);
+
+  @Bean
+  ReactiveAuthenticationManager reactiveAuthenticationManager(UserDirectoryAuthenticationProvider userDirectoryAuthenticationProvider) {
+    return new ReactiveAuthenticationManagerAdapter(new ProviderManager(Collections.singletonList(userDirectoryAuthenticationProvider)));
+  }
+
+  @Bean
+  SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                CookieServerSecurityContextRepository cookieServerSecurityContextRepository,
+                                                LoginWithTargetUrlServerAuthenticationEntryPoint loginWithTargetUrlServerAuthenticationEntryPoint,
+                                                RedirectToOriginalUrlServerAuthenticationSuccessHandler redirectToOriginalUrlServerAuthenticationSuccessHandler,
+                                                RetryLaterServerAuthenticationFailureHandler retryLaterServerAuthenticationFailureHandler,
+                                                ReactiveAuthenticationManager reactiveAuthenticationManager,
+                                                AuthenticationAuditLog authenticationAuditLog) {
+    SecurityContextServerLogoutHandler deleteCookieLogoutHandler = new SecurityContextServerLogoutHandler();
+    deleteCookieLogoutHandler.setSecurityContextRepository(cookieServerSecurityContextRepository);
+    ServerLogoutHandler auditLogoutHandler = (exchange, authentication) -> Mono.fromRunnable(() -> {
+      if (authentication != null)
+        authenticationAuditLog.logout(authentication.getName(),
+          CookieServerSecurityContextRepository.remoteAddressOf(exchange.getExchange().getRequest()));
+    });
+
+    return http
+      .csrf().disable()
+
+      // store SecurityContext in Cookie / delete Cookie on logout
+      .securityContextRepository(cookieServerSecurityContextRepository)
+      .logout().logoutHandler(new DelegatingServerLogoutHandler(auditLogoutHandler, deleteCookieLogoutHandler))
+
+      // deactivate RequestCache and append originally requested URL as query parameter to login form request
+      .and().requestCache().requestCache(NoOpServerRequestCache.getInstance())
+      .and().exceptionHandling().authenticationEntryPoint(loginWithTargetUrlServerAuthenticationEntryPoint)
+
+      // configure form-based login
+      .and().formLogin()
+      .loginPage(WebSecurityConfig.LOGIN_FORM_URL)
+      .authenticationEntryPoint(loginWithTargetUrlServerAuthenticationEntryPoint)
+      .authenticationManager(reactiveAuthenticationManager)
+      .securityContextRepository(cookieServerSecurityContextRepository)
+      // after successful login forward user to originally requested URL
+      .authenticationSuccessHandler(redirectToOriginalUrlServerAuthenticationSuccessHandler)
+      // answer logins turned away for lack of password hashing capacity with 503
+      .authenticationFailureHandler(retryLaterServerAuthenticationFailureHandler)
+
+      .and().authorizeExchange()
+      .pathMatchers(WebSecurityConfig.LOGIN_FORM_URL).permitAll()
+      // metrics are for administrators only, their role checked with a bit test
+      .pathMatchers(WebSecurityConfig.HEALTH_ENDPOINT_URL, WebSecurityConfig.HEALTH_ENDPOINT_URL + "/**").authenticated()
+      .pathMatchers(WebSecurityConfig.ACTUATOR_URL + "/**").access(ADMIN_ACCESS)
+      .anyExchange().authenticated()
+      .and().build();
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.web.server.DefaultServerRedirectStrategy;
+import org.springframework.security.web.server.ServerRedirectStrategy;
+import org.springframework.security.web.server.WebFilterExchange;
+import org.springframework.security.web.server.authentication.ServerAuthenticationFailureHandler;
+import org.springframework.security.web.server.authentication.ServerAuthenticationSuccessHandler;
+import org.springframework.security.web.util.UrlUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Clock;
+
+/**
+ * The WebFlux counterpart of {@link RedirectToOriginalUrlAuthenticationSuccessHandler}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class RedirectToOriginalUrlServerAuthenticationSuccessHandler implements ServerAuthenticationSuccessHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(RedirectToOriginalUrlServerAuthenticationSuccessHandler.class);
+  private static final String DEFAULT_TARGET_URL = "/";
+
+  private final ServerRedirectStrategy redirectStrategy = new DefaultServerRedirectStrategy();
+  private final UserInfoCookieCodec cookieCodec;
+  private final CookiePrecheck precheck;
+  private final ServerAuthenticationFailureHandler failureHandler;
+  private final AuthenticationAuditLog auditLog;
+
+  public RedirectToOriginalUrlServerAuthenticationSuccessHandler(UserInfoCookieCodec cookieCodec, CookiePrecheck precheck,
+                                                                 RetryLaterServerAuthenticationFailureHandler failureHandler,
+                                                                 AuthenticationAuditLog auditLog) {
+    this.cookieCodec = cookieCodec;
+    this.precheck = precheck;
+    this.failureHandler = failureHandler;
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * @see RedirectToOriginalUrlAuthenticationSuccessHandler#onAuthenticationSuccess
+   */
+  @Override
+  public Mono<Void> onAuthenticationSuccess(WebFilterExchange webFilterExchange, Authentication authentication) {
+    return webFilterExchange.getExchange().getFormData().flatMap(formData -> {
+      UserInfo userInfo = ((UserInfo) authentication.getPrincipal()).withColour(formData.getFirst(WebSecurityConfig.COLOUR_PARAM));
+      int cookieLength = new SignedUserInfoCookie(userInfo, cookieCodec, Clock.systemUTC(), null).getValue().length();
+      if (precheck.isOversized(cookieLength)) {
+        LOG.warn("Cookie of {} characters for '{}' exceeds auth.cookie.max-length, login refused", cookieLength, userInfo.getUsername());
+        return failureHandler.onAuthenticationFailure(webFilterExchange,
+          new UserInfoCookieTooLargeException("Roles and colour of '" + userInfo.getUsername() + "' exceed the cookie size limit"));
+      }
+      auditLog.loginSucceeded(userInfo.getUsername(),
+        CookieServerSecurityContextRepository.remoteAddressOf(webFilterExchange.getExchange().getRequest()));
+      Mono<Void> principalReplaced = userInfo == authentication.getPrincipal() ? Mono.empty() : ReactiveSecurityContextHolder.getContext()
+        .doOnNext(context -> context.setAuthentication(RedirectToOriginalUrlAuthenticationSuccessHandler.withPrincipal(authentication, userInfo)))
+        .then();
+      return principalReplaced.then(redirectStrategy.sendRedirect(webFilterExchange.getExchange(),
+        URI.create(determineTargetUrl(formData.getFirst(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM)))));
+    });
+  }
+
+  String determineTargetUrl(String targetUrl) {
+    if (!StringUtils.hasText(targetUrl))
+      return DEFAULT_TARGET_URL;
+    if (UrlUtils.isAbsoluteUrl(targetUrl)) {
+      LOG.warn("Absolute target URL {} identified and suppressed", targetUrl);
+      return DEFAULT_TARGET_URL;
+    }
+    return targetUrl;
+  }
+}
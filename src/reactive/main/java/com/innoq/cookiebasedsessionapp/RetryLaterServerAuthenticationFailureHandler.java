@@ -0,0 +1,51 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.WebFilterExchange;
+import org.springframework.security.web.server.authentication.RedirectServerAuthenticationFailureHandler;
+import org.springframework.security.web.server.authentication.ServerAuthenticationFailureHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux counterpart of {@link RetryLaterAuthenticationFailureHandler}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class RetryLaterServerAuthenticationFailureHandler implements ServerAuthenticationFailureHandler {
+
+  private final ServerAuthenticationFailureHandler loginFormFailureHandler =
+    new RedirectServerAuthenticationFailureHandler(WebSecurityConfig.LOGIN_FORM_URL + "?error");
+  private final AuthenticationAuditLog auditLog;
+
+  public RetryLaterServerAuthenticationFailureHandler(AuthenticationAuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * The form data has been read by the authentication filter already, so the username comes from its cache.
+   */
+  @Override
+  public Mono<Void> onAuthenticationFailure(WebFilterExchange webFilterExchange, AuthenticationException exception) {
+    ServerWebExchange exchange = webFilterExchange.getExchange();
+    return exchange.getFormData()
+      .doOnNext(formData -> auditLog.loginFailed(formData.getFirst("username"), exception.getClass().getSimpleName(),
+        CookieServerSecurityContextRepository.remoteAddressOf(exchange.getRequest())))
+      .then(Mono.defer(() -> respond(webFilterExchange, exception)));
+  }
+
+  private Mono<Void> respond(WebFilterExchange webFilterExchange, AuthenticationException exception) {
+    if (exception instanceof LoginCapacityExceededException) {
+      ServerHttpResponse response = webFilterExchange.getExchange().getResponse();
+      response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+      response.getHeaders().set(HttpHeaders.RETRY_AFTER, ((LoginCapacityExceededException) exception).getRetryAfterSeconds());
+      return response.setComplete();
+    }
+    return loginFormFailureHandler.onAuthenticationFailure(webFilterExchange, exception);
+  }
+}
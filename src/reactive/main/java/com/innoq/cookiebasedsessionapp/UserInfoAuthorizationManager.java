@@ -0,0 +1,36 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux counterpart of {@link UserInfoWebSecurityExpressionHandler}: grants access if the {@link UserInfo} has the
+ * authority, checked with a bit test for roles in the {@link RoleDictionary} instead of comparing the names of all
+ * authorities as {@code hasAuthority} does.
+ */
+class UserInfoAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+  private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+  private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+  private final String authority;
+
+  private UserInfoAuthorizationManager(String authority) {
+    this.authority = authority;
+  }
+
+  static UserInfoAuthorizationManager hasUserAuthority(String authority) {
+    return new UserInfoAuthorizationManager(authority);
+  }
+
+  @Override
+  public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+    return authentication
+      .map(candidate -> UserInfo.hasAuthority(candidate, authority) ? GRANTED : DENIED)
+      .defaultIfEmpty(DENIED);
+  }
+
+}
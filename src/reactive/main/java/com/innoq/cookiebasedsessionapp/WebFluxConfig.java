@@ -0,0 +1,32 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.util.Map;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * The WebFlux counterpart of {@link MvcConfig}. There is no {@code HttpServletRequest} to take the remote user from,
+ * so it is passed to the index view explicitly. Ordered before the welcome page Spring Boot maps to {@code /}.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class WebFluxConfig {
+
+  @Bean
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  RouterFunction<ServerResponse> viewRoutes() {
+    return route(GET("/"), request -> request.principal()
+      .flatMap(principal -> ServerResponse.ok().render("index", Map.of("remoteUser", principal.getName()))))
+      .andRoute(GET("/other"), request -> ServerResponse.ok().render("other"))
+      .andRoute(GET(WebSecurityConfig.LOGIN_FORM_URL), request -> ServerResponse.ok().render("login"));
+  }
+}
@@ -0,0 +1,245 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.MultiValueMap;
+import reactor.test.StepVerifier;
+
+import javax.servlet.http.Cookie;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static com.innoq.cookiebasedsessionapp.MacAlgorithm.HMAC_SHA_512;
+import static java.util.stream.Collectors.toSet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieServerSecurityContextRepositoryTest {
+
+  private static final String COMPACT_COOKIE_VALUE = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9X3HES-2YL8ANngLxEo3-TeZ767sc3rzApCDtwQfHNvU96oZYm3O_tS_xgGGYfWhVpsZQTYNXT94MgcqZloSOHdw";
+  private static final String COOKIE_VALUE_WITH_INVALID_HMAC = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=invalid";
+
+  private static final String USERNAME = "ab1234";
+  private static final String COLOUR = "YELLOW";
+
+  private static final String COOKIE_HMAC_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final Instant NOW = Instant.parse("2020-07-01T12:00:00Z");
+  private static final Duration REFRESH_WINDOW = Duration.ofMinutes(45);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build();
+
+  @Test
+  public void load_noCookieInRequest() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/"));
+
+    StepVerifier.create(repositoryAt(NOW).load(exchange)).verifyComplete();
+    assertThat(verifications("missing")).isEqualTo(1);
+  }
+
+  @Test
+  public void load_validCookie_notDueForRefresh() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+
+    StepVerifier.create(repositoryAt(NOW).load(exchange))
+      .assertNext(context -> {
+        UserInfo userInfo = (UserInfo) context.getAuthentication().getPrincipal();
+        assertThat(userInfo.getUsername()).isEqualTo(USERNAME);
+        assertThat(userInfo.getColour()).contains(COLOUR);
+      })
+      .verifyComplete();
+
+    assertThat(cookiesWrittenOnCommit(exchange)).isEmpty();
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void load_timedOnSubscriptionNotOnAssembly() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+    CookieServerSecurityContextRepository repository = repositoryAt(NOW);
+
+    var context = repository.load(exchange);
+    var saved = repository.save(exchange, null);
+
+    assertThat(contextTimer("load").count()).isZero();
+    assertThat(contextTimer("save").count()).isZero();
+    StepVerifier.create(context).expectNextCount(1).verifyComplete();
+    StepVerifier.create(saved).verifyComplete();
+    assertThat(contextTimer("load").count()).isEqualTo(1);
+    assertThat(contextTimer("verify").count()).isEqualTo(1);
+    assertThat(contextTimer("save").count()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_validCookie_dueForRefresh() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+
+    StepVerifier.create(repositoryAt(NOW.plus(Duration.ofMinutes(20))).load(exchange)).expectNextCount(1).verifyComplete();
+
+    ResponseCookie refreshed = cookiesWrittenOnCommit(exchange).getFirst(SignedUserInfoCookie.NAME);
+    assertThat(refreshed.getValue()).isNotEqualTo(COMPACT_COOKIE_VALUE);
+    assertThat(refreshed.getMaxAge()).isEqualTo(SignedUserInfoCookie.MAX_AGE);
+    assertThat(refreshed.isHttpOnly()).isTrue();
+    assertThat(decode(refreshed).getExpiry()).contains(NOW.plus(Duration.ofMinutes(20)).plus(SignedUserInfoCookie.MAX_AGE));
+  }
+
+  @Test
+  public void load_cookieWithInvalidHmac() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COOKIE_VALUE_WITH_INVALID_HMAC)));
+
+    StepVerifier.create(repositoryAt(NOW).load(exchange)).verifyError(CookieVerificationFailedException.class);
+    assertThat(verifications("invalid_signature")).isEqualTo(1);
+  }
+
+  @Test
+  public void save_afterLogin_encodesPrincipalChangedBeforeCommit() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/login"));
+    UserInfo userInfo = new UserInfo(USERNAME, "", Set.of(new SimpleGrantedAuthority("USER")));
+
+    StepVerifier.create(repositoryAt(NOW).save(exchange, contextOf(userInfo))).verifyComplete();
+    userInfo.withColour(COLOUR);
+
+    SignedUserInfoCookie cookie = decode(cookiesWrittenOnCommit(exchange).getFirst(SignedUserInfoCookie.NAME));
+    assertThat(cookie.getUsername()).isEqualTo(USERNAME);
+    assertThat(cookie.getColour()).isEqualTo(COLOUR);
+    assertThat(meterRegistry.get("auth.cookie.writes").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void save_unchangedPrincipal_verifiesOnceAndWritesNothing() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+    CookieServerSecurityContextRepository repository = repositoryAt(NOW);
+
+    SecurityContext context = repository.load(exchange).block();
+    StepVerifier.create(repository.save(exchange, context)).verifyComplete();
+
+    assertThat(cookiesWrittenOnCommit(exchange)).isEmpty();
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void save_nullContext_deletesCookieEvenIfRefreshWasDue() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/logout").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+    CookieServerSecurityContextRepository repository = repositoryAt(NOW.plus(Duration.ofMinutes(20)));
+
+    repository.load(exchange).block();
+    StepVerifier.create(repository.save(exchange, null)).verifyComplete();
+
+    ResponseCookie deleted = cookiesWrittenOnCommit(exchange).getFirst(SignedUserInfoCookie.NAME);
+    assertThat(deleted.getValue()).isEmpty();
+    assertThat(deleted.getMaxAge()).isEqualTo(Duration.ZERO);
+    assertThat(cookiesWrittenOnCommit(exchange).get(SignedUserInfoCookie.NAME)).hasSize(1);
+  }
+
+  @Test
+  public void save_principalTooLargeForOneCookie_writesChunksLoadedAgain() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/login").cookie(new HttpCookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE)));
+    Set<GrantedAuthority> roles = IntStream.range(0, 300)
+      .<GrantedAuthority>mapToObj(i -> new SimpleGrantedAuthority(String.format("ROLE_%03d_OF_A_LARGE_ORGANISATION", i)))
+      .collect(toSet());
+
+    StepVerifier.create(repositoryAt(NOW).save(exchange, contextOf(new UserInfo(USERNAME, roles)))).verifyComplete();
+
+    MultiValueMap<String, ResponseCookie> written = cookiesWrittenOnCommit(exchange);
+    assertThat(written.getFirst(SignedUserInfoCookie.NAME).getMaxAge()).isEqualTo(Duration.ZERO);
+    assertThat(written.getFirst(UserInfoCookieChunks.chunkName(1)).getMaxAge()).isEqualTo(SignedUserInfoCookie.MAX_AGE);
+
+    MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/");
+    written.values().stream()
+      .flatMap(List::stream)
+      .filter(cookie -> !cookie.getMaxAge().isZero())
+      .forEach(cookie -> request.cookie(new HttpCookie(cookie.getName(), cookie.getValue())));
+    StepVerifier.create(repositoryAt(NOW).load(exchange(request)))
+      .assertNext(context -> assertThat(context.getAuthentication().getAuthorities()).hasSize(roles.size()))
+      .verifyComplete();
+  }
+
+  @Test
+  public void save_nullContext_deletesAllChunks() {
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/logout")
+      .cookie(new HttpCookie(UserInfoCookieChunks.chunkName(0), "a"), new HttpCookie(UserInfoCookieChunks.chunkName(1), "b")));
+
+    StepVerifier.create(repositoryAt(NOW).save(exchange, null)).verifyComplete();
+
+    assertThat(cookiesWrittenOnCommit(exchange).keySet())
+      .containsExactlyInAnyOrder(SignedUserInfoCookie.NAME, UserInfoCookieChunks.chunkName(0), UserInfoCookieChunks.chunkName(1));
+  }
+
+  @Test
+  public void load_cookieDueForRefresh_keepsSessionIdUnlessRevoked(@TempDir Path tempDir) throws IOException {
+    String issued = new SignedUserInfoCookie(new UserInfo(USERNAME, Set.of(), COLOUR), codec, Clock.fixed(NOW, ZoneOffset.UTC)).getValue();
+    Long sessionId = decode(ResponseCookie.from(SignedUserInfoCookie.NAME, issued).build()).getSessionId();
+    MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, issued)));
+
+    StepVerifier.create(repositoryAt(NOW.plus(Duration.ofMinutes(20)), codec, RevocationList.disabled()).load(exchange))
+      .expectNextCount(1)
+      .verifyComplete();
+
+    assertThat(sessionId).isNotNull();
+    assertThat(decode(cookiesWrittenOnCommit(exchange).getFirst(SignedUserInfoCookie.NAME)).getSessionId()).isEqualTo(sessionId);
+
+    Path revocationFile = tempDir.resolve("revoked");
+    Files.writeString(revocationFile, RevocationList.format(sessionId) + "\n");
+    MockServerWebExchange revoked = exchange(MockServerHttpRequest.get("/").cookie(new HttpCookie(SignedUserInfoCookie.NAME, issued)));
+
+    StepVerifier.create(repositoryAt(NOW, codec, RevocationList.of(revocationFile)).load(revoked)).verifyComplete();
+    assertThat(verifications("revoked")).isEqualTo(1);
+  }
+
+  private CookieServerSecurityContextRepository repositoryAt(Instant now) {
+    return repositoryAt(now, codec, RevocationList.disabled());
+  }
+
+  private CookieServerSecurityContextRepository repositoryAt(Instant now, UserInfoCookieCodec codec, RevocationList revocationList) {
+    Clock clock = Clock.fixed(now, ZoneOffset.UTC);
+    CookiePrecheck precheck = new CookiePrecheck(16384);
+    CookieMetrics metrics = new CookieMetrics(meterRegistry);
+    UserInfoCookieVerifier verifier = new UserInfoCookieVerifier(codec, VerifiedCookieCache.disabled(), precheck, revocationList, REFRESH_WINDOW,
+      metrics, AuthenticationAuditLog.disabled(), clock);
+    return new CookieServerSecurityContextRepository(codec, verifier, new PrincipalCache(100), precheck, metrics, AuthenticationAuditLog.disabled(), clock);
+  }
+
+  private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+    return MockServerWebExchange.from(request);
+  }
+
+  private static SecurityContext contextOf(UserInfo userInfo) {
+    return new SecurityContextImpl(new UsernamePasswordAuthenticationToken(userInfo, "", userInfo.getAuthorities()));
+  }
+
+  private static MultiValueMap<String, ResponseCookie> cookiesWrittenOnCommit(MockServerWebExchange exchange) {
+    exchange.getResponse().setComplete().block();
+    return exchange.getResponse().getCookies();
+  }
+
+  private SignedUserInfoCookie decode(ResponseCookie cookie) {
+    return new SignedUserInfoCookie(new Cookie(cookie.getName(), cookie.getValue()), codec);
+  }
+
+  private Timer contextTimer(String operation) {
+    return meterRegistry.get("auth.cookie.context").tag("operation", operation).timer();
+  }
+
+  private double verifications(String result) {
+    return meterRegistry.get("auth.cookie.verifications").tag("result", result).counter().count();
+  }
+
+}
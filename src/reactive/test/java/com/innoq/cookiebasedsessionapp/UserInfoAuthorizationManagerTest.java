@@ -0,0 +1,50 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+public class UserInfoAuthorizationManagerTest {
+
+  private static final RoleDictionary DICTIONARY = RoleDictionary.of("USER", "TESTER", "ADMIN");
+
+  private final AuthorizationContext context = new AuthorizationContext(
+    MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/metrics")));
+
+  @Test
+  public void adminAccess_checksRoleBitsOfUserInfo() {
+    UserInfo admin = new UserInfo("bob", DICTIONARY.authoritiesOf(List.of("USER", "ADMIN")));
+    // authorities of the token left empty: a check comparing their names would deny access
+    Authentication authentication = new UsernamePasswordAuthenticationToken(admin, "", List.of());
+
+    StepVerifier.create(ReactiveWebSecurityConfig.ADMIN_ACCESS.check(Mono.just(authentication), context).map(AuthorizationDecision::isGranted))
+      .expectNext(true)
+      .verifyComplete();
+  }
+
+  @Test
+  public void adminAccess_userWithoutAdminRole_denied() {
+    UserInfo user = new UserInfo("bob", DICTIONARY.authoritiesOf(List.of("USER", "TESTER")));
+    Authentication authentication = new UsernamePasswordAuthenticationToken(user, "", user.getAuthorities());
+
+    StepVerifier.create(ReactiveWebSecurityConfig.ADMIN_ACCESS.check(Mono.just(authentication), context).map(AuthorizationDecision::isGranted))
+      .expectNext(false)
+      .verifyComplete();
+  }
+
+  @Test
+  public void adminAccess_unauthenticated_denied() {
+    StepVerifier.create(ReactiveWebSecurityConfig.ADMIN_ACCESS.check(Mono.empty(), context).map(AuthorizationDecision::isGranted))
+      .expectNext(false)
+      .verifyComplete();
+  }
+
+}
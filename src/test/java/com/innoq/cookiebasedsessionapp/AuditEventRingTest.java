@@ -0,0 +1,92 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditEventRingTest {
+
+  @Test
+  public void capacity_roundedUpToPowerOfTwo() {
+    assertThat(new AuditEventRing(1).capacity()).isEqualTo(1);
+    assertThat(new AuditEventRing(1000).capacity()).isEqualTo(1024);
+    assertThat(new AuditEventRing(1024).capacity()).isEqualTo(1024);
+  }
+
+  @Test
+  public void drain_eventsInOrderOfOffer() {
+    AuditEventRing ring = new AuditEventRing(4);
+    for (int i = 0; i < 10; i++) {
+      assertThat(ring.offer(AuthenticationAuditLog.EventType.LOGOUT, i, "user" + i, null, null, "127.0.0.1")).isTrue();
+      assertThat(ring.isEmpty()).isFalse();
+      List<String> usernames = new ArrayList<>();
+      ring.drain(event -> usernames.add(event.getUsername()), 10);
+      assertThat(usernames).containsExactly("user" + i);
+      assertThat(ring.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  public void offer_full_droppedAndCountedWithoutBlocking() {
+    AuditEventRing ring = new AuditEventRing(4);
+    for (int i = 0; i < 6; i++) {
+      ring.offer(AuthenticationAuditLog.EventType.LOGIN_FAILED, i, "user" + i, null, "BadCredentialsException", null);
+    }
+
+    assertThat(ring.dropped()).isEqualTo(2);
+    List<Long> times = new ArrayList<>();
+    assertThat(ring.drain(event -> times.add(event.getEpochMilli()), 2)).isEqualTo(2);
+    assertThat(ring.offer(AuthenticationAuditLog.EventType.LOGIN_FAILED, 6, "user6", null, null, null)).isTrue();
+    assertThat(ring.drain(event -> times.add(event.getEpochMilli()), 10)).isEqualTo(3);
+    assertThat(times).containsExactly(0L, 1L, 2L, 3L, 6L);
+  }
+
+  @Test
+  public void offer_concurrentProducers_everyEventDrainedOrDropped() throws Exception {
+    int producers = 4;
+    int eventsPerProducer = 20_000;
+    AuditEventRing ring = new AuditEventRing(256);
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> accepted = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      long producer = p;
+      accepted.add(executor.submit(() -> {
+        start.await();
+        int count = 0;
+        for (int i = 0; i < eventsPerProducer; i++) {
+          if (ring.offer(AuthenticationAuditLog.EventType.SESSION_STARTED, i, null, producer << 32 | i, null, null))
+            count++;
+        }
+        return count;
+      }));
+    }
+
+    Set<Long> sessionIds = new HashSet<>();
+    start.countDown();
+    while (!accepted.stream().allMatch(Future::isDone)) {
+      ring.drain(event -> sessionIds.add(event.getSessionId()), 64);
+    }
+    ring.drain(event -> sessionIds.add(event.getSessionId()), Integer.MAX_VALUE);
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    int total = 0;
+    for (Future<Integer> count : accepted) {
+      total += count.get();
+    }
+    assertThat(sessionIds).hasSize(total);
+    assertThat(total + ring.dropped()).isEqualTo(producers * eventsPerProducer);
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthenticationAuditLogTest {
+
+  private static final Clock CLOCK = Clock.fixed(Instant.parse("2020-07-01T10:15:30.123Z"), ZoneOffset.UTC);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void destroy_writesEveryEventAsJsonLine() throws Exception {
+    Path file = directory.resolve("audit/audit.log");
+    AuthenticationAuditLog auditLog = new AuthenticationAuditLog(file, 64, 1024 * 1024, 2, meterRegistry, CLOCK);
+
+    auditLog.loginSucceeded("bob", "127.0.0.1");
+    auditLog.sessionStarted("bob", 0xcafeL, "127.0.0.1");
+    auditLog.loginFailed("al\"ice", "BadCredentialsException", "10.0.0.1");
+    auditLog.cookieRejected(CookiePrecheck.Rejection.ILLEGAL_CHARACTER, null, null, "10.0.0.2");
+    auditLog.cookieRejected(AuthenticationAuditLog.REVOKED, "bob", 0xcafeL, "10.0.0.3");
+    auditLog.logout("bob", "127.0.0.1");
+    auditLog.destroy();
+
+    assertThat(Files.readAllLines(file)).containsExactly(
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"login_succeeded\",\"user\":\"bob\",\"remote\":\"127.0.0.1\"}",
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"session_started\",\"user\":\"bob\",\"session\":\"000000000000cafe\",\"remote\":\"127.0.0.1\"}",
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"login_failed\",\"user\":\"al\\\"ice\",\"reason\":\"BadCredentialsException\",\"remote\":\"10.0.0.1\"}",
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"cookie_rejected\",\"reason\":\"illegal_character\",\"remote\":\"10.0.0.2\"}",
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"cookie_rejected\",\"user\":\"bob\",\"session\":\"000000000000cafe\",\"reason\":\"revoked\",\"remote\":\"10.0.0.3\"}",
+      "{\"time\":\"2020-07-01T10:15:30.123Z\",\"event\":\"logout\",\"user\":\"bob\",\"remote\":\"127.0.0.1\"}");
+    assertThat(meterRegistry.get("auth.audit.written").functionCounter().count()).isEqualTo(6);
+    assertThat(meterRegistry.get("auth.audit.dropped").functionCounter().count()).isZero();
+  }
+
+  @Test
+  public void write_fileFull_rolledOverKeepingMaxFiles() throws Exception {
+    Path file = directory.resolve("audit.log");
+    Files.writeString(file, "{\"event\":\"earlier\"}\n");
+    AuthenticationAuditLog auditLog = new AuthenticationAuditLog(file, 64, 200, 2, meterRegistry, CLOCK);
+
+    for (int i = 0; i < 12; i++) {
+      auditLog.logout("user" + i, "127.0.0.1");
+    }
+    auditLog.destroy();
+
+    assertThat(auditLog.written()).isEqualTo(12);
+    try (var files = Files.list(directory)) {
+      assertThat(files.map(path -> path.getFileName().toString())).containsExactlyInAnyOrder("audit.log", "audit.log.1", "audit.log.2");
+    }
+    assertThat(Files.size(file)).isLessThanOrEqualTo(200);
+    List<String> newest = Files.readAllLines(file);
+    assertThat(newest.get(newest.size() - 1)).contains("\"user\":\"user11\"");
+    assertThat(Files.readString(directory.resolve("audit.log.2"))).doesNotContain("earlier");
+  }
+
+  @Test
+  public void record_writerBehind_droppedAndCounted() throws Exception {
+    Path file = directory.resolve("audit.log");
+    AuthenticationAuditLog auditLog = new AuthenticationAuditLog(file, 8, 1024 * 1024, 2, meterRegistry, CLOCK);
+
+    for (int i = 0; i < 10_000; i++) {
+      auditLog.loginSucceeded("bob", "127.0.0.1");
+    }
+    auditLog.destroy();
+
+    assertThat(auditLog.written() + auditLog.dropped()).isEqualTo(10_000);
+    assertThat(Files.readAllLines(file)).hasSize((int) auditLog.written());
+    assertThat(meterRegistry.get("auth.audit.dropped").functionCounter().count()).isEqualTo(auditLog.dropped());
+  }
+
+  @Test
+  public void record_writerIdle_wakesWriterAtOnce() throws Exception {
+    Path file = directory.resolve("audit.log");
+    AuthenticationAuditLog auditLog = new AuthenticationAuditLog(file, 64, 1024 * 1024, 2, meterRegistry, CLOCK);
+    try {
+      for (int i = 0; i < 3; i++) {
+        // the writer ran out of events and parked, for up to a second unless unparked
+        Thread.sleep(50);
+        auditLog.logout("user" + i, "127.0.0.1");
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (Files.readAllLines(file).size() <= i && System.nanoTime() < deadline) {
+          Thread.sleep(1);
+        }
+        assertThat(Files.readAllLines(file)).hasSize(i + 1);
+      }
+    } finally {
+      auditLog.destroy();
+    }
+  }
+
+  @Test
+  public void disabled_recordsNothing() {
+    AuthenticationAuditLog auditLog = AuthenticationAuditLog.disabled();
+
+    auditLog.loginSucceeded("bob", "127.0.0.1");
+    auditLog.destroy();
+
+    assertThat(auditLog.written()).isZero();
+    assertThat(auditLog.dropped()).isZero();
+  }
+
+}
@@ -0,0 +1,89 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieCipherTest {
+
+  private static final String SECRET_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final byte[] HEADER = {6, 0, 42};
+  private static final byte[] PLAINTEXT = "ab1234|USER|TESTER|YELLOW".getBytes(StandardCharsets.UTF_8);
+
+  private final CookieCipher cookieCipher = new CookieCipher(CookieKeyDerivation.encryptionKey(SECRET_KEY));
+
+  @Test
+  public void encrypt_decryptsWithSameSecret() {
+    byte[] data = cookieCipher.encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length);
+
+    assertThat(data).hasSize(HEADER.length + CookieCipher.NONCE_LENGTH + PLAINTEXT.length + CookieCipher.TAG_LENGTH);
+    assertThat(Arrays.copyOf(data, HEADER.length)).isEqualTo(HEADER);
+    assertThat(new String(data, StandardCharsets.ISO_8859_1)).doesNotContain("ab1234");
+    assertThat(new CookieCipher(CookieKeyDerivation.encryptionKey(SECRET_KEY)).decrypt(data, HEADER.length)).isEqualTo(PLAINTEXT);
+  }
+
+  @Test
+  public void encrypt_repeatedly_usesNewNonce() {
+    byte[] first = cookieCipher.encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length);
+    byte[] second = cookieCipher.encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length);
+
+    assertThat(second).isNotEqualTo(first);
+    assertThat(cookieCipher.decrypt(second, HEADER.length)).isEqualTo(PLAINTEXT);
+  }
+
+  @Test
+  public void decrypt_tamperedOrOtherKey_returnsNull() {
+    byte[] data = cookieCipher.encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length);
+
+    for (int i = 0; i < data.length; i++) {
+      byte[] tampered = data.clone();
+      tampered[i] ^= 1;
+      assertThat(cookieCipher.decrypt(tampered, HEADER.length)).as("byte %d flipped", i).isNull();
+    }
+    assertThat(new CookieCipher(CookieKeyDerivation.encryptionKey("other" + SECRET_KEY)).decrypt(data, HEADER.length)).isNull();
+    assertThat(cookieCipher.decrypt(Arrays.copyOf(data, HEADER.length + CookieCipher.NONCE_LENGTH), HEADER.length)).isNull();
+  }
+
+  @Test
+  public void decrypt_encryptedWithSigningKey_returnsNull() throws Exception {
+    byte[] macKey = CookieKeyDerivation.macKey(SECRET_KEY);
+    // what signing the label with the secret gives, the AES key before keys were derived
+    Mac mac = Mac.getInstance(MacAlgorithm.HMAC_SHA_256.getJcaName());
+    mac.init(new SecretKeySpec(SECRET_KEY.getBytes(StandardCharsets.UTF_8), mac.getAlgorithm()));
+    byte[] signedLabel = mac.doFinal("UserInfo cookie AES-256-GCM key".getBytes(StandardCharsets.UTF_8));
+
+    for (byte[] signingKey : List.of(Arrays.copyOf(macKey, 32), Arrays.copyOfRange(macKey, 32, 64), signedLabel)) {
+      byte[] data = new CookieCipher(signingKey).encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length);
+      assertThat(cookieCipher.decrypt(data, HEADER.length)).isNull();
+    }
+  }
+
+  @Test
+  public void encrypt_concurrently_decryptsEveryValue() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<byte[]>> tasks = IntStream.range(0, 1000)
+        .mapToObj(i -> (Callable<byte[]>) () -> cookieCipher.decrypt(cookieCipher.encrypt(HEADER, HEADER.length, PLAINTEXT, PLAINTEXT.length), HEADER.length))
+        .collect(Collectors.toList());
+
+      for (Future<byte[]> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isEqualTo(PLAINTEXT);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
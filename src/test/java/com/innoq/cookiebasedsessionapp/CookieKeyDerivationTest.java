@@ -0,0 +1,40 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieKeyDerivationTest {
+
+  private static final String SECRET_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+
+  /**
+   * RFC 5869, test case 3: no salt, no info.
+   */
+  @Test
+  public void hkdf_matchesRfc5869() {
+    byte[] secret = new byte[22];
+    Arrays.fill(secret, (byte) 0x0b);
+
+    assertThat(new BigInteger(1, CookieKeyDerivation.hkdf(secret, new byte[0], 42)).toString(16))
+      .isEqualTo("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d9d201395faa4b61a96c8");
+  }
+
+  @Test
+  public void keys_differByPurposeAndFromSecret() {
+    byte[] macKey = CookieKeyDerivation.macKey(SECRET_KEY);
+    byte[] encryptionKey = CookieKeyDerivation.encryptionKey(SECRET_KEY);
+
+    assertThat(macKey).hasSize(CookieKeyDerivation.MAC_KEY_LENGTH);
+    assertThat(encryptionKey).hasSize(CookieKeyDerivation.ENCRYPTION_KEY_LENGTH);
+    assertThat(Arrays.copyOf(macKey, encryptionKey.length)).isNotEqualTo(encryptionKey);
+    assertThat(macKey).isNotEqualTo(Arrays.copyOf(SECRET_KEY.getBytes(StandardCharsets.UTF_8), macKey.length));
+    assertThat(CookieKeyDerivation.macKey(SECRET_KEY)).isEqualTo(macKey);
+    assertThat(CookieKeyDerivation.macKey("other" + SECRET_KEY)).isNotEqualTo(macKey);
+  }
+
+}
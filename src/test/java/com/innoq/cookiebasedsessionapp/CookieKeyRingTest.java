@@ -0,0 +1,90 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CookieKeyRingTest {
+
+  private static final String DEFAULT_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final String KEY_7 = "another-secret-for-key-7";
+  private static final String KEY_7_COOKIE_VALUE = "AwcBENCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9XPWH45pOQ26K9wanxF5yvhg";
+  private static final CookiePayload PAYLOAD = new CookiePayload("ab1234", List.of("USER"), null, 1593608400L);
+
+  @TempDir
+  Path tempDir;
+
+  private Path keyRingFile;
+  private CookieKeyRing keyRing;
+
+  @BeforeEach
+  public void createKeyRing() throws IOException {
+    keyRingFile = tempDir.resolve("key-ring.properties");
+    Files.writeString(keyRingFile, "current=7\n7=" + KEY_7 + "\n");
+    keyRing = new CookieKeyRing(DEFAULT_KEY, keyRingFile.toString(), Duration.ofHours(1));
+  }
+
+  @AfterEach
+  public void destroyKeyRing() {
+    keyRing.destroy();
+  }
+
+  @Test
+  public void current_fromFile() {
+    assertThat(keyRing.current().getId()).isEqualTo(7);
+    assertThat(keyRing.get(CookieKeyRing.DEFAULT_KEY_ID)).isNotNull();
+    assertThat(keyRing.get(3)).isNull();
+  }
+
+  @Test
+  public void decode_signedWithKeyFromFile() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(keyRing).mac(MacAlgorithm.HMAC_SHA_256, 16).build();
+
+    assertThat(codec.decode(KEY_7_COOKIE_VALUE).getUsername()).isEqualTo("ab1234");
+    assertThat(codec.decode(codec.encode(PAYLOAD)).getUsername()).isEqualTo("ab1234");
+  }
+
+  @Test
+  public void decode_afterRotation_acceptsOldAndNewKey() throws IOException {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(keyRing).build();
+    String signedWithKey7 = codec.encode(PAYLOAD);
+
+    Files.writeString(keyRingFile, "current=8\n7=" + KEY_7 + "\n8=yet-another-secret-for-key-8\n");
+    keyRing.load(keyRingFile);
+    String signedWithKey8 = codec.encode(PAYLOAD);
+
+    assertThat(keyRing.current().getId()).isEqualTo(8);
+    assertThat(signedWithKey8).isNotEqualTo(signedWithKey7);
+    assertThat(codec.decode(signedWithKey7).getUsername()).isEqualTo("ab1234");
+    assertThat(codec.decode(signedWithKey8).getUsername()).isEqualTo("ab1234");
+  }
+
+  @Test
+  public void decode_signedWithRemovedKey_fails() throws IOException {
+    Files.writeString(keyRingFile, "current=8\n8=yet-another-secret-for-key-8\n");
+    keyRing.load(keyRingFile);
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(keyRing).mac(MacAlgorithm.HMAC_SHA_256, 16).build();
+
+    assertThatThrownBy(() -> codec.decode(KEY_7_COOKIE_VALUE))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void load_currentKeyMissing_keepsPreviousKeys() throws IOException {
+    Files.writeString(keyRingFile, "current=9\n8=yet-another-secret-for-key-8\n");
+
+    assertThatThrownBy(() -> keyRing.load(keyRingFile)).isInstanceOf(IllegalArgumentException.class);
+    assertThat(keyRing.current().getId()).isEqualTo(7);
+  }
+
+}
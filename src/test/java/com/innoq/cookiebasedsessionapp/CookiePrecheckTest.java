@@ -0,0 +1,67 @@
+package com.innoq.cookiebasedsessionapp;
+
+import com.innoq.cookiebasedsessionapp.CookiePrecheck.Rejection;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CookiePrecheckTest {
+
+  private static final String COMPACT_COOKIE_VALUE = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9X3HES-2YL8ANngLxEo3-TeZ767sc3rzApCDtwQfHNvU96oZYm3O_tS_xgGGYfWhVpsZQTYNXT94MgcqZloSOHdw";
+  private static final String COOKIE_VALUE = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
+  private static final String COOKIE_VALUE_WITH_EXPIRY = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&exp=1593608400&hmac=HvamS0kr0tI4/HjO89yoOyJhNhg6arEj0ftuHv85iJ6QJEOblQeA1/CzdLiD8ISjOaZcSrOPJSU38DgHPyLeKQ==";
+
+  private static final Instant NOW = Instant.parse("2020-07-01T12:00:00Z");
+  private static final Instant EXPIRY = Instant.parse("2020-07-01T13:00:00Z");
+
+  private final CookiePrecheck precheck = new CookiePrecheck(256);
+
+  @Test
+  public void check_validValues_pass() {
+    assertThat(precheck.check(COMPACT_COOKIE_VALUE, NOW)).isNull();
+    assertThat(precheck.check(COOKIE_VALUE, NOW)).isNull();
+    assertThat(precheck.check(COOKIE_VALUE_WITH_EXPIRY, NOW)).isNull();
+  }
+
+  @Test
+  public void check_oversized() {
+    assertThat(precheck.check(COMPACT_COOKIE_VALUE + "A".repeat(256), NOW)).isEqualTo(Rejection.OVERSIZED);
+  }
+
+  @Test
+  public void maxLength_beyondChunksOrHeaderSize_rejected() {
+    assertThatThrownBy(() -> new CookiePrecheck(UserInfoCookieChunks.MAX_LENGTH + 1)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new CookiePrecheck(16384, DataSize.ofKilobytes(16))).isInstanceOf(IllegalArgumentException.class)
+      .hasMessageContaining("server.max-http-header-size");
+    assertThat(new CookiePrecheck(16384, DataSize.ofKilobytes(24)).isOversized(16384)).isFalse();
+  }
+
+  @Test
+  public void check_illegalCharacter() {
+    assertThat(precheck.check(COMPACT_COOKIE_VALUE.replace('_', '/'), NOW)).isEqualTo(Rejection.ILLEGAL_CHARACTER);
+    assertThat(precheck.check(COOKIE_VALUE.replace("YELLOW", "YELLOW;"), NOW)).isEqualTo(Rejection.ILLEGAL_CHARACTER);
+    assertThat(precheck.check("uid=ab1234&roles=Ä&hmac=x", NOW)).isEqualTo(Rejection.ILLEGAL_CHARACTER);
+  }
+
+  @Test
+  public void check_malformed() {
+    assertThat(precheck.check("", NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check(COMPACT_COOKIE_VALUE.substring(0, 40), NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check("AQ" + COMPACT_COOKIE_VALUE.substring(2), NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check("BwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9XKBitFD34TVdp0Ua9zBBeVKcA9mo5LZo6s28HiGPOY19VgBeJp8", NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check("uid=ab1234&roles=USER|TESTER&colour=YELLOW", NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check("roles=USER&hmac=abc", NOW)).isEqualTo(Rejection.MALFORMED);
+    assertThat(precheck.check("uid=ab1234&roles=USER&exp=&hmac=abc", NOW)).isEqualTo(Rejection.MALFORMED);
+  }
+
+  @Test
+  public void check_expired() {
+    assertThat(precheck.check(COMPACT_COOKIE_VALUE, EXPIRY)).isEqualTo(Rejection.EXPIRED);
+    assertThat(precheck.check(COOKIE_VALUE_WITH_EXPIRY, EXPIRY)).isEqualTo(Rejection.EXPIRED);
+  }
+
+}
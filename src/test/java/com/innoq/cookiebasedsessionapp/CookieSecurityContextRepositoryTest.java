@@ -1,24 +1,43 @@
 package com.innoq.cookiebasedsessionapp;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
 import org.springframework.security.web.context.HttpRequestResponseHolder;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
@@ -26,6 +45,8 @@ import static org.mockito.Mockito.*;
 public class CookieSecurityContextRepositoryTest {
 
   private static final String COOKIE_VALUE = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
+  private static final String COOKIE_VALUE_WITH_EXPIRY = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&exp=1593608400&hmac=HvamS0kr0tI4/HjO89yoOyJhNhg6arEj0ftuHv85iJ6QJEOblQeA1/CzdLiD8ISjOaZcSrOPJSU38DgHPyLeKQ==";
+  private static final String COMPACT_COOKIE_VALUE = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9X3HES-2YL8ANngLxEo3-TeZ767sc3rzApCDtwQfHNvU96oZYm3O_tS_xgGGYfWhVpsZQTYNXT94MgcqZloSOHdw";
   private static final String COOKIE_VALUE_WITHOUT_HMAC = "uid=ab1234&roles=USER|TESTER&colour=YELLOW";
   private static final String COOKIE_VALUE_WITH_INVALID_HMAC = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=invalid";
 
@@ -35,6 +56,8 @@ public class CookieSecurityContextRepositoryTest {
   private static final String COLOUR = "YELLOW";
 
   private static final String COOKIE_HMAC_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final Instant NOW = Instant.parse("2020-07-01T12:00:00Z");
+  private static final Duration REFRESH_WINDOW = Duration.ofMinutes(45);
 
 
   @Mock
@@ -56,7 +79,8 @@ public class CookieSecurityContextRepositoryTest {
 
   private HttpRequestResponseHolder requestResponseHolder;
 
-  private final CookieSecurityContextRepository securityContextRepository = new CookieSecurityContextRepository(COOKIE_HMAC_KEY);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final CookieSecurityContextRepository securityContextRepository = repositoryAt(NOW);
 
   @BeforeEach
   public void setupRequestResponseHolder() {
@@ -84,6 +108,7 @@ public class CookieSecurityContextRepositoryTest {
 
     assertThat(securityContext).isNotNull();
     assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(verifications("missing")).isEqualTo(1);
   }
 
   @Test
@@ -93,32 +118,78 @@ public class CookieSecurityContextRepositoryTest {
 
     assertThat(securityContext).isNotNull();
     assertThat(securityContext.getAuthentication()).isNotNull();
-    assertThat(securityContext.getAuthentication()).isInstanceOf(UsernamePasswordAuthenticationToken.class);
+    assertThat(securityContext.getAuthentication()).isInstanceOf(UserInfoAuthentication.class);
 
-    UsernamePasswordAuthenticationToken usernamePasswordToken = (UsernamePasswordAuthenticationToken) securityContext.getAuthentication();
-    assertThat(usernamePasswordToken.isAuthenticated()).isTrue();
-    assertThat(usernamePasswordToken.getPrincipal()).isInstanceOf(UserInfo.class);
+    Authentication authentication = securityContext.getAuthentication();
+    assertThat(authentication.isAuthenticated()).isTrue();
+    assertThat(authentication.getPrincipal()).isInstanceOf(UserInfo.class);
 
-    UserInfo userInfo = (UserInfo) usernamePasswordToken.getPrincipal();
+    UserInfo userInfo = (UserInfo) authentication.getPrincipal();
     assertThat(userInfo.getUsername()).isEqualTo(USERNAME);
+
+    assertThat(verifications("valid")).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.cookie.context").tag("operation", "load").timer().count()).isEqualTo(1);
   }
 
   @Test
-  public void loadContext_cookieWithoutHmac() {
+  public void loadContext_verifiesCookieWithinLoad() {
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+
+    securityContextRepository.loadContext(requestResponseHolder);
+
+    assertThat(verifications("valid")).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.cookie.context").tag("operation", "verify").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void loadContextAndContainsContext_verifyCookieOnce() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(SignedUserInfoCookie.NAME, COOKIE_VALUE));
+
+    SecurityContext securityContext = securityContextRepository.loadContext(new HttpRequestResponseHolder(request, response));
+
+    assertThat(securityContext.getAuthentication()).isNotNull();
+    assertThat(securityContextRepository.containsContext(request)).isTrue();
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void loadContext_cookieWithoutHmac_isRejectedBeforeVerification() {
     when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_HMAC);
     when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
 
-    assertThatThrownBy(() -> securityContextRepository.loadContext(requestResponseHolder))
-      .isInstanceOf(CookieVerificationFailedException.class);
+    SecurityContext securityContext = securityContextRepository.loadContext(requestResponseHolder);
+
+    assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(meterRegistry.get("auth.cookie.precheck.rejections").tag("reason", "malformed").counter().count()).isEqualTo(1);
   }
 
   @Test
-  public void loadContext_cookieWithInvalidHmac() {
-    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_INVALID_HMAC);
+  public void loadContext_expiredCompactCookie_isRejectedBeforeVerification() {
+    CookieSecurityContextRepository securityContextRepository = repositoryAt(NOW.plus(Duration.ofHours(2)));
+    when(userInfoCookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE);
     when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
 
-    assertThatThrownBy(() -> securityContextRepository.loadContext(requestResponseHolder))
-      .isInstanceOf(CookieVerificationFailedException.class);
+    SecurityContext securityContext = securityContextRepository.loadContext(requestResponseHolder);
+
+    assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(meterRegistry.get("auth.cookie.precheck.rejections").tag("reason", "expired").counter().count()).isEqualTo(1);
+    assertThat(verifications("expired")).isZero();
+  }
+
+  @Test
+  public void loadContext_cookieWithInvalidHmac_emptyContext() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(SignedUserInfoCookie.NAME, COOKIE_VALUE_WITH_INVALID_HMAC));
+    HttpRequestResponseHolder requestResponseHolder = new HttpRequestResponseHolder(request, response);
+
+    SecurityContext securityContext = securityContextRepository.loadContext(requestResponseHolder);
+
+    assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(securityContextRepository.containsContext(request)).isFalse();
+    securityContextRepository.saveContext(securityContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+    verify(response, never()).addCookie(any());
+    assertThat(verifications("invalid_signature")).isEqualTo(1);
   }
 
   @Test
@@ -142,7 +213,262 @@ public class CookieSecurityContextRepositoryTest {
     verify(response).addCookie(cookieCaptor.capture());
     Cookie cookie = cookieCaptor.getValue();
     assertThat(cookie.getName()).isEqualTo(SignedUserInfoCookie.NAME);
-    assertThat(cookie.getValue()).isEqualTo(COOKIE_VALUE);
+    assertIssuedFor(cookie, userInfo);
+
+    assertThat(meterRegistry.get("auth.cookie.writes").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.cookie.issued.size").summary().totalAmount()).isEqualTo(cookie.getValue().length());
+  }
+
+  @Test
+  public void saveContext_unchangedPrincipal_skipsCookie() {
+    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+    securityContextRepository.loadContext(requestResponseHolder);
+
+    securityContextRepository.saveContext(securityContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+
+    verify(response, never()).addCookie(any());
+  }
+
+  @Test
+  public void saveContext_loadedContextUnchanged_skipsCookie() {
+    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+    SecurityContext loadedContext = securityContextRepository.loadContext(requestResponseHolder);
+
+    securityContextRepository.saveContext(loadedContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+
+    verify(response, never()).addCookie(any());
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void saveContext_unchangedPrincipalWithinRefreshWindow_refreshesCookie() {
+    CookieSecurityContextRepository securityContextRepository = repositoryAt(NOW.plus(Duration.ofMinutes(20)));
+    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+    securityContextRepository.loadContext(requestResponseHolder);
+
+    securityContextRepository.saveContext(securityContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+
+    verify(response).addCookie(cookieCaptor.capture());
+    assertThat(cookieCaptor.getValue().getValue()).isNotEqualTo(COOKIE_VALUE_WITH_EXPIRY);
+  }
+
+  @Test
+  public void saveContext_unchangedPrincipalFromCookieWithoutExpiry_refreshesCookie() {
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+    securityContextRepository.loadContext(requestResponseHolder);
+
+    securityContextRepository.saveContext(securityContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+
+    verify(response).addCookie(cookieCaptor.capture());
+    assertIssuedFor(cookieCaptor.getValue(), userInfo);
+  }
+
+  @Test
+  public void saveContext_changedPrincipal_writesCookie() {
+    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+    when(userInfo.getColour()).thenReturn(Optional.of("GREEN"));
+    securityContextRepository.loadContext(requestResponseHolder);
+
+    securityContextRepository.saveContext(securityContext, requestResponseHolder.getRequest(), requestResponseHolder.getResponse());
+
+    verify(response).addCookie(any());
+  }
+
+  @Test
+  public void saveContext_principalTooLargeForOneCookie_writesChunksAndDeletesUnchunkedCookie() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(SignedUserInfoCookie.NAME, COMPACT_COOKIE_VALUE), new Cookie(UserInfoCookieChunks.chunkName(7), "stale"));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+    securityContextRepository.loadContext(holder);
+
+    UserInfo largeUserInfo = new UserInfo(USERNAME, manyRoles());
+    securityContextRepository.saveContext(contextOf(largeUserInfo), request, holder.getResponse());
+
+    assertThat(response.getCookies()).filteredOn(cookie -> cookie.getMaxAge() > 0).extracting(Cookie::getName)
+      .startsWith(UserInfoCookieChunks.chunkName(0), UserInfoCookieChunks.chunkName(1))
+      .doesNotContain(SignedUserInfoCookie.NAME, UserInfoCookieChunks.chunkName(7));
+    assertThat(response.getCookies()).filteredOn(cookie -> cookie.getMaxAge() == 0).extracting(Cookie::getName)
+      .containsExactly(SignedUserInfoCookie.NAME, UserInfoCookieChunks.chunkName(7));
+    assertThat(response.getCookies()).allSatisfy(cookie -> assertThat(cookie.isHttpOnly()).isTrue());
+    assertThat(meterRegistry.get("auth.cookie.writes").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void loadContext_chunkedCookie_joinsChunksInAnyOrder() {
+    MockHttpServletResponse written = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(new MockHttpServletRequest(), written);
+    securityContextRepository.loadContext(holder);
+    securityContextRepository.saveContext(contextOf(new UserInfo(USERNAME, manyRoles(), COLOUR)), holder.getRequest(), holder.getResponse());
+    List<Cookie> chunks = Arrays.asList(written.getCookies());
+    Collections.reverse(chunks);
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(chunks.toArray(new Cookie[0]));
+    SecurityContext securityContext = securityContextRepository.loadContext(new HttpRequestResponseHolder(request, response));
+
+    UserInfo userInfo = (UserInfo) securityContext.getAuthentication().getPrincipal();
+    assertThat(userInfo.getUsername()).isEqualTo(USERNAME);
+    assertThat(userInfo.getAuthorities()).hasSize(manyRoles().size());
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void saveAndLoadContext_cookieOfMaxLength_passesPrecheck() {
+    UserInfo largeUserInfo = new UserInfo(USERNAME, manyRoles(), COLOUR);
+    int maxLength = issueChunks(repositoryAt(NOW), largeUserInfo).stream().mapToInt(cookie -> cookie.getValue().length()).sum();
+    CookieSecurityContextRepository repository = repositoryAt(NOW, new CookiePrecheck(maxLength));
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(issueChunks(repository, largeUserInfo).toArray(new Cookie[0]));
+    SecurityContext securityContext = repository.loadContext(new HttpRequestResponseHolder(request, response));
+
+    assertThat(((UserInfo) securityContext.getAuthentication().getPrincipal()).getUsername()).isEqualTo(USERNAME);
+    assertThat(verifications("valid")).isEqualTo(1);
+  }
+
+  @Test
+  public void saveContext_cookieBeyondMaxLength_skipsCookie() {
+    UserInfo largeUserInfo = new UserInfo(USERNAME, manyRoles(), COLOUR);
+    int length = issueChunks(repositoryAt(NOW), largeUserInfo).stream().mapToInt(cookie -> cookie.getValue().length()).sum();
+
+    assertThat(issueChunks(repositoryAt(NOW, new CookiePrecheck(length - 1)), largeUserInfo)).isEmpty();
+  }
+
+  @Test
+  public void loadContext_chunkedCookieMissingAChunk_isRejected() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(UserInfoCookieChunks.chunkName(0), COMPACT_COOKIE_VALUE.substring(0, 40)),
+      new Cookie(UserInfoCookieChunks.chunkName(2), COMPACT_COOKIE_VALUE.substring(80)));
+
+    SecurityContext securityContext = securityContextRepository.loadContext(new HttpRequestResponseHolder(request, response));
+
+    assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(verifications("valid")).isZero();
+  }
+
+  @Test
+  public void loadContext_expiredCookie() {
+    CookieSecurityContextRepository securityContextRepository = repositoryAt(NOW.plus(Duration.ofHours(1)));
+    when(userInfoCookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+    when(request.getCookies()).thenReturn(new Cookie[]{userInfoCookie});
+
+    SecurityContext securityContext = securityContextRepository.loadContext(requestResponseHolder);
+
+    assertThat(securityContext.getAuthentication()).isNull();
+  }
+
+  @Test
+  public void loadContext_cookieOfRevokedSession_isRejected(@TempDir Path tempDir) throws IOException {
+    Cookie cookie = issueCookie(repositoryAt(NOW, RevocationList.disabled()), new UserInfo(USERNAME, Set.of(ROLE1), COLOUR));
+    long sessionId = new SignedUserInfoCookie(cookie, UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build()).getSessionId();
+    Path revocationFile = tempDir.resolve("revoked");
+    Files.writeString(revocationFile, RevocationList.format(sessionId) + "\n");
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(cookie);
+
+    SecurityContext securityContext = repositoryAt(NOW, RevocationList.of(revocationFile))
+      .loadContext(new HttpRequestResponseHolder(request, response));
+
+    assertThat(securityContext.getAuthentication()).isNull();
+    assertThat(verifications("revoked")).isEqualTo(1);
+    assertThat(verifications("valid")).isZero();
+  }
+
+  @Test
+  public void saveContext_refreshedCookie_keepsSessionId() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build();
+    UserInfo alice = new UserInfo(USERNAME, Set.of(ROLE1), COLOUR);
+    Cookie issued = issueCookie(repositoryAt(NOW, RevocationList.disabled()), alice);
+
+    Cookie refreshed = issueCookie(repositoryAt(NOW.plus(Duration.ofMinutes(30)), RevocationList.disabled()), alice, issued);
+    Cookie otherUsers = issueCookie(repositoryAt(NOW.plus(Duration.ofMinutes(30)), RevocationList.disabled()),
+      new UserInfo("cd5678", Set.of(ROLE1), COLOUR), issued);
+
+    Long sessionId = new SignedUserInfoCookie(issued, codec).getSessionId();
+    assertThat(sessionId).isNotNull();
+    assertThat(refreshed.getValue()).isNotEqualTo(issued.getValue());
+    assertThat(new SignedUserInfoCookie(refreshed, codec).getSessionId()).isEqualTo(sessionId);
+    assertThat(new SignedUserInfoCookie(otherUsers, codec).getSessionId()).isNotEqualTo(sessionId);
+  }
+
+  private CookieSecurityContextRepository repositoryAt(Instant now) {
+    return repositoryAt(now, RevocationList.disabled());
+  }
+
+  private CookieSecurityContextRepository repositoryAt(Instant now, RevocationList revocationList) {
+    return repositoryAt(now, UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build(), revocationList);
+  }
+
+  /**
+   * Written values carry a random session id, so they are decoded rather than compared.
+   */
+  private void assertIssuedFor(Cookie cookie, UserInfo expected) {
+    SignedUserInfoCookie issued = new SignedUserInfoCookie(cookie, UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build());
+    assertThat(issued.getUsername()).isEqualTo(expected.getUsername());
+    assertThat(issued.getUserInfo().getAuthorities()).containsExactlyInAnyOrderElementsOf(expected.getAuthorities());
+    assertThat(issued.getUserInfo().getColour()).isEqualTo(expected.getColour());
+    assertThat(issued.getSessionId()).isNotNull();
+  }
+
+  private CookieSecurityContextRepository repositoryAt(Instant now, CookiePrecheck precheck) {
+    return repositoryAt(now, UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build(), precheck, RevocationList.disabled());
+  }
+
+  private CookieSecurityContextRepository repositoryAt(Instant now, UserInfoCookieCodec codec, RevocationList revocationList) {
+    return repositoryAt(now, codec, new CookiePrecheck(16384), revocationList);
+  }
+
+  private CookieSecurityContextRepository repositoryAt(Instant now, UserInfoCookieCodec codec, CookiePrecheck precheck, RevocationList revocationList) {
+    Clock clock = Clock.fixed(now, ZoneOffset.UTC);
+    CookieMetrics metrics = new CookieMetrics(meterRegistry);
+    UserInfoCookieVerifier verifier = new UserInfoCookieVerifier(codec, VerifiedCookieCache.disabled(), precheck, revocationList, REFRESH_WINDOW,
+      metrics, AuthenticationAuditLog.disabled(), clock);
+    return new CookieSecurityContextRepository(codec, verifier, new PrincipalCache(100), precheck, metrics, AuthenticationAuditLog.disabled(), clock);
+  }
+
+  /**
+   * @return the single cookie written when saving a context for the given user
+   */
+  private static Cookie issueCookie(CookieSecurityContextRepository repository, UserInfo userInfo, Cookie... requestCookies) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (requestCookies.length > 0)
+      request.setCookies(requestCookies);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+    repository.loadContext(holder);
+    repository.saveContext(contextOf(userInfo), request, holder.getResponse());
+    return response.getCookie(SignedUserInfoCookie.NAME);
+  }
+
+  /**
+   * @return the cookies, chunks or not, written when saving a context for the given user
+   */
+  private static List<Cookie> issueChunks(CookieSecurityContextRepository repository, UserInfo userInfo) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+    repository.loadContext(holder);
+    repository.saveContext(contextOf(userInfo), request, holder.getResponse());
+    return Arrays.asList(response.getCookies());
+  }
+
+  private static Set<GrantedAuthority> manyRoles() {
+    return IntStream.range(0, 300)
+      .<GrantedAuthority>mapToObj(i -> new SimpleGrantedAuthority(String.format("ROLE_%03d_OF_A_LARGE_ORGANISATION", i)))
+      .collect(toSet());
+  }
+
+  private static SecurityContext contextOf(UserInfo userInfo) {
+    return new SecurityContextImpl(new UsernamePasswordAuthenticationToken(userInfo, "", userInfo.getAuthorities()));
+  }
+
+  private double verifications(String result) {
+    return meterRegistry.get("auth.cookie.verifications").tag("result", result).counter().count();
   }
 
 }
@@ -0,0 +1,52 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieSignerTest {
+
+  private static final String SECRET_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final String VALUE = "uid=ab1234&roles=USER|TESTER&colour=YELLOW";
+  private static final String HMAC = "0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
+
+  private final CookieSigner cookieSigner = new CookieSigner(SECRET_KEY, MacAlgorithm.HMAC_SHA_512);
+
+  @Test
+  public void sign() {
+    assertThat(cookieSigner.sign(VALUE)).isEqualTo(HMAC);
+  }
+
+  @Test
+  public void sign_repeatedly_returnsSameHmac() {
+    cookieSigner.sign("uid=other&roles=");
+
+    assertThat(cookieSigner.sign(VALUE)).isEqualTo(HMAC);
+    assertThat(cookieSigner.sign(VALUE)).isEqualTo(HMAC);
+  }
+
+  @Test
+  public void sign_concurrently_returnsSameHmac() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<String>> tasks = IntStream.range(0, 1000)
+        .mapToObj(i -> (Callable<String>) () -> cookieSigner.sign(VALUE))
+        .collect(Collectors.toList());
+
+      for (Future<String> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isEqualTo(HMAC);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,36 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeleteUserInfoCookiesLogoutHandlerTest {
+
+  private final DeleteUserInfoCookiesLogoutHandler handler = new DeleteUserInfoCookiesLogoutHandler(AuthenticationAuditLog.disabled());
+  private final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/logout");
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @Test
+  public void logout_noCookies_deletesUnchunkedCookie() {
+    handler.logout(request, response, null);
+
+    assertThat(response.getCookies()).extracting(Cookie::getName).containsExactly(SignedUserInfoCookie.NAME);
+    assertThat(response.getCookie(SignedUserInfoCookie.NAME).getMaxAge()).isZero();
+    assertThat(response.getCookie(SignedUserInfoCookie.NAME).getPath()).isEqualTo("/");
+  }
+
+  @Test
+  public void logout_chunkedCookie_deletesEveryChunk() {
+    request.setCookies(new Cookie("UserInfo.0", "a"), new Cookie("UserInfo.1", "b"), new Cookie("Other", "c"));
+
+    handler.logout(request, response, null);
+
+    assertThat(response.getCookies()).extracting(Cookie::getName).containsExactly("UserInfo", "UserInfo.0", "UserInfo.1");
+    assertThat(response.getCookies()).allSatisfy(cookie -> assertThat(cookie.getMaxAge()).isZero());
+  }
+
+}
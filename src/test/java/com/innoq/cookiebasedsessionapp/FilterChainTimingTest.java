@@ -0,0 +1,192 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.DefaultSecurityFilterChain;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.util.matcher.AnyRequestMatcher;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+public class FilterChainTimingTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final FilterChainTiming filterChainTiming = new FilterChainTiming(true, nanoTime::get);
+
+  @Test
+  public void doFilter_recordsTimeSpentInEachFilterAndTheApplication() throws Exception {
+    FilterChainProxy filterChainProxy = instrument(new ContextFilter(), new AuthorizationFilter(), new AuthorizationFilter());
+
+    for (int i = 0; i < 3; i++) {
+      filterChainProxy.doFilter(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse(), new MockFilterChain(new Application()));
+    }
+
+    Map<String, Histogram> snapshot = filterChainTiming.snapshot();
+    assertThat(snapshot).containsOnlyKeys("ContextFilter", "AuthorizationFilter", "AuthorizationFilter#2", FilterChainTiming.APPLICATION);
+    assertThat(snapshot.keySet()).last().isEqualTo(FilterChainTiming.APPLICATION);
+    assertThat(snapshot.get("ContextFilter").getTotalCount()).isEqualTo(3);
+    assertThat(snapshot.get("ContextFilter").getMaxValue()).isCloseTo(3_000L, withinPercentage(1));
+    assertThat(snapshot.get("AuthorizationFilter").getMaxValue()).isCloseTo(20_000L, withinPercentage(1));
+    assertThat(snapshot.get("AuthorizationFilter#2").getMaxValue()).isCloseTo(20_000L, withinPercentage(1));
+    assertThat(snapshot.get(FilterChainTiming.APPLICATION).getMaxValue()).isCloseTo(500_000L, withinPercentage(1));
+  }
+
+  @Test
+  public void doFilter_chainEndsEarlyOrFails_recordsFiltersPassed() throws Exception {
+    FilterChainProxy filterChainProxy = instrument(new ContextFilter(), new AuthorizationFilter());
+
+    filterChainProxy.doFilter(new MockHttpServletRequest("GET", "/denied"), new MockHttpServletResponse(), new MockFilterChain(new Application()));
+    assertThatThrownBy(() -> filterChainProxy.doFilter(new MockHttpServletRequest("GET", "/failing"), new MockHttpServletResponse(),
+      new MockFilterChain(new Application()))).isInstanceOf(ServletException.class);
+
+    Map<String, Histogram> snapshot = filterChainTiming.snapshot();
+    assertThat(snapshot.get("ContextFilter").getTotalCount()).isEqualTo(2);
+    assertThat(snapshot.get("AuthorizationFilter").getTotalCount()).isEqualTo(2);
+    assertThat(snapshot.get(FilterChainTiming.APPLICATION).getTotalCount()).isEqualTo(1);
+    assertThat(snapshot.get(FilterChainTiming.APPLICATION).getMaxValue()).isCloseTo(500_000L, withinPercentage(1));
+  }
+
+  @Test
+  public void timings_inMicrosecondsWithShares_untilReset() throws Exception {
+    FilterChainProxy filterChainProxy = instrument(new ContextFilter(), new AuthorizationFilter());
+    filterChainProxy.doFilter(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse(), new MockFilterChain(new Application()));
+    FilterChainTimingEndpoint endpoint = new FilterChainTimingEndpoint(filterChainTiming);
+
+    Map<String, Object> timings = endpoint.timings();
+    assertThat(timings).containsEntry("enabled", true).containsEntry("unit", "microseconds");
+    @SuppressWarnings("unchecked")
+    Map<String, Map<String, Object>> stages = (Map<String, Map<String, Object>>) timings.get("stages");
+    assertThat(stages.get("AuthorizationFilter")).containsEntry("count", 1L);
+    assertThat((double) stages.get("AuthorizationFilter").get("p99")).isCloseTo(20.0, withinPercentage(1));
+    assertThat((double) stages.get("AuthorizationFilter").get("share")).isCloseTo(3.8, within(0.1));
+    assertThat((double) stages.get(FilterChainTiming.APPLICATION).get("max")).isCloseTo(500.0, withinPercentage(1));
+    assertThat((double) stages.get(FilterChainTiming.APPLICATION).get("share")).isCloseTo(95.6, within(0.1));
+
+    endpoint.reset();
+    assertThat(filterChainTiming.snapshot().get("AuthorizationFilter").getTotalCount()).isZero();
+  }
+
+  @Test
+  public void postProcessAfterInitialization_disabled_leavesChainAlone() {
+    Filter filter = new ContextFilter();
+    FilterChainProxy filterChainProxy = new FilterChainProxy(new DefaultSecurityFilterChain(AnyRequestMatcher.INSTANCE, filter));
+
+    assertThat(new FilterChainTiming(false).postProcessAfterInitialization(filterChainProxy, "springSecurityFilterChain")).isSameAs(filterChainProxy);
+    assertThat(filterChainProxy.getFilterChains().get(0).getFilters()).containsExactly(filter);
+  }
+
+  @Test
+  public void postProcessAfterInitialization_enabled_leavesOriginalChainAlone() {
+    Filter filter = new ContextFilter();
+    DefaultSecurityFilterChain chain = new DefaultSecurityFilterChain(AnyRequestMatcher.INSTANCE, filter);
+
+    FilterChainProxy timed = (FilterChainProxy) filterChainTiming.postProcessAfterInitialization(new FilterChainProxy(chain), "springSecurityFilterChain");
+
+    assertThat(chain.getFilters()).containsExactly(filter);
+    assertThat(timed.getFilterChains()).hasSize(1);
+    assertThat(((DefaultSecurityFilterChain) timed.getFilterChains().get(0)).getRequestMatcher()).isSameAs(AnyRequestMatcher.INSTANCE);
+    assertThat(timed.getFilterChains().get(0).getFilters()).hasSize(1).doesNotContain(filter);
+  }
+
+  @Test
+  public void doFilter_repeatedly_reusesChainOfThread() throws Exception {
+    List<FilterChain> chains = new ArrayList<>();
+    FilterChainProxy filterChainProxy = instrument((request, response, chain) -> {
+      chains.add(chain);
+      chain.doFilter(request, response);
+    });
+
+    for (int i = 0; i < 2; i++) {
+      filterChainProxy.doFilter(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse(), new MockFilterChain(new Application()));
+    }
+
+    assertThat(chains).hasSize(2);
+    assertThat(chains.get(1)).isSameAs(chains.get(0));
+    assertThat(filterChainTiming.snapshot().get(FilterChainTiming.APPLICATION).getTotalCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void doFilter_forwardRunsChainAgain_recordsBoth() throws Exception {
+    FilterChainProxy[] filterChainProxy = new FilterChainProxy[1];
+    filterChainProxy[0] = instrument(new ContextFilter(), (request, response, chain) -> {
+      if (((HttpServletRequest) request).getRequestURI().equals("/forward"))
+        filterChainProxy[0].doFilter(new MockHttpServletRequest("GET", "/"), response, new MockFilterChain(new Application()));
+      else
+        chain.doFilter(request, response);
+    });
+
+    filterChainProxy[0].doFilter(new MockHttpServletRequest("GET", "/forward"), new MockHttpServletResponse(), new MockFilterChain(new Application()));
+
+    Map<String, Histogram> snapshot = filterChainTiming.snapshot();
+    assertThat(snapshot.get("ContextFilter").getTotalCount()).isEqualTo(2);
+    assertThat(snapshot.get(FilterChainTiming.APPLICATION).getTotalCount()).isEqualTo(1);
+    // neither ContextFilter counted the other's time as its own
+    assertThat(snapshot.get("ContextFilter").getMinValue()).isCloseTo(3_000L, withinPercentage(1));
+    assertThat(snapshot.get("ContextFilter").getMaxValue()).isCloseTo(3_000L, withinPercentage(1));
+  }
+
+  private FilterChainProxy instrument(Filter... filters) {
+    FilterChainProxy filterChainProxy = new FilterChainProxy(new DefaultSecurityFilterChain(AnyRequestMatcher.INSTANCE, filters));
+    return (FilterChainProxy) filterChainTiming.postProcessAfterInitialization(filterChainProxy, "springSecurityFilterChain");
+  }
+
+  /**
+   * Takes 1 µs before and 2 µs after the rest of the chain.
+   */
+  private class ContextFilter implements Filter {
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+      nanoTime.addAndGet(1_000);
+      try {
+        chain.doFilter(request, response);
+      } finally {
+        nanoTime.addAndGet(2_000);
+      }
+    }
+  }
+
+  /**
+   * Takes 20 µs, ends the chain for {@code /denied}.
+   */
+  private class AuthorizationFilter implements Filter {
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+      nanoTime.addAndGet(20_000);
+      if (!((HttpServletRequest) request).getRequestURI().equals("/denied"))
+        chain.doFilter(request, response);
+    }
+  }
+
+  /**
+   * Takes 500 µs, fails for {@code /failing}.
+   */
+  private class Application extends HttpServlet {
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+      nanoTime.addAndGet(500_000);
+      if (request.getRequestURI().equals("/failing"))
+        throw new ServletException("failing");
+    }
+  }
+
+}
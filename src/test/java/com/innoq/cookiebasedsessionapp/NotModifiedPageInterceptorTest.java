@@ -0,0 +1,113 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotModifiedPageInterceptorTest {
+
+  private static final Set<GrantedAuthority> AUTHORITIES = Set.of(new SimpleGrantedAuthority("USER"), new SimpleGrantedAuthority("TESTER"));
+
+  private final NotModifiedPageInterceptor interceptor =
+    new NotModifiedPageInterceptor(new DefaultResourceLoader(), "classpath:/templates/", ".html", true);
+  private final ParameterizableViewController index = viewController("index");
+
+  @AfterEach
+  public void clearSecurityContext() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void preHandle_firstRequest_rendersPrivatePageWithETag() {
+    authenticate(new UserInfo("bob", AUTHORITIES, "GREEN"));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assertThat(interceptor.preHandle(get(null), response, index)).isTrue();
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getHeader("ETag")).startsWith("W/\"");
+    assertThat(response.getHeader("Cache-Control")).contains("private").contains("no-cache");
+    assertThat(response.getHeader("Vary")).isEqualTo("Cookie");
+  }
+
+  @Test
+  public void preHandle_sameUserAndTemplate_notModified() {
+    authenticate(new UserInfo("bob", AUTHORITIES, "GREEN"));
+    String etag = etagOf(index);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    authenticate(new UserInfo("bob", Set.of(new SimpleGrantedAuthority("TESTER"), new SimpleGrantedAuthority("USER")), "GREEN"));
+    assertThat(interceptor.preHandle(get(etag), response, index)).isFalse();
+    assertThat(response.getStatus()).isEqualTo(304);
+    assertThat(response.getHeader("ETag")).isEqualTo(etag);
+    assertThat(response.getHeader("Vary")).isEqualTo("Cookie");
+  }
+
+  @Test
+  public void preHandle_otherUserColourRolesOrTemplate_rendersPage() {
+    authenticate(new UserInfo("bob", AUTHORITIES, "GREEN"));
+    String etag = etagOf(index);
+
+    assertThat(etagOf(viewController("other"))).isNotEqualTo(etag);
+    for (UserInfo other : new UserInfo[]{
+      new UserInfo("alice", AUTHORITIES, "GREEN"),
+      new UserInfo("bob", AUTHORITIES, "RED"),
+      new UserInfo("bob", AUTHORITIES),
+      new UserInfo("bob", Set.of(new SimpleGrantedAuthority("USER")), "GREEN")}) {
+      authenticate(other);
+      MockHttpServletResponse response = new MockHttpServletResponse();
+
+      assertThat(interceptor.preHandle(get(etag), response, index)).as(other.getUsername()).isTrue();
+      assertThat(response.getStatus()).isEqualTo(200);
+      assertThat(response.getHeader("ETag")).isNotEqualTo(etag);
+    }
+  }
+
+  @Test
+  public void preHandle_notAuthenticatedOrNotAPage_untouched() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    assertThat(interceptor.preHandle(get(null), response, index)).isTrue();
+
+    authenticate(new UserInfo("bob", AUTHORITIES, "GREEN"));
+    MockHttpServletRequest post = new MockHttpServletRequest("POST", "/");
+    assertThat(interceptor.preHandle(post, response, index)).isTrue();
+    assertThat(interceptor.preHandle(get(null), response, new Object())).isTrue();
+
+    assertThat(response.getHeader("ETag")).isNull();
+    assertThat(response.getHeader("Cache-Control")).isNull();
+  }
+
+  private String etagOf(ParameterizableViewController page) {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    interceptor.preHandle(get(null), response, page);
+    return response.getHeader("ETag");
+  }
+
+  private static MockHttpServletRequest get(String ifNoneMatch) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    if (ifNoneMatch != null)
+      request.addHeader("If-None-Match", ifNoneMatch);
+    return request;
+  }
+
+  private static ParameterizableViewController viewController(String viewName) {
+    ParameterizableViewController controller = new ParameterizableViewController();
+    controller.setViewName(viewName);
+    return controller;
+  }
+
+  private static void authenticate(UserInfo userInfo) {
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(userInfo, "", userInfo.getAuthorities()));
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PasswordHashingExecutorTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 1, Duration.ofMillis(1500), meterRegistry);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @AfterEach
+  public void shutdown() {
+    release.countDown();
+    executor.destroy();
+  }
+
+  @Test
+  public void check_runsOnPool() {
+    String caller = Thread.currentThread().getName();
+
+    assertThat(executor.check(() -> !Thread.currentThread().getName().equals(caller))).isTrue();
+    assertThat(meterRegistry.get("auth.login.hashing.wait").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void check_poolAndQueueFull_rejectedRightAway() throws Exception {
+    CountDownLatch running = new CountDownLatch(1);
+    CompletableFuture.runAsync(() -> executor.check(() -> {
+      running.countDown();
+      return await(release);
+    }));
+    running.await(5, TimeUnit.SECONDS);
+    CompletableFuture.runAsync(() -> executor.check(() -> true));
+    waitForQueueDepth(1);
+
+    assertThatThrownBy(() -> executor.check(() -> true))
+      .isInstanceOfSatisfying(LoginCapacityExceededException.class, e -> assertThat(e.getRetryAfterSeconds()).isEqualTo("2"));
+    assertThat(meterRegistry.get("auth.login.hashing.rejections").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.login.hashing.active").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  public void check_disabled_runsOnCallingThread() {
+    Thread caller = Thread.currentThread();
+
+    assertThat(PasswordHashingExecutor.disabled().check(() -> Thread.currentThread() == caller)).isTrue();
+  }
+
+  private void waitForQueueDepth(int depth) throws InterruptedException {
+    for (int i = 0; i < 500 && meterRegistry.get("auth.login.hashing.queue.depth").gauge().value() < depth; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.CredentialsContainer;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PrincipalCacheTest {
+
+  private static final CookiePayload PAYLOAD = new CookiePayload("ab1234", List.of("USER", "TESTER"), "YELLOW", 1593608400L);
+
+  private final PrincipalCache cache = new PrincipalCache(100);
+
+  @Test
+  public void authenticationFor_samePrincipalWithOtherExpiry_returnsSameInstance() {
+    Authentication first = cache.authenticationFor(PAYLOAD);
+    Authentication second = cache.authenticationFor(new CookiePayload("ab1234", List.of("USER", "TESTER"), "YELLOW", 1593612000L));
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void authenticationFor_otherColour_returnsOtherPrincipal() {
+    Authentication first = cache.authenticationFor(PAYLOAD);
+    Authentication second = cache.authenticationFor(new CookiePayload("ab1234", List.of("USER", "TESTER"), "GREEN", 1593608400L));
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(((UserInfo) second.getPrincipal()).getColour()).hasValue("GREEN");
+  }
+
+  @Test
+  public void authenticationFor_otherUserWithSameRoles_sharesAuthorities() {
+    UserInfo first = (UserInfo) cache.authenticationFor(PAYLOAD).getPrincipal();
+    UserInfo second = (UserInfo) cache.authenticationFor(new CookiePayload("cd5678", List.of("USER", "TESTER"), null, 1593608400L)).getPrincipal();
+
+    assertThat(second.getUsername()).isEqualTo("cd5678");
+    assertThat(second.getAuthorities()).isSameAs(first.getAuthorities());
+  }
+
+  @Test
+  public void authenticationFor_principalChangedOnCopyOnly() {
+    UserInfo userInfo = (UserInfo) cache.authenticationFor(PAYLOAD).getPrincipal();
+
+    UserInfo coloured = userInfo.withColour("GREEN");
+
+    assertThat(coloured).isNotSameAs(userInfo);
+    assertThat(coloured.getColour()).hasValue("GREEN");
+    assertThat(userInfo.getColour()).hasValue("YELLOW");
+    assertThat(cache.authenticationFor(PAYLOAD).getPrincipal()).isSameAs(userInfo);
+    assertThatThrownBy(() -> userInfo.getAuthorities().clear()).isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  public void authenticationFor_changeInOneRequest_notSeenByAnother() {
+    Authentication first = cache.authenticationFor(PAYLOAD);
+
+    assertThatThrownBy(() -> first.setAuthenticated(false)).isInstanceOf(UnsupportedOperationException.class);
+    assertThat(first).isNotInstanceOf(CredentialsContainer.class);
+
+    Authentication second = cache.authenticationFor(PAYLOAD);
+    assertThat(second).isSameAs(first);
+    assertThat(second.isAuthenticated()).isTrue();
+    assertThat(second.getDetails()).isNull();
+    assertThat(second.getAuthorities()).isSameAs(((UserInfo) second.getPrincipal()).getAuthorities());
+  }
+
+  @Test
+  public void authenticationFor_disabled_returnsNewInstances() {
+    PrincipalCache disabled = PrincipalCache.disabled();
+
+    Authentication first = disabled.authenticationFor(PAYLOAD);
+    Authentication second = disabled.authenticationFor(PAYLOAD);
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getName()).isEqualTo(first.getName());
+  }
+
+}
@@ -1,49 +1,83 @@
 package com.innoq.cookiebasedsessionapp;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
-@ExtendWith(MockitoExtension.class)
 public class RedirectToOriginalUrlAuthenticationSuccessHandlerTest {
 
-  @Mock
-  private HttpServletRequest request;
-  @Mock
-  private HttpServletResponse response;
-  @Mock
-  private Authentication authentication;
-  @Mock
-  private UserInfo userInfo;
+  private static final String COOKIE_HMAC_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
 
-  @InjectMocks
-  private RedirectToOriginalUrlAuthenticationSuccessHandler handler;
+  private final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+  private final UserInfo userInfo = new UserInfo("bob", Set.of(new SimpleGrantedAuthority("USER")));
+  private final Authentication authentication = new UsernamePasswordAuthenticationToken(userInfo, "", userInfo.getAuthorities());
+
+  private final RedirectToOriginalUrlAuthenticationSuccessHandler handler = new RedirectToOriginalUrlAuthenticationSuccessHandler(
+    UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build(), new CookiePrecheck(4096),
+    new RetryLaterAuthenticationFailureHandler(AuthenticationAuditLog.disabled()), AuthenticationAuditLog.disabled());
+
+  @AfterEach
+  public void clearSecurityContext() {
+    SecurityContextHolder.clearContext();
+  }
 
   @Test
   public void onAuthenticationSuccess_addsColourToUserInfo() throws IOException, ServletException {
-    when(authentication.getPrincipal()).thenReturn(userInfo);
-    when(request.getParameter("colour")).thenReturn("YELLOW");
+    request.setParameter("colour", "YELLOW");
 
     handler.onAuthenticationSuccess(request, response, authentication);
 
-    verify(userInfo).setColour("YELLOW");
+    assertThat(userInfo.getColour()).contains("YELLOW");
+    assertThat(response.getRedirectedUrl()).isEqualTo("/");
+  }
+
+  @Test
+  public void onAuthenticationSuccess_sharedPrincipal_colouredCopyReplacesIt() throws IOException, ServletException {
+    UserInfo sharedUserInfo = UserInfo.shared("bob", Set.of(new SimpleGrantedAuthority("USER")), "BLUE");
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(sharedUserInfo, "", sharedUserInfo.getAuthorities()));
+    request.setParameter("colour", "YELLOW");
+
+    handler.onAuthenticationSuccess(request, response, SecurityContextHolder.getContext().getAuthentication());
+
+    UserInfo principal = (UserInfo) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+    assertThat(principal).isNotSameAs(sharedUserInfo);
+    assertThat(principal.getColour()).contains("YELLOW");
+    assertThat(sharedUserInfo.getColour()).contains("BLUE");
+    assertThat(response.getRedirectedUrl()).isEqualTo("/");
+  }
+
+  @Test
+  public void onAuthenticationSuccess_cookieWouldExceedMaxLength_failsLogin() throws IOException, ServletException {
+    Set<GrantedAuthority> manyRoles = IntStream.range(0, 300)
+      .mapToObj(i -> new SimpleGrantedAuthority(String.format("ROLE_%03d_OF_A_LARGE_ORGANISATION", i)))
+      .collect(Collectors.toSet());
+    UserInfo largeUserInfo = new UserInfo("bob", manyRoles);
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(largeUserInfo, "", manyRoles));
+
+    handler.onAuthenticationSuccess(request, response, SecurityContextHolder.getContext().getAuthentication());
+
+    assertThat(response.getRedirectedUrl()).isEqualTo("/login?error");
+    assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
   }
 
   @Test
   public void determineTargetUrl_returnsTargetUrlFromRequest() {
-    when(request.getParameter(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM)).thenReturn("/target");
+    request.setParameter(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM, "/target");
 
     var targetUrl = handler.determineTargetUrl(request, response, authentication);
 
@@ -52,7 +86,7 @@ public class RedirectToOriginalUrlAuthenticationSuccessHandlerTest {
 
   @Test
   public void determineTargetUrl_suppressAbsolutUrls() {
-    when(request.getParameter(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM)).thenReturn("http://www.google.de");
+    request.setParameter(WebSecurityConfig.TARGET_AFTER_SUCCESSFUL_LOGIN_PARAM, "http://www.google.de");
 
     var targetUrl = handler.determineTargetUrl(request, response, authentication);
 
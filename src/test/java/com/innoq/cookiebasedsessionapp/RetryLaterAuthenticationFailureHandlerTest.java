@@ -0,0 +1,33 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryLaterAuthenticationFailureHandlerTest {
+
+  private final RetryLaterAuthenticationFailureHandler handler = new RetryLaterAuthenticationFailureHandler(AuthenticationAuditLog.disabled());
+  private final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @Test
+  public void onAuthenticationFailure_capacityExceeded_serviceUnavailable() throws Exception {
+    handler.onAuthenticationFailure(request, response, new LoginCapacityExceededException("busy", Duration.ofSeconds(3)));
+
+    assertThat(response.getStatus()).isEqualTo(503);
+    assertThat(response.getHeader("Retry-After")).isEqualTo("3");
+  }
+
+  @Test
+  public void onAuthenticationFailure_badCredentials_backToLoginForm() throws Exception {
+    handler.onAuthenticationFailure(request, response, new BadCredentialsException("Bad credentials"));
+
+    assertThat(response.getRedirectedUrl()).isEqualTo("/login?error");
+  }
+
+}
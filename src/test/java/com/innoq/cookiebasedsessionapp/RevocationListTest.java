@@ -0,0 +1,92 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RevocationListTest {
+
+  private static final long REVOKED = 0x8f3a2b1c4d5e6f70L;
+  private static final long OTHER_REVOKED = 0x0000000000000001L;
+
+  @TempDir
+  Path tempDir;
+
+  private Path revocationFile;
+  private RevocationList revocationList;
+
+  @BeforeEach
+  public void createRevocationList() throws IOException {
+    revocationFile = tempDir.resolve("revoked");
+    Files.writeString(revocationFile, "# revoked sessions\n8f3a2b1c4d5e6f70\n\n1\n8F3A2B1C4D5E6F70\n");
+    revocationList = new RevocationList(revocationFile.toString(), "", Duration.ofHours(1));
+  }
+
+  @AfterEach
+  public void destroyRevocationList() {
+    revocationList.destroy();
+  }
+
+  @Test
+  public void isRevoked_fromFile() {
+    assertThat(revocationList.size()).isEqualTo(2);
+    assertThat(revocationList.isRevoked(REVOKED)).isTrue();
+    assertThat(revocationList.isRevoked(OTHER_REVOKED)).isTrue();
+    assertThat(revocationList.isRevoked(REVOKED + 1)).isFalse();
+    assertThat(tempDir.resolve("revoked.filter")).exists();
+  }
+
+  @Test
+  public void isRevoked_manySessions_onlyListedOnesAreRevoked() throws IOException {
+    long[] revoked = new SplittableRandom(42).longs(10_000).toArray();
+    Files.writeString(revocationFile, LongStream.of(revoked).mapToObj(RevocationList::format).collect(Collectors.joining("\n")));
+    revocationList.load(revocationFile);
+
+    assertThat(revocationList.size()).isEqualTo(revoked.length);
+    assertThat(LongStream.of(revoked).allMatch(revocationList::isRevoked)).isTrue();
+    assertThat(new SplittableRandom(43).longs(100_000).noneMatch(revocationList::isRevoked)).isTrue();
+  }
+
+  @Test
+  public void load_changedFile_replacesAllSessions() throws IOException {
+    Files.writeString(revocationFile, "ffffffffffffffff\n");
+    revocationList.load(revocationFile);
+
+    assertThat(revocationList.isRevoked(REVOKED)).isFalse();
+    assertThat(revocationList.isRevoked(-1L)).isTrue();
+
+    Files.writeString(revocationFile, "# nothing revoked\n");
+    revocationList.load(revocationFile);
+
+    assertThat(revocationList.size()).isZero();
+    assertThat(revocationList.isRevoked(-1L)).isFalse();
+  }
+
+  @Test
+  public void load_malformedFile_keepsPreviousSessions() throws IOException {
+    Files.writeString(revocationFile, "ffffffffffffffff\nnot-a-session-id\n");
+
+    assertThatThrownBy(() -> revocationList.load(revocationFile)).hasMessageContaining("Line 2");
+    assertThat(revocationList.isRevoked(REVOKED)).isTrue();
+    assertThat(revocationList.isRevoked(-1L)).isFalse();
+  }
+
+  @Test
+  public void disabled_revokesNothing() {
+    assertThat(RevocationList.disabled().isRevoked(REVOKED)).isFalse();
+    assertThat(RevocationList.parse(RevocationList.format(REVOKED))).isEqualTo(REVOKED);
+  }
+
+}
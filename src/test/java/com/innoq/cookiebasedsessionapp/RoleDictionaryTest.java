@@ -0,0 +1,77 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.joining;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RoleDictionaryTest {
+
+  private static final SimpleGrantedAuthority USER = new SimpleGrantedAuthority("USER");
+  private static final SimpleGrantedAuthority TESTER = new SimpleGrantedAuthority("TESTER");
+  private static final SimpleGrantedAuthority OTHER = new SimpleGrantedAuthority("OTHER");
+
+  private final RoleDictionary dictionary = new RoleDictionary(" USER, TESTER ,ADMIN,");
+
+  @Test
+  public void create_fromProperty() {
+    assertThat(dictionary.size()).isEqualTo(3);
+    assertThat(dictionary.indexOf("TESTER")).isEqualTo(1);
+    assertThat(dictionary.indexOf("OTHER")).isEqualTo(-1);
+    assertThat(new RoleDictionary("").isEmpty()).isTrue();
+  }
+
+  @Test
+  public void create_invalid() {
+    assertThatThrownBy(() -> RoleDictionary.of("USER", "USER")).isInstanceOf(IllegalArgumentException.class);
+    String tooManyRoles = IntStream.rangeClosed(0, RoleDictionary.MAX_ROLES).mapToObj(i -> "ROLE" + i).collect(joining(","));
+    assertThatThrownBy(() -> new RoleDictionary(tooManyRoles)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void authoritiesOf_equalToSetOfSameAuthorities() {
+    RoleSet authorities = dictionary.authoritiesOf(List.of("USER", "OTHER", "TESTER", "OTHER"));
+
+    assertThat(authorities).hasSize(3).containsExactly(USER, TESTER, OTHER);
+    assertThat(authorities).isEqualTo(Set.of(USER, TESTER, OTHER));
+    assertThat(Set.of(USER, TESTER, OTHER)).isEqualTo(authorities);
+    assertThat(authorities.hashCode()).isEqualTo(Set.of(USER, TESTER, OTHER).hashCode());
+  }
+
+  @Test
+  public void authoritiesOf_roleChecksAreBitTests() {
+    RoleSet authorities = dictionary.authoritiesOf(List.of("USER", "TESTER"));
+
+    assertThat(authorities.getMask()).isEqualTo(0b011);
+    assertThat(authorities.containsAll(dictionary.maskOf("USER", "TESTER"))).isTrue();
+    assertThat(authorities.containsAll(dictionary.maskOf("USER", "ADMIN"))).isFalse();
+    assertThat(authorities.hasAuthority("ADMIN")).isFalse();
+    assertThat(authorities.contains(TESTER)).isTrue();
+    assertThat(authorities.containsAll(dictionary.authoritiesOf(List.of("USER")))).isTrue();
+    assertThat(authorities.containsAll(dictionary.authoritiesOf(List.of("USER", "OTHER")))).isFalse();
+  }
+
+  @Test
+  public void authoritiesOf_isImmutable() {
+    RoleSet authorities = dictionary.authoritiesOf(List.of("USER"));
+
+    assertThatThrownBy(() -> authorities.add(TESTER)).isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> authorities.remove(USER)).isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> authorities.clear()).isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  public void authoritiesOf_emptyDictionary_keepsRolesByName() {
+    Set<GrantedAuthority> authorities = RoleDictionary.empty().authoritiesOf(List.of("USER", "TESTER"));
+
+    assertThat(authorities).containsExactly(USER, TESTER);
+  }
+
+}
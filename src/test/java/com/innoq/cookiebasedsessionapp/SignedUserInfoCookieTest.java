@@ -8,6 +8,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import javax.servlet.http.Cookie;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,7 +29,16 @@ public class SignedUserInfoCookieTest {
   public static final String COOKIE_VALUE_WITHOUT_COLOUR = "uid=ab1234&roles=USER|TESTER&hmac=wRYQmJZQ3JLnOiuYLV6ETG0kmz0H+7leJvvl1m14Pb5LP/FupJHdrIhzKc1gApenSNSCSvE20y9+oxwRfvYy8g==";
   private static final String COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR = "uid=ab1234&roles=&hmac=Tpe2mlTIn0ZzHWnXVtrmDrcEdoLHzOwoeTRyMCpmJkDsawRjfyWgMR6Xc0Qwv79XNoN3o3/QWPcDQwZiK6KY9w==";
   private static final String COOKIE_VALUE_WITHOUT_HMAC = "uid=ab1234&roles=USER|TESTER&colour=YELLOW";
+  private static final String COOKIE_VALUE_WITH_EXPIRY = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&exp=1593608400&hmac=HvamS0kr0tI4/HjO89yoOyJhNhg6arEj0ftuHv85iJ6QJEOblQeA1/CzdLiD8ISjOaZcSrOPJSU38DgHPyLeKQ==";
+  private static final String COMPACT_COOKIE_VALUE = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9X3HES-2YL8ANngLxEo3-TeZ767sc3rzApCDtwQfHNvU96oZYm3O_tS_xgGGYfWhVpsZQTYNXT94MgcqZloSOHdw";
+  private static final String COMPACT_COOKIE_VALUE_WITHOUT_ROLES = "AwADQNCR8vcFBmFiMTIzNAAGWUVMTE9XGPQ_IBBNy3gIUnrvT-EJ00Krr4bRQ749B3xnArMfbndfjc2RF9Vy3IVYlRDQC0dnQ5JavUyjx4YNP0qM7-S_iQ";
+  private static final String COMPACT_COOKIE_VALUE_WITHOUT_COLOUR = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIA510Av3c1g_uPZL-zopeSDdWCtATOQddG6VCdyTQL3J76JQ0SOeIJu1JN9KefZUTF67dSp2SYK7aJGTcuv1r0Aw";
+  private static final String COMPACT_COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR = "AwADQNCR8vcFBmFiMTIzNAAApYMoyC5mwgvF80K_IndVRmqhA81EELC004HnLWiItl7feaBBcmDUAzGANK_dgj1yP6g9SdoWPGC1j54BE_7BEQ";
+  private static final String COMPACT_COOKIE_VALUE_WITH_INVALID_HMAC = "AwADQNCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9X3HES-2YL8ANngLxEo3-TeZ767sc3rzApCDtwQfHNvU96oZYm3O_tS_xgGGYfWhVpsZQTYNXT94MgcqZlAAAAAA";
+  private static final String COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED = "AwABENCR8vcFBmFiMTIzNAIEVVNFUgZURVNURVIGWUVMTE9XixB4q7pwNULeCe6aOyqotA";
   private static final String COOKIE_VALUE_WITH_INVALID_HMAC = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=invalid";
+  private static final String COOKIE_VALUE_WITHOUT_UID = "roles=USER|TESTER&colour=YELLOW&hmac=0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
+  private static final String COOKIE_VALUE_WITH_TRAILING_FIELD = COOKIE_VALUE_WITH_HMAC + "&roles=ADMIN";
 
   private static final String USERNAME = "ab1234";
   private static final SimpleGrantedAuthority ROLE1 = new SimpleGrantedAuthority("USER");
@@ -32,6 +46,15 @@ public class SignedUserInfoCookieTest {
   private static final String COLOUR = "YELLOW";
 
   private static final String SECRET_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final UserInfoCookieCodec COOKIE_CODEC = UserInfoCookieCodecBuilder.codec(SECRET_KEY).build();
+  /**
+   * Writes values without session id, which are the same on every run.
+   */
+  private static final UserInfoCookieCodec SESSIONLESS_COOKIE_CODEC = UserInfoCookieCodecBuilder.codec(SECRET_KEY).sessionIds(false).build();
+  private static final UserInfoCookieCodec ROTATED_COOKIE_CODEC = UserInfoCookieCodecBuilder.codec(SECRET_KEY).accepted("HmacSHA256:16").build();
+  private static final Instant NOW = Instant.parse("2020-07-01T12:00:00Z");
+  private static final Instant EXPIRY = Instant.parse("2020-07-01T13:00:00Z");
+  private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
   private static final String HMAC = "0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
 
   @Mock
@@ -54,27 +77,27 @@ public class SignedUserInfoCookieTest {
 
   @Test
   public void create_fromUserInfo() {
-    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SECRET_KEY);
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SESSIONLESS_COOKIE_CODEC, CLOCK);
 
-    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COOKIE_VALUE_WITH_HMAC);
+    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COMPACT_COOKIE_VALUE);
   }
 
   @Test
   public void create_fromUserInfo_withoutRoles() {
     when(userInfo.getAuthorities()).thenReturn(List.of());
 
-    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SECRET_KEY);
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SESSIONLESS_COOKIE_CODEC, CLOCK);
 
-    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COOKIE_VALUE_WITHOUT_ROLES);
+    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COMPACT_COOKIE_VALUE_WITHOUT_ROLES);
   }
 
   @Test
   public void create_fromUserInfo_withoutColour() {
     when(userInfo.getColour()).thenReturn(Optional.empty());
 
-    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SECRET_KEY);
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SESSIONLESS_COOKIE_CODEC, CLOCK);
 
-    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COOKIE_VALUE_WITHOUT_COLOUR);
+    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COMPACT_COOKIE_VALUE_WITHOUT_COLOUR);
   }
 
   @Test
@@ -82,14 +105,14 @@ public class SignedUserInfoCookieTest {
     when(userInfo.getAuthorities()).thenReturn(List.of());
     when(userInfo.getColour()).thenReturn(Optional.empty());
 
-    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SECRET_KEY);
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, SESSIONLESS_COOKIE_CODEC, CLOCK);
 
-    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR);
+    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COMPACT_COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR);
   }
 
   @Test
   public void create_fromCookie() {
-    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, SECRET_KEY);
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
 
     assertThat(signedUserInfoCookie.getUsername()).isEqualTo(USERNAME);
     assertThat(signedUserInfoCookie.getRoles()).containsExactlyInAnyOrder(ROLE1.getAuthority(), ROLE2.getAuthority());
@@ -99,7 +122,7 @@ public class SignedUserInfoCookieTest {
 
   @Test
   public void getUserInfo_fromCookie() {
-    UserInfo userInfo = new SignedUserInfoCookie(cookie, SECRET_KEY).getUserInfo();
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, COOKIE_CODEC).getUserInfo();
 
     assertThat(userInfo.getUsername()).isEqualTo(USERNAME);
     assertThat(userInfo.getAuthorities()).describedAs("roles").containsExactlyInAnyOrder(ROLE1, ROLE2);
@@ -110,7 +133,7 @@ public class SignedUserInfoCookieTest {
   public void getUserInfo_fromCookie_withoutRoles() {
     when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_ROLES);
 
-    UserInfo userInfo = new SignedUserInfoCookie(cookie, SECRET_KEY).getUserInfo();
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, COOKIE_CODEC).getUserInfo();
 
     assertThat(userInfo.getAuthorities()).isEmpty();
   }
@@ -119,7 +142,7 @@ public class SignedUserInfoCookieTest {
   public void getUserInfo_fromCookie_withoutColour() {
     when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_COLOUR);
 
-    UserInfo userInfo = new SignedUserInfoCookie(cookie, SECRET_KEY).getUserInfo();
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, COOKIE_CODEC).getUserInfo();
 
     assertThat(userInfo.getColour()).isEmpty();
   }
@@ -128,7 +151,7 @@ public class SignedUserInfoCookieTest {
   public void getUserInfo_fromCookie_withoutRolesAndColour() {
     when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR);
 
-    UserInfo userInfo = new SignedUserInfoCookie(cookie, SECRET_KEY).getUserInfo();
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, COOKIE_CODEC).getUserInfo();
 
     assertThat(userInfo.getAuthorities()).isEmpty();
     assertThat(userInfo.getColour()).isEmpty();
@@ -138,7 +161,7 @@ public class SignedUserInfoCookieTest {
   public void getUserInfo_fromCookie_missingSignature() {
     when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_HMAC);
 
-    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, SECRET_KEY))
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
       .isInstanceOf(CookieVerificationFailedException.class);
   }
 
@@ -146,8 +169,273 @@ public class SignedUserInfoCookieTest {
   public void getUserInfo_fromCookie_invalidSignature() {
     when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITH_INVALID_HMAC);
 
-    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, SECRET_KEY))
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
       .isInstanceOf(CookieVerificationFailedException.class);
   }
 
+  @Test
+  public void getUserInfo_fromCookie_missingUid() {
+    when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITHOUT_UID);
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void getUserInfo_fromCookie_trailingField() {
+    when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITH_TRAILING_FIELD);
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void getExpiry_fromCookieWithExpiry() {
+    when(cookie.getValue()).thenReturn(COOKIE_VALUE_WITH_EXPIRY);
+
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
+
+    assertThat(signedUserInfoCookie.getExpiry()).hasValue(EXPIRY);
+    assertThat(signedUserInfoCookie.isExpired(NOW)).isFalse();
+    assertThat(signedUserInfoCookie.isExpired(EXPIRY)).isTrue();
+  }
+
+  @Test
+  public void getExpiry_fromCookieWithoutExpiry() {
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
+
+    assertThat(signedUserInfoCookie.getExpiry()).isEmpty();
+    assertThat(signedUserInfoCookie.isExpired(EXPIRY)).isFalse();
+  }
+
+  @Test
+  public void represents_sameUserInfo() {
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
+
+    assertThat(signedUserInfoCookie.represents(userInfo)).isTrue();
+  }
+
+  @Test
+  public void represents_otherColour() {
+    when(userInfo.getColour()).thenReturn(Optional.of("GREEN"));
+
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
+
+    assertThat(signedUserInfoCookie.represents(userInfo)).isFalse();
+  }
+
+  @Test
+  public void create_fromCompactCookie() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE);
+
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(cookie, COOKIE_CODEC);
+
+    assertThat(signedUserInfoCookie.getUsername()).isEqualTo(USERNAME);
+    assertThat(signedUserInfoCookie.getRoles()).containsExactly(ROLE1.getAuthority(), ROLE2.getAuthority());
+    assertThat(signedUserInfoCookie.getColour()).isEqualTo(COLOUR);
+    assertThat(signedUserInfoCookie.getExpiry()).hasValue(EXPIRY);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_withoutRolesAndColour() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_WITHOUT_ROLES_AND_COLOUR);
+
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, COOKIE_CODEC).getUserInfo();
+
+    assertThat(userInfo.getAuthorities()).isEmpty();
+    assertThat(userInfo.getColour()).isEmpty();
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_invalidSignature() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_WITH_INVALID_HMAC);
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_truncated() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE.substring(0, 40));
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void create_fromUserInfo_truncatedHmacSha256() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).mac(MacAlgorithm.HMAC_SHA_256, 16).sessionIds(false).build();
+
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+
+    assertThat(signedUserInfoCookie.getValue()).isEqualTo(COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_signedWithAcceptedAlgorithm() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED);
+
+    UserInfo userInfo = new SignedUserInfoCookie(cookie, ROTATED_COOKIE_CODEC).getUserInfo();
+
+    assertThat(userInfo.getUsername()).isEqualTo(USERNAME);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_downgradedToOtherAlgorithm_rejected() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED);
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class)
+      .hasFieldOrPropertyWithValue("reason", CookieVerificationFailedException.Reason.INVALID_SIGNATURE);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_tagShorterThanConfigured_rejected() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).mac(MacAlgorithm.HMAC_SHA_256, 32).build();
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED);
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, codec))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_tagTruncatedBelowMinimum() {
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED.substring(0, COMPACT_COOKIE_VALUE_HMAC_SHA_256_TRUNCATED.length() - 3));
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, ROTATED_COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class);
+  }
+
+  @Test
+  public void getUserInfo_fromCompactCookie_unsupportedVersion_rejected() {
+    when(cookie.getValue()).thenReturn("AQ" + COMPACT_COOKIE_VALUE.substring(2));
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, COOKIE_CODEC))
+      .isInstanceOf(CookieVerificationFailedException.class)
+      .hasMessageContaining("unsupported format");
+  }
+
+  @Test
+  public void createCodec_tagLengthBelowMinimum() {
+    assertThatThrownBy(() -> UserInfoCookieCodecBuilder.codec(SECRET_KEY).mac(MacAlgorithm.HMAC_SHA_256, 8).build())
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void create_fromUserInfo_withRoleDictionary_carriesRoleBits() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("TESTER", "USER")).build();
+
+    SignedUserInfoCookie signedUserInfoCookie = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+    when(cookie.getValue()).thenReturn(signedUserInfoCookie.getValue());
+    UserInfo decoded = new SignedUserInfoCookie(cookie, codec).getUserInfo();
+
+    assertThat(signedUserInfoCookie.getValue()).startsWith("BQ")
+      .hasSizeLessThan(new SignedUserInfoCookie(userInfo, COOKIE_CODEC, CLOCK).getValue().length());
+    assertThat(decoded.getAuthorities()).isInstanceOf(RoleSet.class).containsExactlyInAnyOrder(ROLE1, ROLE2);
+    assertThat(decoded.hasAuthority("USER")).isTrue();
+    assertThat(decoded.hasAuthority("ADMIN")).isFalse();
+    assertThat(decoded.getColour()).hasValue(COLOUR);
+  }
+
+  @Test
+  public void create_fromUserInfo_roleOutsideDictionary_carriedByName() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER")).build();
+
+    String value = new SignedUserInfoCookie(userInfo, codec, CLOCK).getValue();
+    when(cookie.getValue()).thenReturn(value);
+    UserInfo decoded = new SignedUserInfoCookie(cookie, codec).getUserInfo();
+
+    assertThat(decoded.getAuthorities()).containsExactlyInAnyOrder(ROLE1, ROLE2);
+    assertThat(decoded.hasAuthority("TESTER")).isTrue();
+  }
+
+  @Test
+  public void getUserInfo_fromCompactV3Cookie_withRoleDictionary() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER", "TESTER")).build();
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE);
+
+    UserInfo decoded = new SignedUserInfoCookie(cookie, codec).getUserInfo();
+
+    assertThat(decoded.getAuthorities()).containsExactlyInAnyOrder(ROLE1, ROLE2);
+    assertThat(((RoleSet) decoded.getAuthorities()).getMask()).isEqualTo(0b11);
+  }
+
+  @Test
+  public void getUserInfo_roleBitUnknownToDictionary_isIgnored() {
+    UserInfoCookieCodec newerCodec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER", "TESTER", "ADMIN")).build();
+    UserInfoCookieCodec olderCodec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER", "TESTER")).build();
+    when(userInfo.getAuthorities()).thenReturn(List.of(ROLE1, new SimpleGrantedAuthority("ADMIN")));
+
+    String value = new SignedUserInfoCookie(userInfo, newerCodec, CLOCK).getValue();
+    when(cookie.getValue()).thenReturn(value);
+    UserInfo decoded = new SignedUserInfoCookie(cookie, olderCodec).getUserInfo();
+
+    assertThat(decoded.getAuthorities()).containsExactly(ROLE1);
+  }
+
+  @Test
+  public void create_fromUserInfo_withSessionIds_carriesRandomSessionId() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER", "TESTER")).build();
+
+    SignedUserInfoCookie first = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+    SignedUserInfoCookie second = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+    when(cookie.getValue()).thenReturn(first.getValue());
+    SignedUserInfoCookie decoded = new SignedUserInfoCookie(cookie, codec);
+
+    assertThat(first.getValue()).startsWith("BQ");
+    assertThat(first.getSessionId()).isNotNull().isNotEqualTo(second.getSessionId());
+    assertThat(decoded.getSessionId()).isEqualTo(first.getSessionId());
+    assertThat(decoded.getUserInfo().getAuthorities()).containsExactlyInAnyOrder(ROLE1, ROLE2);
+    assertThat(decoded.getExpiry()).isEqualTo(first.getExpiry());
+    assertThat(new CookiePrecheck(4096).check(first.getValue(), CLOCK.instant())).isNull();
+  }
+
+  @Test
+  public void create_fromUserInfo_encrypted_hidesPayload() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).dictionary(RoleDictionary.of("USER")).encrypted(true).build();
+
+    SignedUserInfoCookie encrypted = new SignedUserInfoCookie(userInfo, codec, CLOCK);
+    when(cookie.getValue()).thenReturn(encrypted.getValue());
+    SignedUserInfoCookie decoded = new SignedUserInfoCookie(cookie, codec);
+
+    assertThat(encrypted.getValue()).startsWith("Bg");
+    assertThat(new String(Base64.getUrlDecoder().decode(encrypted.getValue()), StandardCharsets.ISO_8859_1))
+      .doesNotContain(USERNAME, "TESTER", COLOUR);
+    assertThat(decoded.getUserInfo().getUsername()).isEqualTo(USERNAME);
+    assertThat(decoded.getUserInfo().getAuthorities()).containsExactlyInAnyOrder(ROLE1, ROLE2);
+    assertThat(decoded.getUserInfo().getColour()).hasValue(COLOUR);
+    assertThat(decoded.getSessionId()).isEqualTo(encrypted.getSessionId()).isNotNull();
+    assertThat(decoded.getExpiry()).hasValue(EXPIRY);
+    assertThat(new CookiePrecheck(4096).check(encrypted.getValue(), NOW)).isNull();
+    assertThat(new CookiePrecheck(4096).check(encrypted.getValue(), EXPIRY)).isEqualTo(CookiePrecheck.Rejection.EXPIRED);
+  }
+
+  @Test
+  public void getUserInfo_encryptingCodec_stillReadsSignedValues() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).sessionIds(false).encrypted(true).build();
+    when(cookie.getValue()).thenReturn(COMPACT_COOKIE_VALUE);
+
+    UserInfo decoded = new SignedUserInfoCookie(cookie, codec).getUserInfo();
+
+    assertThat(decoded.getUsername()).isEqualTo(USERNAME);
+    assertThat(decoded.getAuthorities()).containsExactlyInAnyOrder(ROLE1, ROLE2);
+  }
+
+  @Test
+  public void getUserInfo_encryptedWithChangedExpiryOrOtherKey_isRejected() {
+    UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(SECRET_KEY).sessionIds(false).encrypted(true).build();
+    byte[] data = Base64.getUrlDecoder().decode(new SignedUserInfoCookie(userInfo, codec, CLOCK).getValue());
+    data[2]++;
+    when(cookie.getValue()).thenReturn(Base64.getUrlEncoder().withoutPadding().encodeToString(data));
+
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, codec))
+      .isInstanceOf(CookieVerificationFailedException.class)
+      .extracting("reason").isEqualTo(CookieVerificationFailedException.Reason.INVALID_SIGNATURE);
+
+    data[2]--;
+    when(cookie.getValue()).thenReturn(Base64.getUrlEncoder().withoutPadding().encodeToString(data));
+    UserInfoCookieCodec otherKey = UserInfoCookieCodecBuilder.codec("other" + SECRET_KEY).sessionIds(false).encrypted(true).build();
+    assertThatThrownBy(() -> new SignedUserInfoCookie(cookie, otherKey)).isInstanceOf(CookieVerificationFailedException.class);
+  }
+
 }
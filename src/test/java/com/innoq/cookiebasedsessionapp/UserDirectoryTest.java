@@ -0,0 +1,103 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserDirectoryTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Path usersFile;
+  private UserDirectory userDirectory;
+
+  @BeforeEach
+  public void createUserDirectory() throws IOException {
+    usersFile = tempDir.resolve("users");
+    Files.writeString(usersFile, "# test users\nalice:{noop}secret:USER,ADMIN\n\ncarol:{noop}other:USER\n");
+    userDirectory = new UserDirectory(usersFile.toString(), Duration.ofHours(1));
+  }
+
+  @AfterEach
+  public void destroyUserDirectory() {
+    userDirectory.destroy();
+  }
+
+  @Test
+  public void find_fromFile() {
+    assertThat(userDirectory.size()).isEqualTo(2);
+    assertThat(userDirectory.find("alice").getAuthorities())
+      .containsExactlyInAnyOrder(new SimpleGrantedAuthority("USER"), new SimpleGrantedAuthority("ADMIN"));
+    assertThat(userDirectory.find("bob")).isNull();
+    assertThat(userDirectory.find(null)).isNull();
+  }
+
+  @Test
+  public void load_changedFile_replacesAllUsers() throws IOException {
+    Files.writeString(usersFile, "dave:{noop}new:TESTER\n");
+    userDirectory.load(usersFile);
+
+    assertThat(userDirectory.find("alice")).isNull();
+    assertThat(userDirectory.find("dave").getAuthorities()).containsExactly(new SimpleGrantedAuthority("TESTER"));
+  }
+
+  @Test
+  public void load_malformedFile_keepsPreviousUsers() throws IOException {
+    Files.writeString(usersFile, "dave:{noop}new:TESTER\ndave:{noop}twice:USER\n");
+    assertThatThrownBy(() -> userDirectory.load(usersFile)).hasMessageContaining("Line 2");
+
+    Files.writeString(usersFile, "no-password-or-roles\n");
+    assertThatThrownBy(() -> userDirectory.load(usersFile)).hasMessageContaining("Line 1");
+
+    assertThat(userDirectory.find("alice")).isNotNull();
+  }
+
+  @Test
+  public void authenticate_defaultUser() {
+    UserDirectoryAuthenticationProvider provider = new UserDirectoryAuthenticationProvider(new UserDirectory("", Duration.ofHours(1)), PasswordHashingExecutor.disabled());
+
+    Authentication authentication = provider.authenticate(new UsernamePasswordAuthenticationToken("bob", "builder"));
+
+    UserInfo userInfo = (UserInfo) authentication.getPrincipal();
+    assertThat(userInfo.getUsername()).isEqualTo("bob");
+    assertThat(userInfo.getAuthorities())
+      .containsExactlyInAnyOrder(new SimpleGrantedAuthority("USER"), new SimpleGrantedAuthority("TESTER"));
+  }
+
+  @Test
+  public void authenticate_wrongPasswordOrUnknownUser() {
+    UserDirectoryAuthenticationProvider provider = new UserDirectoryAuthenticationProvider(userDirectory, PasswordHashingExecutor.disabled());
+
+    assertThat(provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "secret")).isAuthenticated()).isTrue();
+    assertThatThrownBy(() -> provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "wrong")))
+      .isInstanceOf(BadCredentialsException.class);
+    assertThatThrownBy(() -> provider.authenticate(new UsernamePasswordAuthenticationToken("mallory", "secret")))
+      .isInstanceOf(BadCredentialsException.class);
+  }
+
+  @Test
+  public void authenticate_everyLoginGetsItsOwnUserInfo() {
+    UserDirectoryAuthenticationProvider provider = new UserDirectoryAuthenticationProvider(userDirectory, PasswordHashingExecutor.disabled());
+
+    UserInfo first = (UserInfo) provider.authenticate(new UsernamePasswordAuthenticationToken("carol", "other")).getPrincipal();
+    UserInfo second = (UserInfo) provider.authenticate(new UsernamePasswordAuthenticationToken("carol", "other")).getPrincipal();
+    first.withColour("RED");
+
+    assertThat(second.getColour()).isEmpty();
+  }
+
+}
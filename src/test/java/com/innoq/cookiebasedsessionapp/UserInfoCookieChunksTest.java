@@ -0,0 +1,73 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.innoq.cookiebasedsessionapp.UserInfoCookieChunks.MAX_CHUNKS;
+import static com.innoq.cookiebasedsessionapp.UserInfoCookieChunks.MAX_CHUNK_LENGTH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserInfoCookieChunksTest {
+
+  @Test
+  public void split_valueFittingOneCookie_isNotSplit() {
+    String value = "a".repeat(MAX_CHUNK_LENGTH);
+
+    assertThat(UserInfoCookieChunks.split(value)).containsExactly(value);
+  }
+
+  @Test
+  public void splitAndJoin_roundTrip() {
+    String value = "a".repeat(MAX_CHUNK_LENGTH) + "b".repeat(MAX_CHUNK_LENGTH) + "c";
+
+    List<String> chunks = UserInfoCookieChunks.split(value);
+    UserInfoCookieChunks.Joiner joiner = new UserInfoCookieChunks.Joiner();
+    for (int i = chunks.size() - 1; i >= 0; i--) {
+      joiner.add(UserInfoCookieChunks.chunkName(i), chunks.get(i));
+    }
+
+    assertThat(chunks).hasSize(3).allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(MAX_CHUNK_LENGTH));
+    assertThat(joiner.join()).isEqualTo(value);
+  }
+
+  @Test
+  public void split_valueExceedingAllChunks_isRejected() {
+    assertThatThrownBy(() -> UserInfoCookieChunks.split("a".repeat(MAX_CHUNKS * MAX_CHUNK_LENGTH + 1)))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void join_stopsAtFirstMissingChunk() {
+    UserInfoCookieChunks.Joiner joiner = new UserInfoCookieChunks.Joiner();
+    joiner.add(UserInfoCookieChunks.chunkName(0), "a");
+    joiner.add(UserInfoCookieChunks.chunkName(2), "c");
+    joiner.add("Other", "x");
+
+    assertThat(joiner.join()).isEqualTo("a");
+    assertThat(new UserInfoCookieChunks.Joiner().join()).isNull();
+  }
+
+  @Test
+  public void chunkIndex() {
+    assertThat(UserInfoCookieChunks.chunkIndex("UserInfo.0")).isZero();
+    assertThat(UserInfoCookieChunks.chunkIndex("UserInfo.7")).isEqualTo(7);
+    assertThat(UserInfoCookieChunks.chunkIndex("UserInfo.8")).isEqualTo(-1);
+    assertThat(UserInfoCookieChunks.chunkIndex("UserInfo.10")).isEqualTo(-1);
+    assertThat(UserInfoCookieChunks.chunkIndex("UserInfo")).isEqualTo(-1);
+    assertThat(UserInfoCookieChunks.chunkIndex(null)).isEqualTo(-1);
+  }
+
+  @Test
+  public void isObsoleteAfter() {
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo", 1)).isFalse();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo", 2)).isTrue();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo.0", 1)).isTrue();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo.1", 2)).isFalse();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo.2", 2)).isTrue();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("UserInfo.0", 0)).isTrue();
+    assertThat(UserInfoCookieChunks.isObsoleteAfter("Other", 0)).isFalse();
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.innoq.cookiebasedsessionapp;
+
+import java.util.Map;
+
+/**
+ * Builds a {@link UserInfoCookieCodec} for tests and benchmarks, defaulting to what the app is configured with when
+ * the properties are not set: a full HmacSHA512, no other algorithms accepted, no role dictionary, session ids, signed
+ * rather than encrypted.
+ */
+final class UserInfoCookieCodecBuilder {
+
+  private final CookieKeyRing keyRing;
+  private MacAlgorithm algorithm = MacAlgorithm.HMAC_SHA_512;
+  private int tagLength = 0;
+  private Map<MacAlgorithm, Integer> accepted = Map.of();
+  private RoleDictionary dictionary = RoleDictionary.empty();
+  private boolean sessionIds = true;
+  private boolean encrypted = false;
+
+  private UserInfoCookieCodecBuilder(CookieKeyRing keyRing) {
+    this.keyRing = keyRing;
+  }
+
+  static UserInfoCookieCodecBuilder codec(String cookieHmacKey) {
+    return codec(CookieKeyRing.of(cookieHmacKey));
+  }
+
+  static UserInfoCookieCodecBuilder codec(CookieKeyRing keyRing) {
+    return new UserInfoCookieCodecBuilder(keyRing);
+  }
+
+  UserInfoCookieCodecBuilder mac(MacAlgorithm algorithm, int tagLength) {
+    this.algorithm = algorithm;
+    this.tagLength = tagLength;
+    return this;
+  }
+
+  /**
+   * @param accepted as {@code auth.cookie.mac-accepted}
+   */
+  UserInfoCookieCodecBuilder accepted(String accepted) {
+    this.accepted = UserInfoCookieCodec.parseAccepted(accepted);
+    return this;
+  }
+
+  UserInfoCookieCodecBuilder dictionary(RoleDictionary dictionary) {
+    this.dictionary = dictionary;
+    return this;
+  }
+
+  UserInfoCookieCodecBuilder sessionIds(boolean sessionIds) {
+    this.sessionIds = sessionIds;
+    return this;
+  }
+
+  UserInfoCookieCodecBuilder encrypted(boolean encrypted) {
+    this.encrypted = encrypted;
+    return this;
+  }
+
+  UserInfoCookieCodec build() {
+    return new UserInfoCookieCodec(keyRing, algorithm, tagLength, accepted, dictionary, sessionIds, encrypted);
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.innoq.cookiebasedsessionapp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserInfoCookieVerifierTest {
+
+  private static final String COOKIE_HMAC_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final Instant NOW = Instant.parse("2020-07-01T12:00:00Z");
+  private static final Duration REFRESH_WINDOW = Duration.ofMinutes(45);
+  private static final String REMOTE_ADDRESS = "127.0.0.1";
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final UserInfoCookieCodec codec = UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build();
+  private final SignedUserInfoCookie issued = new SignedUserInfoCookie(
+    new UserInfo("bob", Set.of(new SimpleGrantedAuthority("USER"))), codec, Clock.fixed(NOW, ZoneOffset.UTC));
+
+  @Test
+  public void verify_noValue_missing() {
+    assertThat(verifierAt(NOW, RevocationList.disabled()).verify(null, REMOTE_ADDRESS)).isEmpty();
+    assertThat(verifications("missing")).isEqualTo(1);
+  }
+
+  @Test
+  public void verify_validValue() {
+    UserInfoCookieVerifier verifier = verifierAt(NOW, RevocationList.disabled());
+
+    assertThat(verifier.verify(issued.getValue(), REMOTE_ADDRESS)).hasValueSatisfying(cookie -> {
+      assertThat(cookie.getUsername()).isEqualTo("bob");
+      assertThat(verifier.isRefreshDue(cookie)).isFalse();
+    });
+    assertThat(verifications("valid")).isEqualTo(1);
+    assertThat(meterRegistry.get("auth.cookie.context").tag("operation", "verify").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void verify_invalidSignature_throws() {
+    String tampered = issued.getValue().substring(0, issued.getValue().length() - 2) + "AA";
+
+    assertThatThrownBy(() -> verifierAt(NOW, RevocationList.disabled()).verify(tampered, REMOTE_ADDRESS))
+      .isInstanceOf(CookieVerificationFailedException.class);
+    assertThat(verifications("invalid_signature")).isEqualTo(1);
+  }
+
+  @Test
+  public void verify_expiredValue_empty() {
+    assertThat(verifierAt(NOW.plus(SignedUserInfoCookie.MAX_AGE).plusSeconds(1), RevocationList.disabled()).verify(issued.getValue(), REMOTE_ADDRESS)).isEmpty();
+    assertThat(verifications("valid")).isZero();
+  }
+
+  @Test
+  public void verify_revokedSession_empty(@TempDir Path tempDir) throws IOException {
+    Path revocationFile = tempDir.resolve("revoked");
+    Files.writeString(revocationFile, RevocationList.format(issued.getSessionId()) + "\n");
+
+    assertThat(verifierAt(NOW, RevocationList.of(revocationFile)).verify(issued.getValue(), REMOTE_ADDRESS)).isEmpty();
+    assertThat(verifications("revoked")).isEqualTo(1);
+  }
+
+  private UserInfoCookieVerifier verifierAt(Instant now, RevocationList revocationList) {
+    return new UserInfoCookieVerifier(codec, VerifiedCookieCache.disabled(), new CookiePrecheck(16384), revocationList, REFRESH_WINDOW,
+      new CookieMetrics(meterRegistry), AuthenticationAuditLog.disabled(), Clock.fixed(now, ZoneOffset.UTC));
+  }
+
+  private double verifications(String result) {
+    return meterRegistry.get("auth.cookie.verifications").tag("result", result).counter().count();
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.FilterInvocation;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserInfoWebSecurityExpressionHandlerTest {
+
+  private static final RoleDictionary DICTIONARY = RoleDictionary.of("USER", "TESTER", "ADMIN");
+
+  private final UserInfoWebSecurityExpressionHandler handler = new UserInfoWebSecurityExpressionHandler();
+
+  @Test
+  public void adminAccess_checksRoleBitsOfUserInfo() {
+    UserInfo admin = new UserInfo("bob", DICTIONARY.authoritiesOf(List.of("USER", "ADMIN")));
+    // authorities of the token left empty: a check comparing their names would deny access
+    Authentication authentication = new UsernamePasswordAuthenticationToken(admin, "", List.of());
+
+    assertThat(evaluate(WebSecurityConfig.ADMIN_ACCESS, authentication)).isTrue();
+  }
+
+  @Test
+  public void adminAccess_userWithoutAdminRole_denied() {
+    UserInfo user = new UserInfo("bob", DICTIONARY.authoritiesOf(List.of("USER", "TESTER")));
+    Authentication authentication = new UsernamePasswordAuthenticationToken(user, "", user.getAuthorities());
+
+    assertThat(evaluate(WebSecurityConfig.ADMIN_ACCESS, authentication)).isFalse();
+  }
+
+  @Test
+  public void adminAccess_anonymous_denied() {
+    Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+    assertThat(evaluate(WebSecurityConfig.ADMIN_ACCESS, anonymous)).isFalse();
+  }
+
+  private boolean evaluate(String expression, Authentication authentication) {
+    FilterInvocation filterInvocation = new FilterInvocation(new MockHttpServletRequest("GET", "/actuator/metrics"),
+      new MockHttpServletResponse(), (request, response) -> {
+    });
+    return ExpressionUtils.evaluateAsBoolean(handler.getExpressionParser().parseExpression(expression),
+      handler.createEvaluationContext(authentication, filterInvocation));
+  }
+
+}
@@ -0,0 +1,130 @@
+package com.innoq.cookiebasedsessionapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VerifiedCookieCacheTest {
+
+  private static final String COOKIE_VALUE = "uid=ab1234&roles=USER|TESTER&colour=YELLOW&hmac=0k9BetqMZOijyq5gaM+2+sqCgDJOpSwHEgkyYwpfIyb5Zcnrsk/BqCWciGBEaYeGWTkMB1CEFJU0So0u8OTUUw==";
+  private static final String FORGED_COOKIE_VALUE = "uid=ab1234&roles=ADMIN&hmac=forged";
+
+  private static final String COOKIE_HMAC_KEY = "y.E@EA!FbtCwXYB-2v_n.!*xgzRqgtbq2d2_A_U!W2hubL@URHRzNP96WNPxEcXK";
+  private static final UserInfoCookieCodec COOKIE_CODEC = UserInfoCookieCodecBuilder.codec(COOKIE_HMAC_KEY).build();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final AtomicInteger verifications = new AtomicInteger();
+  private final VerifiedCookieCache cache = new VerifiedCookieCache(true, 2, Duration.ofMinutes(10), CookieKeyRing.of(COOKIE_HMAC_KEY), nanos::get);
+
+  private final Function<String, SignedUserInfoCookie> verifier = value -> {
+    verifications.incrementAndGet();
+    if (value.equals(FORGED_COOKIE_VALUE))
+      throw new CookieVerificationFailedException("Cookie signature (HMAC) invalid");
+    return new SignedUserInfoCookie(new UserInfo("ab1234", Set.of()), COOKIE_CODEC, Clock.systemUTC());
+  };
+
+  @Test
+  public void get_sameValueTwice_verifiesOnce() {
+    SignedUserInfoCookie first = cache.get(COOKIE_VALUE, verifier);
+    SignedUserInfoCookie second = cache.get(COOKIE_VALUE, verifier);
+
+    assertThat(second).isSameAs(first);
+    assertThat(verifications).hasValue(1);
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_forgedValue_isNeverCached() {
+    assertThatThrownBy(() -> cache.get(FORGED_COOKIE_VALUE, verifier)).isInstanceOf(CookieVerificationFailedException.class);
+    assertThatThrownBy(() -> cache.get(FORGED_COOKIE_VALUE, verifier)).isInstanceOf(CookieVerificationFailedException.class);
+
+    assertThat(verifications).hasValue(2);
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void get_otherValueEndingInSameTag_verified() {
+    String otherValue = "uid=cd5678&roles=ADMIN&hmac=" + COOKIE_VALUE.substring(COOKIE_VALUE.length() - VerifiedCookieCache.TAG_CHARS);
+    SignedUserInfoCookie cached = cache.get(COOKIE_VALUE, verifier);
+
+    SignedUserInfoCookie other = cache.get(otherValue, verifier);
+
+    assertThat(other).isNotSameAs(cached);
+    assertThat(verifications).hasValue(2);
+    assertThat(cache.get(COOKIE_VALUE, verifier)).isSameAs(cached);
+  }
+
+  @Test
+  public void get_afterTtl_verifiesAgain() {
+    cache.get(COOKIE_VALUE, verifier);
+    nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+    cache.get(COOKIE_VALUE, verifier);
+
+    assertThat(verifications).hasValue(2);
+  }
+
+  @Test
+  public void get_moreValuesThanMaxSize_evicts() {
+    cache.get(COOKIE_VALUE + "1", verifier);
+    cache.get(COOKIE_VALUE + "2", verifier);
+    cache.get(COOKIE_VALUE + "3", verifier);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_afterKeyRingReload_verifiesAgain(@TempDir Path tempDir) throws IOException {
+    Path keyRingFile = tempDir.resolve("key-ring.properties");
+    Files.writeString(keyRingFile, "current=7\n7=another-secret-for-key-7\n");
+    CookieKeyRing keyRing = CookieKeyRing.of(COOKIE_HMAC_KEY);
+    VerifiedCookieCache reloadedCache = new VerifiedCookieCache(true, 2, Duration.ofMinutes(10), keyRing, nanos::get);
+
+    reloadedCache.get(COOKIE_VALUE, verifier);
+    keyRing.load(keyRingFile);
+    reloadedCache.get(COOKIE_VALUE, verifier);
+
+    assertThat(verifications).hasValue(2);
+  }
+
+  @Test
+  public void get_verifiedWhileKeyRingReloaded_notKept(@TempDir Path tempDir) throws IOException {
+    Path keyRingFile = tempDir.resolve("key-ring.properties");
+    Files.writeString(keyRingFile, "current=7\n7=another-secret-for-key-7\n");
+    CookieKeyRing keyRing = CookieKeyRing.of(COOKIE_HMAC_KEY);
+    VerifiedCookieCache reloadedCache = new VerifiedCookieCache(true, 2, Duration.ofMinutes(10), keyRing, nanos::get);
+
+    reloadedCache.get(COOKIE_VALUE, value -> {
+      keyRing.load(keyRingFile);
+      return verifier.apply(value);
+    });
+
+    assertThat(reloadedCache.size()).isZero();
+  }
+
+  @Test
+  public void get_disabled_alwaysVerifies() {
+    VerifiedCookieCache disabled = VerifiedCookieCache.disabled();
+
+    disabled.get(COOKIE_VALUE, verifier);
+    disabled.get(COOKIE_VALUE, verifier);
+
+    assertThat(verifications).hasValue(2);
+    assertThat(disabled.stats().hitCount()).isZero();
+  }
+
+}